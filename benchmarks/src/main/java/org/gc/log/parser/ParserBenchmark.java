@@ -0,0 +1,78 @@
+package org.gc.log.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.heapfrag.model.HeapSnapshot;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parser throughput on an in-memory log of 8 cycles (16 region sections)
+ * written by {@link GcLogGenerator}.
+ * The "bytes" secondary result is the throughput in bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"2048", "16384", "65536"})
+    int regions;
+
+    byte[] log;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GcLogGenerator(regions, 8, 42).write(out);
+        log = out.toByteArray();
+    }
+
+    @Benchmark
+    public List<HeapSnapshot> scannerParseLog(Bytes counter) {
+        counter.bytes += log.length;
+        return GcLogParser.parseLog(new Scanner(new ByteArrayInputStream(log), StandardCharsets.US_ASCII));
+    }
+
+    @Benchmark
+    public int streamingParse(Bytes counter, Blackhole bh) {
+        counter.bytes += log.length;
+        StreamingGcLogParser parser = new StreamingGcLogParser(bh::consume);
+        parser.acceptLines(ByteBuffer.wrap(log), 0, log.length, true);
+        parser.finish();
+        return parser.getEmitted();
+    }
+}
@@ -0,0 +1,86 @@
+package org.heapfrag.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fragmentation metrics per region count. Metrics are computed in one pass
+ * when a snapshot is created and cached afterwards, so every invocation
+ * creates a snapshot over the same (shared, not copied) columns.
+ *
+ * The fork runs with the Vector API module, so the snapshot constructors use
+ * the vectorized pass; scalarPass and vectorPass run one implementation each
+ * over the same layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"2048", "8192", "32768", "65536"})
+    int regions;
+
+    HeapSnapshot layout;
+
+    @Setup
+    public void setup() {
+        layout = SyntheticLayouts.layout(regions, 0);
+    }
+
+    private HeapSnapshot fresh() {
+        HeapSnapshot s = layout;
+        return new HeapSnapshot(s.gcCycle, s.types, s.usage, s.indices, s.count, s.isFull, s.gcType,
+            s.heapBase, s.regionSize, s.top, s.tams, s.pb, s.flags);
+    }
+
+    private HeapSnapshot freshWithoutDetail() {
+        HeapSnapshot s = layout;
+        return new HeapSnapshot(s.gcCycle, s.types, s.usage, s.indices, s.count, s.isFull, s.gcType);
+    }
+
+    @Benchmark
+    public int externalFragmentation() {
+        return fresh().calculateExternalFragmentation();
+    }
+
+    @Benchmark
+    public int internalFragmentation() {
+        return fresh().calculateInternalFragmentation();
+    }
+
+    @Benchmark
+    public int internalFragmentationPercentOnly() {
+        return freshWithoutDetail().calculateInternalFragmentation();
+    }
+
+    @Benchmark
+    public int scalarPass() {
+        layout.computeMetricsScalar();
+        return layout.getMaxFreeRun();
+    }
+
+    @Benchmark
+    public int vectorPass() {
+        VectorMetrics.compute(layout);
+        return layout.getMaxFreeRun();
+    }
+
+    /** Metrics of an existing snapshot, answered from the cached pass. */
+    @Benchmark
+    public int cachedMetrics() {
+        return layout.calculateExternalFragmentation() + layout.calculateInternalFragmentation();
+    }
+}
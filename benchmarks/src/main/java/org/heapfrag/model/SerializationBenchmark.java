@@ -0,0 +1,58 @@
+package org.heapfrag.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Region serialization. Run with -prof gc to see bytes allocated per
+ * operation. Serialized forms are cached per snapshot, so every invocation
+ * serializes a new snapshot over shared columns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"2048", "16384", "65536"})
+    int regions;
+
+    HeapSnapshot layout;
+
+    @Setup
+    public void setup() {
+        layout = SyntheticLayouts.layout(regions, 0);
+    }
+
+    private HeapSnapshot fresh() {
+        HeapSnapshot s = layout;
+        return new HeapSnapshot(s.gcCycle, s.types, s.usage, s.indices, s.count, s.isFull, s.gcType);
+    }
+
+    @Benchmark
+    public String regionsToJson() {
+        return fresh().regionsToJson();
+    }
+
+    @Benchmark
+    public byte[] regionsJson() {
+        return fresh().regionsJson();
+    }
+
+    @Benchmark
+    public byte[] regionsFrame() {
+        return fresh().regionsFrame();
+    }
+}
@@ -0,0 +1,62 @@
+package org.heapfrag.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import org.gc.log.parser.GcLogParser;
+
+/**
+ * Heap layouts of any size built from the snapshots of data/sample_gc.log.
+ *
+ * A layout is the sample snapshots laid end to end (starting at a different
+ * snapshot per variant) until the requested region count is reached, which
+ * keeps the type mix and the lengths of free and old runs of a real heap.
+ * Set -Dg1heapviz.sample to use another log.
+ */
+public class SyntheticLayouts {
+
+    private static final String SAMPLE = System.getProperty("g1heapviz.sample", "../data/sample_gc.log");
+
+    private static List<HeapSnapshot> sample;
+
+    static synchronized List<HeapSnapshot> sample() {
+        if (sample == null) {
+            try {
+                sample = GcLogParser.parseLogFile(new File(SAMPLE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (sample.isEmpty()) throw new IllegalStateException("No snapshots in " + SAMPLE);
+        }
+        return sample;
+    }
+
+    /**
+     * Returns a layout of the given size with region detail.
+     */
+    public static HeapSnapshot layout(int regions, int variant) {
+        List<HeapSnapshot> snapshots = sample();
+        HeapSnapshot first = snapshots.get(0);
+        int regionSize = first.hasDetail() ? first.getRegionSize() : 1 << 20;
+
+        byte[] types = new byte[regions];
+        byte[] usage = new byte[regions];
+        int[] top = new int[regions];
+        int[] tams = new int[regions];
+        int[] pb = new int[regions];
+        byte[] flags = new byte[regions];
+        int i = 0;
+        for (int block = 0; i < regions; block++) {
+            HeapSnapshot s = snapshots.get((variant + block) % snapshots.size());
+            for (int r = 0; r < s.getRegionCount() && i < regions; r++, i++) {
+                types[i] = (byte) s.getRegionType(r);
+                usage[i] = (byte) s.getUsagePercent(r);
+                top[i] = s.hasDetail() ? s.getUsedBytes(r) : usage[i] * (regionSize / 100);
+                flags[i] = (byte) (s.hasDetail() && s.isInCollectionSet(r) ? HeapSnapshot.FLAG_CS : 0);
+            }
+        }
+        return new HeapSnapshot(variant, types, usage, null, regions, false, "Pause Young (Normal)",
+            0x80000000L, regionSize, top, tams, pb, flags);
+    }
+}
@@ -0,0 +1,68 @@
+package org.heapfrag.model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stepping through a timeline with regions on the heap or in a
+ * {@link SnapshotArena}. Each step rebuilds one snapshot from the previous
+ * one; the arena variant decodes the diffs from direct memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimelineBenchmark {
+
+    private static final int SNAPSHOTS = 64;
+
+    @Param({"16384", "131072"})
+    int regions;
+
+    @Param({"false", "true"})
+    boolean offHeap;
+
+    SnapshotTimeline timeline;
+
+    @Setup
+    public void setup() {
+        timeline = new SnapshotTimeline(SNAPSHOTS, offHeap ? new SnapshotArena() : null);
+        HeapSnapshot s = SyntheticLayouts.layout(regions, 0);
+        byte[] types = s.types.clone();
+        byte[] usage = s.usage.clone();
+        int[] top = s.top.clone();
+        Random random = new Random(42);
+        for (int n = 0; n < SNAPSHOTS; n++) {
+            // a young collection worth of changes per step
+            for (int c = 0; c < regions / 50; c++) {
+                int i = random.nextInt(regions);
+                types[i] = (byte) (types[i] == 0 ? 30 : 0);
+                usage[i] = (byte) (types[i] == 0 ? 0 : 100);
+                top[i] = usage[i] * (s.regionSize / 100);
+            }
+            timeline.append(new HeapSnapshot(n, types.clone(), usage.clone(), null, regions, false, "",
+                s.heapBase, s.regionSize, top.clone(), s.tams, s.pb, s.flags));
+        }
+    }
+
+    @Benchmark
+    public void stepThrough(Blackhole bh) {
+        for (int n = 0; n < SNAPSHOTS; n++) {
+            bh.consume(timeline.get(n));
+        }
+    }
+}
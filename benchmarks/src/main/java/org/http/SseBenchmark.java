@@ -0,0 +1,58 @@
+package org.http;
+
+import java.util.concurrent.TimeUnit;
+import org.heapfrag.model.ReplayFrames;
+import org.heapfrag.model.SnapshotTimeline;
+import org.heapfrag.model.SyntheticLayouts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReplayFrames.merge merging the two snapshots (before and after) of a GC
+ * cycle, as sent per tick, and the same frame taken from the shared
+ * ReplayFrames as every further viewer of a session does. Run with -prof gc
+ * to see allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SseBenchmark {
+
+    @Param({"2048", "16384", "65536"})
+    int regions;
+
+    SnapshotTimeline timeline;
+    ReplayFrames frames;
+
+    @Setup
+    public void setup() {
+        timeline = new SnapshotTimeline();
+        timeline.append(SyntheticLayouts.layout(regions, 0));
+        timeline.append(SyntheticLayouts.layout(regions, 1));
+        frames = new ReplayFrames(64 << 20);
+        frames.get(timeline, 0, 2);
+    }
+
+    /** Per-snapshot JSON is cached, this measures the merge. */
+    @Benchmark
+    public String merge() {
+        return ReplayFrames.merge(timeline, 0, 2);
+    }
+
+    @Benchmark
+    public String sharedFrame() {
+        return frames.get(timeline, 0, 2);
+    }
+}
@@ -0,0 +1,209 @@
+package org.gc.log.parser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Computes the fragmentation metrics of many GC logs in parallel and writes
+ * one CSV row per log (see {@link LogSummary#CSV_HEADER}).
+ *
+ * Usage: java org.gc.log.parser.BatchAnalyzer [options] file-or-dir...
+ * <pre>
+ *   --threads N              parallel workers (default: available processors)
+ *   --out FILE               CSV output (default: stdout)
+ *   --glob PATTERN           file names to pick up in directories
+ *                            (default: {*.log,*.log.*,*.gz,*.zst}, which includes
+ *                            rotated logs such as gc.log.0)
+ *   --ext-threshold P        count snapshots with ext. fragmentation &gt;= P% (default: 50)
+ *   --humongous-threshold N  count snapshots with more than N humongous regions (default: 90000)
+ *   --min-snapshots N        skip logs with fewer snapshots (default: 0)
+ *   --only-over              skip logs where no snapshot exceeds a threshold
+ *   --anomalies FILE         also write every fragmentation anomaly as a CSV row
+ *                            (see {@link org.heapfrag.model.AnomalyDetector})
+ * </pre>
+ *
+ * Directories are walked lazily and at most two files per worker are in
+ * flight, every file is parsed as a stream into a {@link LogSummary}, so
+ * memory does not grow with the number or size of the logs. Rows are written
+ * in completion order.
+ */
+public class BatchAnalyzer {
+
+    static class Options {
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out;
+        String glob = "{*.log,*.log.*,*.gz,*.zst}";
+        int extThreshold = 50;
+        int humongousThreshold = 90000;
+        int minSnapshots = 0;
+        boolean onlyOver = false;
+        Path anomalies;
+        List<Path> inputs = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--threads" -> o.threads = Integer.parseInt(value(args, ++i, arg));
+                    case "--out" -> o.out = Paths.get(value(args, ++i, arg));
+                    case "--glob" -> o.glob = value(args, ++i, arg);
+                    case "--ext-threshold" -> o.extThreshold = Integer.parseInt(value(args, ++i, arg));
+                    case "--humongous-threshold" -> o.humongousThreshold = Integer.parseInt(value(args, ++i, arg));
+                    case "--min-snapshots" -> o.minSnapshots = Integer.parseInt(value(args, ++i, arg));
+                    case "--only-over" -> o.onlyOver = true;
+                    case "--anomalies" -> o.anomalies = Paths.get(value(args, ++i, arg));
+                    default -> {
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        o.inputs.add(Paths.get(arg));
+                    }
+                }
+            }
+            if (o.threads < 1) throw new IllegalArgumentException("--threads must be positive");
+            return o;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+            return args[i];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            options = null;
+            System.err.println(e.getMessage());
+        }
+        if (options == null || options.inputs.isEmpty()) {
+            System.err.println("Usage: java org.gc.log.parser.BatchAnalyzer [--threads N] [--out FILE] " +
+                "[--glob PATTERN] [--ext-threshold P] [--humongous-threshold N] " +
+                "[--min-snapshots N] [--only-over] [--anomalies FILE] <file-or-dir>...");
+            System.exit(1);
+        }
+
+        if (options.out == null) {
+            run(options, System.out);
+        } else {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(options.out), false, "UTF-8")) {
+                run(options, out);
+            }
+        }
+    }
+
+    /**
+     * Analyzes all inputs and writes the CSV to out.
+     *
+     * @return number of rows written
+     */
+    static int run(Options options, PrintStream out) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + options.glob);
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads, r -> {
+            Thread t = new Thread(r, "g1heapviz-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorCompletionService<LogSummary> completion = new ExecutorCompletionService<>(pool);
+        int maxInFlight = options.threads * 2;
+        int inFlight = 0;
+        int rows = 0;
+        PrintStream anomalies = options.anomalies == null
+            ? null
+            : new PrintStream(Files.newOutputStream(options.anomalies), false, "UTF-8");
+
+        out.println(LogSummary.CSV_HEADER);
+        if (anomalies != null) anomalies.println(LogSummary.ANOMALY_CSV_HEADER);
+        try {
+            for (Path input : options.inputs) {
+                try (Stream<Path> files = files(input, matcher)) {
+                    Iterator<Path> it = files.iterator();
+                    while (it.hasNext()) {
+                        Path file = it.next();
+                        if (inFlight == maxInFlight) {
+                            rows += write(completion.take().get(), options, out, anomalies);
+                            inFlight--;
+                        }
+                        completion.submit(() -> analyze(file, options));
+                        inFlight++;
+                    }
+                }
+            }
+            for (; inFlight > 0; inFlight--) {
+                rows += write(completion.take().get(), options, out, anomalies);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            // analyze() reports exceptions in the row, only Errors get here
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            if (anomalies != null) anomalies.close();
+        }
+        out.flush();
+        return rows;
+    }
+
+    private static Stream<Path> files(Path input, PathMatcher matcher) throws IOException {
+        if (!Files.isDirectory(input)) return Stream.of(input);
+        return Files.walk(input)
+            .filter(Files::isRegularFile)
+            .filter(p -> matcher.matches(p.getFileName()));
+    }
+
+    private static int write(LogSummary summary, Options options, PrintStream out, PrintStream anomalies) {
+        if (summary.getError() == null) {
+            if (summary.getSnapshots() < options.minSnapshots) return 0;
+            if (options.onlyOver && summary.getExtOver() == 0 && summary.getHumongousOver() == 0) return 0;
+        }
+        out.println(summary.toCsvRow());
+        if (anomalies != null) summary.writeAnomalies(anomalies);
+        return 1;
+    }
+
+    /**
+     * Parses one log (plain, gzip or zstd) into a summary. Read and parse
+     * errors, including unexpected runtime exceptions on a malformed file, are
+     * recorded in the summary instead of failing the batch.
+     */
+    static LogSummary analyze(Path file, Options options) {
+        long bytes;
+        try {
+            bytes = Files.size(file);
+        } catch (IOException e) {
+            bytes = -1;
+        }
+        LogSummary summary = new LogSummary(file.toString(), bytes, options.extThreshold, options.humongousThreshold);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            if (LogDecompressor.detect(in) == LogDecompressor.Format.PLAIN) {
+                StreamingGcLogParser.parse(file, summary::accept);
+            } else {
+                StreamingGcLogParser.parse(LogDecompressor.decompress(in), summary::accept);
+            }
+        } catch (IOException | RuntimeException e) {
+            summary.setError(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,466 @@
+package org.gc.log.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes synthetic G1 logs in the -Xlog:gc,heap,region=trace format, for
+ * load and scale testing.
+ *
+ * A small region-level simulation drives the output: every cycle the mutator
+ * fills eden (and humongous objects in contiguous free runs from the top of
+ * the heap), the young pause evacuates eden and survivors into new survivor
+ * and old regions, mixed collections reclaim a share of the old regions and
+ * humongous objects die. Evacuation normally takes the lowest free regions;
+ * with drift some regions land anywhere in the heap instead, so the old
+ * generation scatters and external fragmentation grows until a full GC
+ * compacts the heap. Every cycle logs a region section before and after the
+ * pause.
+ *
+ * Lines are encoded straight into a byte buffer, so output is limited by
+ * the disk rather than by formatting.
+ *
+ * Usage: java org.gc.log.parser.GcLogGenerator [options] --out FILE
+ * <pre>
+ *   --regions N        heap regions (default: 2048)
+ *   --region-size MB   region size, power of two (default: 4)
+ *   --cycles N         GC cycles (default: 100)
+ *   --eden F           share of the heap allocated as eden per cycle (default: 0.2)
+ *   --humongous F      share of each cycle's allocation that is humongous (default: 0.1)
+ *   --old F            share of evacuated young regions promoted to old (default: 0.1)
+ *   --reclaim F        share of old regions reclaimed per cycle by mixed collections (default: 0.05)
+ *   --drift F          share of evacuated regions placed at a random free region (default: 0.01)
+ *   --full-every N     full GC every N cycles, 0 = only when the heap is exhausted (default: 0)
+ *   --seed N           random seed (default: 42)
+ *   --out FILE         output file, gzip compressed if it ends with .gz (default: stdout)
+ * </pre>
+ */
+public class GcLogGenerator {
+
+    private static final int F = 0;
+    private static final int E = 30;
+    private static final int S = 60;
+    private static final int O = 90;
+    private static final int HS = 120;
+    private static final int HC = 150;
+
+    private static final long HEAP_BASE = 0x0000000600000000L;
+    private static final int MAX_HUMONGOUS_REGIONS = 8;
+
+    private static final byte[] HEADER = (
+        "Heap Regions: E=young(eden), S=young(survivor), O=old, HS=humongous(starts), " +
+        "HC=humongous(continues), CS=collection set, F=free, TAMS=top-at-mark-start, PB=parsable bottom\n"
+    ).getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    static class Options {
+
+        int regions = 2048;
+        int regionSizeMb = 4;
+        int cycles = 100;
+        double eden = 0.2;
+        double humongous = 0.1;
+        double old = 0.1;
+        double reclaim = 0.05;
+        double drift = 0.01;
+        int fullEvery = 0;
+        long seed = 42;
+        Path out;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--regions" -> o.regions = Integer.parseInt(value(args, ++i, arg));
+                    case "--region-size" -> o.regionSizeMb = Integer.parseInt(value(args, ++i, arg));
+                    case "--cycles" -> o.cycles = Integer.parseInt(value(args, ++i, arg));
+                    case "--eden" -> o.eden = Double.parseDouble(value(args, ++i, arg));
+                    case "--humongous" -> o.humongous = Double.parseDouble(value(args, ++i, arg));
+                    case "--old" -> o.old = Double.parseDouble(value(args, ++i, arg));
+                    case "--reclaim" -> o.reclaim = Double.parseDouble(value(args, ++i, arg));
+                    case "--drift" -> o.drift = Double.parseDouble(value(args, ++i, arg));
+                    case "--full-every" -> o.fullEvery = Integer.parseInt(value(args, ++i, arg));
+                    case "--seed" -> o.seed = Long.parseLong(value(args, ++i, arg));
+                    case "--out" -> o.out = Paths.get(value(args, ++i, arg));
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (o.regions < 1) throw new IllegalArgumentException("--regions must be positive");
+            if (Integer.bitCount(o.regionSizeMb) != 1 || o.regionSizeMb > 512) {
+                throw new IllegalArgumentException("--region-size must be a power of two up to 512");
+            }
+            return o;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+            return args[i];
+        }
+    }
+
+    private final Options options;
+    private final Random random;
+    private final int regionSize;
+
+    // heap state
+    private final int[] types;
+    private final int[] used;
+    private final boolean[] cs;
+
+    // output state
+    private OutputStream out;
+    private final byte[] buf = new byte[1 << 20];
+    private int pos = 0;
+    private long written = 0;
+    private long timeMillis = 500;
+
+    /**
+     * A generator with the default mix for the given heap and log length.
+     */
+    public GcLogGenerator(int regions, int cycles, long seed) {
+        this(options(regions, cycles, seed));
+    }
+
+    private static Options options(int regions, int cycles, long seed) {
+        Options o = new Options();
+        o.regions = regions;
+        o.cycles = cycles;
+        o.seed = seed;
+        return o;
+    }
+
+    GcLogGenerator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.regionSize = options.regionSizeMb << 20;
+        this.types = new int[options.regions];
+        this.used = new int[options.regions];
+        this.cs = new boolean[options.regions];
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java org.gc.log.parser.GcLogGenerator [--regions N] [--region-size MB] " +
+                "[--cycles N] [--eden F] [--humongous F] [--old F] [--reclaim F] [--drift F] [--full-every N] " +
+                "[--seed N] [--out FILE]");
+            System.exit(1);
+            return;
+        }
+        GcLogGenerator generator = new GcLogGenerator(options);
+        if (options.out == null) {
+            generator.write(System.out);
+            System.out.flush();
+            return;
+        }
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(options.out), 1 << 16)) {
+            OutputStream out = options.out.toString().endsWith(".gz")
+                ? new GZIPOutputStream(file, 1 << 16)
+                : file;
+            long bytes = generator.write(out);
+            out.close();
+            System.err.println("Wrote " + bytes + " bytes, " + options.cycles * 2 + " heap snapshots to " + options.out);
+        }
+    }
+
+    /**
+     * Simulates all cycles and writes the log. The stream is not closed.
+     *
+     * @return number of bytes written (uncompressed)
+     */
+    public long write(OutputStream out) throws IOException {
+        this.out = out;
+        for (int gc = 0; gc < options.cycles; gc++) {
+            timeMillis += 100 + random.nextInt(400);
+            boolean full = allocate() ||
+                (options.fullEvery > 0 && (gc + 1) % options.fullEvery == 0);
+
+            line(gc, "info", "gc,start    ",
+                full ? "Pause Full (G1 Compaction Pause)" : "Pause Young (Normal) (G1 Evacuation Pause)");
+            section(gc);
+            long before = usedMb();
+            if (full) {
+                fullCollection();
+            } else {
+                youngCollection();
+            }
+            int pause = full ? 50 + random.nextInt(200) : 2 + random.nextInt(20);
+            timeMillis += pause;
+            line(gc, "info", "gc,phases   ", "  Evacuate Collection Set: " + pause + ".0ms");
+            section(gc);
+            line(gc, "info", "gc          ",
+                (full ? "Pause Full (G1 Compaction Pause) " : "Pause Young (Normal) (G1 Evacuation Pause) ") +
+                before + "M->" + usedMb() + "M(" + (long) options.regions * options.regionSizeMb + "M) " + pause + ".000ms");
+        }
+        flush();
+        return written;
+    }
+
+    // ---- simulation
+
+    /**
+     * Allocates this cycle's humongous objects and eden.
+     *
+     * @return whether the heap ran out of free regions
+     */
+    private boolean allocate() {
+        int regions = options.regions;
+        int budget = Math.max(1, (int) Math.round(regions * options.eden));
+        int humongous = (int) Math.round(budget * options.humongous);
+        while (humongous > 0) {
+            int size = Math.min(humongous, 1 + random.nextInt(MAX_HUMONGOUS_REGIONS));
+            if (!allocateHumongous(size)) break;
+            humongous -= size;
+        }
+        int eden = budget - (int) Math.round(budget * options.humongous);
+        int last = -1;
+        for (int i = 0; i < regions && eden > 0; i++) {
+            if (types[i] == F) {
+                types[i] = E;
+                used[i] = regionSize;
+                last = i;
+                eden--;
+            }
+        }
+        if (last >= 0) used[last] = partial(10, 95);
+        for (int i = 0; i < regions; i++) cs[i] = types[i] == E || types[i] == S;
+        return eden > 0;
+    }
+
+    /** Places a humongous object in the highest free run that fits. */
+    private boolean allocateHumongous(int size) {
+        int run = 0;
+        for (int i = options.regions - 1; i >= 0; i--) {
+            run = types[i] == F ? run + 1 : 0;
+            if (run == size) {
+                types[i] = HS;
+                used[i] = regionSize;
+                for (int j = i + 1; j < i + size; j++) {
+                    types[j] = HC;
+                    used[j] = regionSize;
+                }
+                used[i + size - 1] = partial(5, 100);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void youngCollection() {
+        int regions = options.regions;
+        int young = 0;
+        for (int i = 0; i < regions; i++) {
+            if (types[i] == E || types[i] == S) {
+                young++;
+                types[i] = F;
+                used[i] = 0;
+            }
+        }
+        int promoted = (int) Math.round(young * options.old);
+        int survivors = Math.max(young > 0 ? 1 : 0, young / 10);
+
+        // mixed collection work
+        for (int i = 0; i < regions; i++) {
+            if (types[i] == O && random.nextDouble() < options.reclaim) {
+                types[i] = F;
+                used[i] = 0;
+            } else if (types[i] == HS && random.nextDouble() < 0.3) {
+                types[i] = F;
+                used[i] = 0;
+                for (int j = i + 1; j < regions && types[j] == HC; j++) {
+                    types[j] = F;
+                    used[j] = 0;
+                }
+            }
+        }
+
+        // survivors and promoted objects go to the lowest free regions,
+        // or with drift to a random one
+        for (int i = 0; i < regions && (survivors > 0 || promoted > 0); i++) {
+            if (types[i] != F) continue;
+            int target = random.nextDouble() < options.drift ? randomFree(i) : i;
+            if (survivors > 0) {
+                types[target] = S;
+                used[target] = partial(30, 90);
+                survivors--;
+            } else {
+                types[target] = O;
+                used[target] = partial(50, 100);
+                promoted--;
+            }
+            if (target != i) i--;
+        }
+        clearCollectionSet();
+    }
+
+    /** A random free region at or above from, from if there is none. */
+    private int randomFree(int from) {
+        int regions = options.regions;
+        int start = from + random.nextInt(regions - from);
+        for (int k = 0; k < regions - from; k++) {
+            int i = from + (start - from + k) % (regions - from);
+            if (types[i] == F) return i;
+        }
+        return from;
+    }
+
+    /**
+     * Drops young regions and part of the old data, then slides the old
+     * regions to the bottom of the heap. Humongous objects are not moved.
+     */
+    private void fullCollection() {
+        int regions = options.regions;
+        int[] live = new int[regions];
+        int count = 0;
+        for (int i = 0; i < regions; i++) {
+            if (types[i] == O && random.nextDouble() >= 0.5) {
+                live[count++] = used[i];
+            }
+            if (types[i] != HS && types[i] != HC) {
+                types[i] = F;
+                used[i] = 0;
+            }
+        }
+        int next = 0;
+        for (int i = 0; i < regions && next < count; i++) {
+            if (types[i] != F) continue;
+            types[i] = O;
+            used[i] = live[next++];
+        }
+        clearCollectionSet();
+    }
+
+    private void clearCollectionSet() {
+        for (int i = 0; i < options.regions; i++) cs[i] = false;
+    }
+
+    private int partial(int minPercent, int maxPercent) {
+        long percent = minPercent + random.nextInt(maxPercent - minPercent + 1);
+        return (int) (regionSize * percent / 100);
+    }
+
+    private long usedMb() {
+        long total = 0;
+        for (int u : used) total += u;
+        return total >> 20;
+    }
+
+    // ---- output
+
+    private void section(int gc) throws IOException {
+        byte[] prefix = prefix(gc, "trace", "gc,heap,region");
+        ensure(prefix.length + HEADER.length);
+        put(prefix);
+        put(HEADER);
+        for (int i = 0; i < options.regions; i++) {
+            ensure(256);
+            put(prefix);
+            regionLine(i);
+        }
+    }
+
+    /**
+     * |   7|0x..., 0x..., 0x...| 95%| E|CS|TAMS 0x...| PB 0x...| Complete
+     */
+    private void regionLine(int i) {
+        long bottom = HEAP_BASE + (long) i * regionSize;
+        int type = types[i];
+        buf[pos++] = '|';
+        padded(i, 4);
+        buf[pos++] = '|';
+        hex(bottom);
+        buf[pos++] = ',';
+        buf[pos++] = ' ';
+        hex(bottom + used[i]);
+        buf[pos++] = ',';
+        buf[pos++] = ' ';
+        hex(bottom + regionSize);
+        buf[pos++] = '|';
+        padded((int) ((long) used[i] * 100 / regionSize), 3);
+        buf[pos++] = '%';
+        buf[pos++] = '|';
+        typeName(type);
+        buf[pos++] = '|';
+        buf[pos++] = cs[i] ? (byte) 'C' : (byte) ' ';
+        buf[pos++] = cs[i] ? (byte) 'S' : (byte) ' ';
+        put("|TAMS ");
+        hex(bottom);
+        put("| PB ");
+        hex(bottom);
+        put(type == F || type == O ? "| Untracked\n" : "| Complete\n");
+    }
+
+    private void typeName(int type) {
+        switch (type) {
+            case E -> put(" E");
+            case S -> put(" S");
+            case O -> put(" O");
+            case HS -> put("HS");
+            case HC -> put("HC");
+            default -> put(" F");
+        }
+    }
+
+    private void hex(long value) {
+        buf[pos++] = '0';
+        buf[pos++] = 'x';
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            buf[pos++] = HEX[(int) (value >>> shift) & 0xF];
+        }
+    }
+
+    private void padded(int value, int width) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) digits++;
+        for (int k = digits; k < width; k++) buf[pos++] = ' ';
+        int end = pos + digits;
+        for (int k = end - 1; k >= pos; k--) {
+            buf[k] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos = end;
+    }
+
+    private byte[] prefix(int gc, String level, String tags) {
+        return String.format(
+            "[%d.%03ds][%s][%s] GC(%d) ", timeMillis / 1000, timeMillis % 1000, level, tags, gc
+        ).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void line(int gc, String level, String tags, String message) throws IOException {
+        byte[] bytes = (new String(prefix(gc, level, tags), StandardCharsets.US_ASCII) + message + "\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        ensure(bytes.length);
+        put(bytes);
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void put(String ascii) {
+        for (int k = 0; k < ascii.length(); k++) buf[pos++] = (byte) ascii.charAt(k);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (pos + bytes > buf.length) flush();
+    }
+
+    private void flush() throws IOException {
+        out.write(buf, 0, pos);
+        written += pos;
+        pos = 0;
+    }
+}
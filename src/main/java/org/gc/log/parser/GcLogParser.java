@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.heapfrag.model.HeapSnapshot;
 import org.heapfrag.model.Region;
 
@@ -33,6 +35,7 @@ public class GcLogParser {
 
     /**
      * Parses a GC log file and returns a list of Region objects.
+     * The file is memory-mapped and scanned by {@link StreamingGcLogParser}.
      *
      * @param logFile the GC log file
      * @return list of Region objects extracted from the log
@@ -40,9 +43,9 @@ public class GcLogParser {
      */
     public static List<HeapSnapshot> parseLogFile(File logFile)
         throws IOException {
-        try (Scanner scanner = new Scanner(logFile)) {
-            return parseLog(scanner);
-        }
+        List<HeapSnapshot> snapshots = new ArrayList<>();
+        StreamingGcLogParser.parse(logFile.toPath(), snapshots::add);
+        return snapshots;
     }
 
     /**
@@ -58,6 +61,7 @@ public class GcLogParser {
         HeapSnapshot hs;
         boolean isFullGC = false;
         String gcType = "";
+        long timestamp = -1;
         String prevLine = ""; //utility purposes
 
         while (scanner.hasNextLine()) {
@@ -66,6 +70,7 @@ public class GcLogParser {
             // Check if we've reached the "Heap Regions:" section
             if (line.contains("Heap Regions:")) {
                 inHeapRegionSection = true;
+                if (regions.isEmpty()) timestamp = parseUptime(line);
 
                 if (prevLine.contains("gc,start")) {
                     //new GC cycle detected. Creating heap snapshot
@@ -93,6 +98,7 @@ public class GcLogParser {
                         isFullGC,
                         gcType
                     );
+                    hs.setTimestamp(timestamp);
                     snapshots.add(hs);
                 }
                 regions = new ArrayList<>();
@@ -109,12 +115,36 @@ public class GcLogParser {
                 isFullGC,
                 gcType
             );
+            hs.setTimestamp(timestamp);
             snapshots.add(hs);
         }
 
         return snapshots;
     }
 
+    private static final Pattern UPTIME =
+        Pattern.compile("^(?:\\[[^\\]]*\\])*?\\[(\\d+)(?:\\.(\\d+))?(s|ms|ns)\\]");
+
+    /**
+     * Returns the JVM uptime in milliseconds from the line's uptime,
+     * uptimemillis or uptimenanos decoration, or -1 if it has none.
+     */
+    static long parseUptime(String line) {
+        Matcher m = UPTIME.matcher(line);
+        if (!m.find()) return -1;
+        long value = Long.parseLong(m.group(1));
+        String fraction = m.group(2);
+        switch (m.group(3)) {
+            case "s":
+                String millis = fraction == null ? "000" : (fraction + "00").substring(0, 3);
+                return value * 1000 + Integer.parseInt(millis);
+            case "ms":
+                return fraction == null ? value : -1;
+            default:
+                return fraction == null ? value / 1_000_000 : -1;
+        }
+    }
+
     /**
      * Parses a single line from the GC log and creates a Region object.
      *
@@ -136,6 +166,9 @@ public class GcLogParser {
             // Extract region type (column 4)
             String regionType = parts[4].trim();
 
+            // Extract usage (column 3), e.g. " 95%"
+            int usagePercent = parseUsage(parts[3]);
+
             // Skip empty region types
             if (regionType.isEmpty()) {
                 return null;
@@ -153,7 +186,7 @@ public class GcLogParser {
                 //no gc cycle here - parsing crash log
             }
             // Create and return the Region object
-            return new Region(index, regionType, gcCycleNumber);
+            return new Region(index, regionType, gcCycleNumber, usagePercent);
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println(parts[0]);
@@ -161,6 +194,27 @@ public class GcLogParser {
         }
     }
 
+    /**
+     * Reads the usage column like {@link StreamingGcLogParser} does: the
+     * number before the '%' (the whole column without one), 0 if it is not
+     * a number, clamped to 0-100.
+     */
+    static int parseUsage(String column) {
+        int pct = column.indexOf('%');
+        int start = 0;
+        int end = pct < 0 ? column.length() : pct;
+        while (start < end && column.charAt(start) == ' ') start++;
+        while (end > start && column.charAt(end - 1) == ' ') end--;
+        if (start == end) return 0;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = column.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return 0;
+            value = value * 10 + digit;
+        }
+        return Math.min(100, Math.max(0, value));
+    }
+
     public static List<HeapSnapshot> process(String path) {
         return parseLogFile(path);
     }
@@ -187,11 +241,13 @@ public class GcLogParser {
         for (int i = 0; i < snapshots.size() - 1; i = i + 2) {
             var hs = snapshots.get(i);
             var hs2 = snapshots.get(i + 1);
+            int before = hs.calculateExternalFragmentation();
+            int after = hs2.calculateExternalFragmentation();
             System.out.print(hs.getGcCycle() + ", ");
-            System.out.print(hs.calculateExternalFragmentation());
-            System.out.print(", " + hs2.calculateExternalFragmentation());
-            fragmentationMetrics.add(hs.calculateExternalFragmentation());
-            fragmentationAfterMetrics.add(hs2.calculateExternalFragmentation());
+            System.out.print(before);
+            System.out.print(", " + after);
+            fragmentationMetrics.add(before);
+            fragmentationAfterMetrics.add(after);
             System.out.println(", " + (hs.isFull() ? "1" : "0"));
             assert hs.getGcCycle() == hs2.getGcCycle();
         }
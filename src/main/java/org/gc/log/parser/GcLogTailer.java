@@ -0,0 +1,135 @@
+package org.gc.log.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+import org.heapfrag.model.HeapSnapshot;
+
+/**
+ * Follows a GC log that is still being written and emits every new heap
+ * snapshot as soon as its region section is complete.
+ *
+ * Handles -Xlog size based rotation (filecount/filesize): the JVM renames the
+ * current file to an archive and starts a new one under the same name. When
+ * the file under the path is replaced or shrinks, the rest of the old file is
+ * drained through the still open channel before the new file is read from
+ * its start. Parser state carries over, so nothing is lost at the switch.
+ */
+public class GcLogTailer implements Closeable {
+
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofMillis(250);
+
+    private final Path path;
+    private final Duration pollInterval;
+    private final StreamingGcLogParser parser;
+
+    private volatile boolean closed = false;
+
+    private byte[] buf = new byte[StreamingGcLogParser.READ_BUFFER_SIZE];
+    private int filled = 0;
+
+    public GcLogTailer(Path path, Consumer<HeapSnapshot> consumer) {
+        this(path, consumer, DEFAULT_POLL_INTERVAL);
+    }
+
+    public GcLogTailer(
+        Path path,
+        Consumer<HeapSnapshot> consumer,
+        Duration pollInterval
+    ) {
+        this.path = path;
+        this.pollInterval = pollInterval;
+        this.parser = new StreamingGcLogParser(consumer);
+    }
+
+    /**
+     * Reads the existing content and then keeps following the file until
+     * {@link #close()} is called. Blocks the calling thread.
+     */
+    public void run() throws IOException, InterruptedException {
+        FileChannel channel = null;
+        Object fileKey = null;
+        try {
+            while (!closed) {
+                if (channel == null) {
+                    if (!Files.exists(path)) {
+                        Thread.sleep(pollInterval.toMillis());
+                        continue;
+                    }
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    fileKey = fileKey(path);
+                }
+
+                if (readAvailable(channel) > 0) continue;
+
+                if (isRotated(channel, fileKey)) {
+                    // the old file is complete, finish its last line
+                    readAvailable(channel);
+                    flush(true);
+                    channel.close();
+                    channel = null;
+                    continue;
+                }
+                Thread.sleep(pollInterval.toMillis());
+            }
+        } finally {
+            if (channel != null) channel.close();
+        }
+    }
+
+    /**
+     * Parses whatever was appended since the last read.
+     *
+     * @return number of bytes read
+     */
+    private int readAvailable(FileChannel channel) throws IOException {
+        int total = 0;
+        while (true) {
+            if (filled == buf.length) {
+                // a single line longer than the buffer
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int read = channel.read(ByteBuffer.wrap(buf, filled, buf.length - filled));
+            if (read <= 0) return total;
+            filled += read;
+            total += read;
+            flush(false);
+        }
+    }
+
+    private void flush(boolean eof) {
+        int consumed = parser.acceptLines(ByteBuffer.wrap(buf), 0, filled, eof);
+        System.arraycopy(buf, consumed, buf, 0, filled - consumed);
+        filled -= consumed;
+    }
+
+    private boolean isRotated(FileChannel channel, Object fileKey)
+        throws IOException {
+        if (!Files.exists(path)) return false; // between rename and create
+        Object currentKey = fileKey(path);
+        if (fileKey != null && !Objects.equals(fileKey, currentKey)) return true;
+        return Files.size(path) < channel.position();
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    public int getEmitted() {
+        return parser.getEmitted();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,63 @@
+package org.gc.log.parser;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Detects gzip- or zstd-compressed GC logs by their magic bytes and wraps
+ * the stream so it is decompressed on the fly. Plain logs pass through.
+ */
+public class LogDecompressor {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    public enum Format {
+        PLAIN,
+        GZIP,
+        ZSTD,
+    }
+
+    /**
+     * Looks at the first bytes of the stream. The stream must support mark.
+     */
+    public static Format detect(InputStream in) throws IOException {
+        in.mark(4);
+        byte[] magic = in.readNBytes(4);
+        in.reset();
+        if (
+            magic.length >= 2 &&
+            (magic[0] & 0xFF) == 0x1F &&
+            (magic[1] & 0xFF) == 0x8B
+        ) {
+            return Format.GZIP;
+        }
+        if (
+            magic.length == 4 &&
+            (magic[0] & 0xFF) == 0x28 &&
+            (magic[1] & 0xFF) == 0xB5 &&
+            (magic[2] & 0xFF) == 0x2F &&
+            (magic[3] & 0xFF) == 0xFD
+        ) {
+            return Format.ZSTD;
+        }
+        return Format.PLAIN;
+    }
+
+    /**
+     * Returns a stream of the decompressed log.
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        switch (detect(buffered)) {
+            case GZIP:
+                return new GZIPInputStream(buffered, BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdInputStream(buffered);
+            default:
+                return buffered;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.gc.log.parser;
+
+import java.io.PrintStream;
+import org.heapfrag.model.AnomalyDetector;
+import org.heapfrag.model.HeapSnapshot;
+
+/**
+ * Fragmentation metrics of one GC log, aggregated while its snapshots are
+ * parsed, so no snapshot is retained.
+ */
+public class LogSummary {
+
+    static final String CSV_HEADER =
+        "file,bytes,snapshots,gc_cycles,full_gcs,regions,region_size," +
+        "ext_avg,ext_max,int_avg,int_max,free_avg,free_min," +
+        "wasted_avg,wasted_max,humongous_max,ext_over,humongous_over," +
+        "ext_jumps,humongous_blocked,full_after_buildup,error";
+
+    static final String ANOMALY_CSV_HEADER = "file,n,gc_cycle,time_ms,kind,value,limit";
+
+    private final String file;
+    private final long bytes;
+    private final int extThreshold;
+    private final int humongousThreshold;
+
+    private int snapshots;
+    private int gcCycles;
+    private int lastGcCycle = -1;
+    private int fullGcs;
+    private int regions;
+    private int regionSize;
+    private long extSum;
+    private int extMax;
+    private long intSum;
+    private int intMax;
+    private long freeSum;
+    private int freeMin = 100;
+    private long wastedSum;
+    private long wastedMax;
+    private int humongousMax;
+    private int extOver;
+    private int humongousOver;
+    private final AnomalyDetector anomalies = new AnomalyDetector();
+    private String error;
+
+    /**
+     * @param extThreshold snapshots with external fragmentation at or above
+     *                     this percentage are counted in ext_over
+     * @param humongousThreshold snapshots with more humongous regions than
+     *                           this are counted in humongous_over
+     */
+    public LogSummary(String file, long bytes, int extThreshold, int humongousThreshold) {
+        this.file = file;
+        this.bytes = bytes;
+        this.extThreshold = extThreshold;
+        this.humongousThreshold = humongousThreshold;
+    }
+
+    public void accept(HeapSnapshot snapshot) {
+        snapshots++;
+        anomalies.accept(snapshot);
+        if (snapshot.getGcCycle() != lastGcCycle) {
+            gcCycles++;
+            if (snapshot.isFull()) fullGcs++;
+            lastGcCycle = snapshot.getGcCycle();
+        }
+        regions = Math.max(regions, snapshot.getRegionCount());
+        regionSize = Math.max(regionSize, snapshot.getRegionSize());
+
+        int ext = snapshot.calculateExternalFragmentation();
+        int internal = snapshot.calculateInternalFragmentation();
+        int free = snapshot.calculateFree();
+        long wasted = snapshot.getWastedBytes();
+        extSum += ext;
+        extMax = Math.max(extMax, ext);
+        intSum += internal;
+        intMax = Math.max(intMax, internal);
+        freeSum += free;
+        freeMin = Math.min(freeMin, free);
+        wastedSum += wasted;
+        wastedMax = Math.max(wastedMax, wasted);
+        if (ext >= extThreshold) extOver++;
+
+        int humongous = 0;
+        for (int i = 0; i < snapshot.getRegionCount(); i++) {
+            int type = snapshot.getRegionType(i);
+            if (type == 120 || type == 150) humongous++;
+        }
+        humongousMax = Math.max(humongousMax, humongous);
+        if (humongous > humongousThreshold) humongousOver++;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public int getSnapshots() {
+        return snapshots;
+    }
+
+    public int getExtMax() {
+        return extMax;
+    }
+
+    public int getExtOver() {
+        return extOver;
+    }
+
+    public int getHumongousOver() {
+        return humongousOver;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public AnomalyDetector getAnomalies() {
+        return anomalies;
+    }
+
+    /**
+     * Writes one row per retained anomaly, see {@link #ANOMALY_CSV_HEADER}.
+     */
+    public void writeAnomalies(PrintStream out) {
+        for (AnomalyDetector.Anomaly a : anomalies.getAnomalies()) {
+            out.println(csv(file) + "," + a.position() + "," + a.gcCycle() + "," + a.timestamp() + "," +
+                a.kind() + "," + a.value() + "," + a.limit());
+        }
+    }
+
+    public String toCsvRow() {
+        int n = Math.max(1, snapshots);
+        return csv(file) + "," + bytes + "," + snapshots + "," + gcCycles + "," +
+            fullGcs + "," + regions + "," + regionSize + "," +
+            extSum / n + "," + extMax + "," +
+            intSum / n + "," + intMax + "," +
+            freeSum / n + "," + (snapshots == 0 ? 0 : freeMin) + "," +
+            wastedSum / n + "," + wastedMax + "," +
+            humongousMax + "," + extOver + "," + humongousOver + "," +
+            anomalies.getCount(AnomalyDetector.Kind.EXT_JUMP) + "," +
+            anomalies.getCount(AnomalyDetector.Kind.HUMONGOUS_BLOCKED) + "," +
+            anomalies.getCount(AnomalyDetector.Kind.FULL_AFTER_BUILDUP) + "," +
+            (error == null ? "" : csv(error));
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.stream.Stream;
 
 class GcLogLine {
 
@@ -44,9 +45,8 @@ public class Main {
     private static void handleFile(Path file) {
         if (!file.getFileName().toString().endsWith(".log")) return;
         List<GcLogLine> logs = null;
-        try {
-            logs = Files.readAllLines(file)
-                .stream()
+        try (Stream<String> lines = Files.lines(file)) {
+            logs = lines
                 .filter(l -> l.contains("Humongous regions:"))
                 .map(GcLogLine::new)
                 .filter(gcLogLine -> gcLogLine.humongousAfter > 90000)
@@ -0,0 +1,189 @@
+package org.gc.log.parser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import org.heapfrag.model.HeapSnapshot;
+
+/**
+ * Parses a GC log on several cores. The file is cut into chunks at points
+ * where the parser state is known to be reset, every chunk is parsed by its
+ * own {@link StreamingGcLogParser} on a ForkJoinPool and the per-chunk
+ * snapshot lists are concatenated in file order.
+ *
+ * A chunk always starts at a line that is not a "Heap Regions:" header and
+ * follows a plain (non-header, non-region) line. The plain line closes any
+ * open region section and the chunk's first line then becomes the "previous
+ * line" for gc,start detection, so results are identical to the sequential
+ * parser.
+ */
+public class ParallelGcLogParser {
+
+    /** Files are not split below this chunk size. */
+    static final long MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /** Bytes mapped at once while looking for a chunk boundary. */
+    static final int SCAN_WINDOW = 4 * 1024 * 1024;
+
+    public static List<HeapSnapshot> parse(Path logFile) throws IOException {
+        return parse(logFile, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses a GC log file on the given pool.
+     *
+     * @param logFile the GC log file
+     * @param pool pool running the chunk parsers
+     * @return snapshots in log order
+     * @throws IOException if the file cannot be read
+     */
+    public static List<HeapSnapshot> parse(Path logFile, ForkJoinPool pool)
+        throws IOException {
+        List<HeapSnapshot> snapshots = new ArrayList<>();
+        parse(logFile, pool, MIN_CHUNK_SIZE, snapshots::add);
+        return snapshots;
+    }
+
+    /**
+     * Parses a GC log file on the common pool and hands the snapshots to the
+     * consumer in log order. At most one wave of parallelism chunks is held
+     * in memory at a time.
+     *
+     * @return number of emitted snapshots
+     */
+    public static int parse(Path logFile, Consumer<HeapSnapshot> consumer)
+        throws IOException {
+        return parse(logFile, ForkJoinPool.commonPool(), MIN_CHUNK_SIZE, consumer);
+    }
+
+    static int parse(
+        Path logFile,
+        ForkJoinPool pool,
+        long minChunkSize,
+        Consumer<HeapSnapshot> consumer
+    ) throws IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                logFile,
+                StandardOpenOption.READ
+            )
+        ) {
+            long size = channel.size();
+            int chunks = (int) Math.max(
+                1,
+                Math.min(pool.getParallelism() * 4L, size / minChunkSize)
+            );
+
+            List<Callable<Long>> boundaryTasks = new ArrayList<>();
+            for (int i = 1; i < chunks; i++) {
+                long nominal = (size * i) / chunks;
+                boundaryTasks.add(() -> findBoundary(channel, nominal, size));
+            }
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            List<Future<Long>> boundaryResults = pool.invokeAll(boundaryTasks);
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], boundaryResults.get(i - 1).get());
+            }
+
+            // parse in waves so finished chunks can be drained in order
+            int wave = Math.max(1, pool.getParallelism());
+            int emitted = 0;
+            for (int first = 0; first < chunks; first += wave) {
+                int last = Math.min(chunks, first + wave);
+                List<List<HeapSnapshot>> results = new ArrayList<>();
+                List<Callable<Void>> parseTasks = new ArrayList<>();
+                StreamingGcLogParser parser = null;
+                for (int i = first; i < last; i++) {
+                    List<HeapSnapshot> chunk = new ArrayList<>();
+                    StreamingGcLogParser chunkParser = new StreamingGcLogParser(chunk::add);
+                    long from = bounds[i];
+                    long to = bounds[i + 1];
+                    results.add(chunk);
+                    parseTasks.add(() -> {
+                        chunkParser.parse(channel, from, to);
+                        return null;
+                    });
+                    parser = chunkParser;
+                }
+                for (Future<Void> f : pool.invokeAll(parseTasks)) f.get();
+
+                if (last == chunks) {
+                    // only the last chunk can end inside an open region section
+                    int total = emitted;
+                    for (List<HeapSnapshot> chunk : results) total += chunk.size();
+                    parser.finish(total == 0);
+                }
+                for (List<HeapSnapshot> chunk : results) {
+                    chunk.forEach(consumer);
+                    emitted += chunk.size();
+                }
+            }
+            return emitted;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the first safe chunk start at or after the nominal offset, or the
+     * file size if there is none.
+     */
+    static long findBoundary(FileChannel channel, long nominal, long size)
+        throws IOException {
+        long position = nominal;
+        boolean prevPlain = false;
+        boolean atLineStart = nominal == 0;
+        int window = SCAN_WINDOW;
+        while (position < size) {
+            int length = (int) Math.min(window, size - position);
+            boolean last = position + length == size;
+            MappedByteBuffer buf = channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                position,
+                length
+            );
+            int lineStart = 0;
+            int i = 0;
+            if (!atLineStart) {
+                // skip the partial line we landed in
+                while (i < length && buf.get(i) != '\n') i++;
+                if (i == length) {
+                    position += length;
+                    continue;
+                }
+                lineStart = ++i;
+                atLineStart = true;
+            }
+            for (; i <= length; i++) {
+                boolean eol = i < length ? buf.get(i) == '\n' : last && lineStart < length;
+                if (!eol) continue;
+                if (prevPlain && !StreamingGcLogParser.isHeaderLine(buf, lineStart, i)) {
+                    return position + lineStart;
+                }
+                prevPlain = StreamingGcLogParser.isPlainLine(buf, lineStart, i);
+                lineStart = i + 1;
+            }
+            if (last) break;
+            if (lineStart == 0) {
+                window = (int) Math.min(Integer.MAX_VALUE - 8, 2L * window);
+                continue;
+            }
+            position += lineStart;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,232 @@
+package org.gc.log.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+import org.heapfrag.model.SnapshotArena;
+import org.heapfrag.model.SnapshotTimeline;
+
+/**
+ * Sidecar files with already parsed timelines, so a log that was seen
+ * before opens without being parsed again.
+ *
+ * Entries are looked up by a key describing the log: path, size and
+ * modification time for files on disk ({@link #keyOf(Path)}), or the SHA-256
+ * of the content for uploads ({@link #contentKeyOf}). The key is stored in the
+ * sidecar and compared on load, a changed log therefore never matches a stale
+ * entry. Sidecars are memory-mapped for reading.
+ *
+ * The directory is kept below a size limit: after each store the least
+ * recently used sidecars are deleted, loading one counts as a use.
+ */
+public class SnapshotCache {
+
+    private static final int MAGIC = 0x47314843; // "G1HC"
+    private static final int FORMAT_VERSION = 2; // bumped with the SnapshotTimeline format
+
+    private static final String SUFFIX = ".g1hv";
+
+    private final Path dir;
+    private final boolean offHeap;
+    private final long maxBytes;
+
+    public SnapshotCache(Path dir) {
+        this(dir, false, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param offHeap  whether loaded timelines keep their regions in a
+     *                 {@link SnapshotArena}
+     * @param maxBytes total size of the sidecars to keep
+     */
+    public SnapshotCache(Path dir, boolean offHeap, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        }
+        this.dir = dir;
+        this.offHeap = offHeap;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Key of a log file on disk, from its absolute path, size and
+     * modification time.
+     */
+    public static String keyOf(Path log) throws IOException {
+        return log.toAbsolutePath().normalize() + "|" + Files.size(log) + "|" +
+            Files.getLastModifiedTime(log).toMillis();
+    }
+
+    /** Key of an uploaded file, from the SHA-256 of its content. */
+    public static String contentKeyOf(Path file) throws IOException {
+        MessageDigest sha = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(StreamingGcLogParser.READ_BUFFER_SIZE);
+            while (channel.read(buf) > 0) {
+                buf.flip();
+                sha.update(buf);
+                buf.clear();
+            }
+        }
+        return contentKeyOf(sha.digest());
+    }
+
+    /**
+     * Key of uploaded content whose SHA-256 is already known, e.g. from
+     * digesting a request body while it was read.
+     */
+    public static String contentKeyOf(byte[] sha256) {
+        return "sha256|" + HexFormat.of().formatHex(sha256);
+    }
+
+    /** A new SHA-256 digest, for {@link #contentKeyOf(byte[])}. */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the cached timeline for the key, or null if there is none or
+     * it cannot be read. A file that cannot be read is deleted.
+     */
+    public SnapshotTimeline load(String key) {
+        Path file = sidecar(key);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new BufferInputStream(mapped));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            SnapshotTimeline timeline = SnapshotTimeline.readFrom(in, offHeap ? new SnapshotArena() : null);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return timeline;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Deleting unreadable cache file " + file + ": " + e);
+            delete(file);
+            return null;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Failed to delete cache file " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the timeline for the key, replacing an older entry. Failures
+     * are reported and otherwise ignored, the cache is only an optimization.
+     */
+    public void store(String key, SnapshotTimeline timeline) {
+        Path file = sidecar(key);
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key);
+                timeline.writeTo(out);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write cache file " + file + ": " + e.getMessage());
+            return;
+        }
+        trim(file);
+    }
+
+    /**
+     * Deletes the least recently used sidecars, except keep, until the
+     * directory is within the size limit.
+     */
+    private void trim(Path keep) {
+        record Entry(Path file, long size, long used) {
+        }
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(SUFFIX)) continue;
+                try {
+                    Entry e = new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                    entries.add(e);
+                    total += e.size();
+                } catch (IOException ignored) {
+                    // deleted concurrently
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to list cache directory " + dir + ": " + e.getMessage());
+            return;
+        }
+        entries.sort(Comparator.comparingLong(Entry::used));
+        for (Entry e : entries) {
+            if (total <= maxBytes) break;
+            if (e.file().equals(keep)) continue;
+            try {
+                Files.deleteIfExists(e.file());
+                total -= e.size();
+            } catch (IOException ex) {
+                System.err.println("Failed to delete cache file " + e.file() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    Path sidecar(String key) {
+        byte[] digest = sha256().digest(key.getBytes(StandardCharsets.UTF_8));
+        return dir.resolve(HexFormat.of().formatHex(digest, 0, 16) + SUFFIX);
+    }
+
+    /** InputStream over a (mapped) buffer. */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package org.gc.log.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.heapfrag.model.HeapSnapshot;
+
+/**
+ * Byte-level GC log parser. Works directly on log bytes (memory-mapped file
+ * windows or any other ByteBuffer) without creating a String per line and
+ * hands every finished HeapSnapshot to a callback, so only the snapshot being
+ * assembled is held in memory.
+ *
+ * Follows exactly the same state machine as {@link GcLogParser#parseLog}, so
+ * both produce identical snapshots for the same input.
+ */
+public class StreamingGcLogParser {
+
+    /** Size of a single mapped window; lines crossing a window end are remapped. */
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /** Read buffer used when parsing from a stream. */
+    static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte[] HEAP_REGIONS = "Heap Regions:".getBytes(
+        StandardCharsets.US_ASCII
+    );
+    private static final byte[] GC_START = "gc,start".getBytes(
+        StandardCharsets.US_ASCII
+    );
+    private static final byte[] FULL = "Full".getBytes(
+        StandardCharsets.US_ASCII
+    );
+    private static final byte[] GC_OPEN = "GC(".getBytes(
+        StandardCharsets.US_ASCII
+    );
+
+    // fields decoded from a region line by parseRegion
+    static final int INDEX = 0;
+    static final int TYPE = 1;
+    static final int GC_CYCLE = 2;
+    static final int USAGE = 3;
+    static final int BOTTOM = 4;
+    static final int TOP = 5;
+    static final int END = 6;
+    static final int TAMS = 7;
+    static final int PB = 8;
+    static final int FLAGS = 9;
+    static final int FIELDS = 10;
+
+    private final Consumer<HeapSnapshot> consumer;
+
+    // region columns of the section being parsed, reused between snapshots
+    private byte[] types = new byte[1024];
+    private byte[] usage = new byte[1024];
+    private int[] indices = new int[1024];
+    private int count = 0;
+    private boolean dense = true;
+    private int lastGcCycle = 0;
+    private final long[] decoded = new long[FIELDS];
+
+    // region detail columns, only kept while all regions of the section are
+    // laid out contiguously with the same size
+    private int[] top = new int[1024];
+    private int[] tams = new int[1024];
+    private int[] pb = new int[1024];
+    private byte[] flags = new byte[1024];
+    private boolean detail = false;
+    private long heapBase = 0;
+    private int regionSize = 0;
+
+    private boolean inHeapRegionSection = false;
+    private boolean isFullGC = false;
+    private String gcType = "";
+    private long timestamp = -1;
+    private int emitted = 0;
+
+    // what we need to know about the previous line outside a region section
+    private boolean prevIsGcStart = false;
+    private boolean prevIsFull = false;
+    private String prevGcType = "";
+
+    public StreamingGcLogParser(Consumer<HeapSnapshot> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Memory-maps a GC log and emits its heap snapshots one at a time.
+     *
+     * @param logFile the GC log file
+     * @param consumer receives every parsed snapshot in log order
+     * @return number of emitted snapshots
+     * @throws IOException if the file cannot be read
+     */
+    public static int parse(Path logFile, Consumer<HeapSnapshot> consumer)
+        throws IOException {
+        StreamingGcLogParser parser = new StreamingGcLogParser(consumer);
+        try (
+            FileChannel channel = FileChannel.open(
+                logFile,
+                StandardOpenOption.READ
+            )
+        ) {
+            parser.parse(channel, 0, channel.size());
+        }
+        parser.finish();
+        return parser.emitted;
+    }
+
+    /**
+     * Parses a GC log from a stream as the bytes arrive, emitting snapshots
+     * as soon as their region section ends. Only the current partial line is
+     * carried over between reads.
+     *
+     * @param in the (already decompressed) log stream, not closed
+     * @param consumer receives every parsed snapshot in log order
+     * @return number of emitted snapshots
+     * @throws IOException if the stream cannot be read
+     */
+    public static int parse(InputStream in, Consumer<HeapSnapshot> consumer)
+        throws IOException {
+        StreamingGcLogParser parser = new StreamingGcLogParser(consumer);
+        byte[] buf = new byte[READ_BUFFER_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(buf);
+        int filled = 0;
+        int read;
+        while ((read = in.read(buf, filled, buf.length - filled)) != -1) {
+            filled += read;
+            int consumed = parser.acceptLines(view, 0, filled, false);
+            if (consumed > 0) {
+                System.arraycopy(buf, consumed, buf, 0, filled - consumed);
+                filled -= consumed;
+            } else if (filled == buf.length) {
+                // a single line longer than the buffer
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                view = ByteBuffer.wrap(buf);
+            }
+        }
+        parser.acceptLines(view, 0, filled, true);
+        parser.finish();
+        return parser.emitted;
+    }
+
+    /**
+     * Feeds the lines in [from, to) of the channel into this parser.
+     * The range must start at a line start; the last line may be unterminated.
+     */
+    void parse(FileChannel channel, long from, long to) throws IOException {
+        long position = from;
+        int window = WINDOW_SIZE;
+        while (position < to) {
+            int length = (int) Math.min(window, to - position);
+            boolean last = position + length == to;
+            MappedByteBuffer buf = channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                position,
+                length
+            );
+            int consumed = acceptLines(buf, 0, length, last);
+            if (consumed == 0 && !last) {
+                // a single line longer than the window, widen and retry
+                window = (int) Math.min(Integer.MAX_VALUE - 8, 2L * window);
+                continue;
+            }
+            position += consumed;
+        }
+    }
+
+    /**
+     * Feeds all complete lines in [start, end) of the buffer into this parser.
+     *
+     * @param eof whether a trailing line without newline is complete as well
+     * @return number of bytes consumed, always ending at a line boundary
+     */
+    public int acceptLines(ByteBuffer buf, int start, int end, boolean eof) {
+        int lineStart = start;
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == '\n') {
+                acceptLine(buf, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (eof && lineStart < end) {
+            acceptLine(buf, lineStart, end);
+            lineStart = end;
+        }
+        return lineStart - start;
+    }
+
+    /**
+     * Feeds a single line, without its line terminator, into this parser.
+     */
+    public void acceptLine(ByteBuffer buf, int start, int end) {
+        if (end > start && buf.get(end - 1) == '\r') end--;
+
+        // Check if we've reached the "Heap Regions:" section
+        if (indexOf(buf, start, end, HEAP_REGIONS) >= 0) {
+            inHeapRegionSection = true;
+            // adjacent sections merge, the first header dates the snapshot
+            if (count == 0) timestamp = parseUptime(buf, start, end);
+            if (prevIsGcStart) {
+                //new GC cycle detected
+                if (prevIsFull) isFullGC = true;
+                gcType = prevGcType;
+            }
+            return;
+        }
+
+        if (!inHeapRegionSection) {
+            rememberPrevLine(buf, start, end);
+            return;
+        }
+
+        if (parseRegion(buf, start, end, decoded)) {
+            addRegion(decoded);
+        } else {
+            // End of region section — save snapshot if we have data
+            if (count > 0) emit();
+            count = 0;
+            dense = true;
+            isFullGC = false;
+            inHeapRegionSection = false;
+            gcType = "";
+        }
+    }
+
+    /**
+     * Signals end of input. Like the sequential parser, a region section that
+     * is still open is only kept when nothing else was found (crash logs).
+     */
+    public void finish() {
+        finish(emitted == 0);
+    }
+
+    void finish(boolean keepOpenSection) {
+        if (keepOpenSection && count > 0) emit();
+        count = 0;
+        dense = true;
+    }
+
+    public int getEmitted() {
+        return emitted;
+    }
+
+    private void addRegion(long[] region) {
+        if (count == types.length) {
+            types = Arrays.copyOf(types, count * 2);
+            usage = Arrays.copyOf(usage, count * 2);
+            indices = Arrays.copyOf(indices, count * 2);
+            top = Arrays.copyOf(top, count * 2);
+            tams = Arrays.copyOf(tams, count * 2);
+            pb = Arrays.copyOf(pb, count * 2);
+            flags = Arrays.copyOf(flags, count * 2);
+        }
+        int index = (int) region[INDEX];
+        types[count] = (byte) region[TYPE];
+        usage[count] = (byte) region[USAGE];
+        indices[count] = index;
+        dense &= index == count;
+        lastGcCycle = (int) region[GC_CYCLE];
+
+        long bottom = region[BOTTOM];
+        long size = region[END] - bottom;
+        if (count == 0) {
+            detail = bottom >= 0 && size > 0 && size <= Integer.MAX_VALUE;
+            regionSize = (int) size;
+            heapBase = bottom - (long) index * regionSize;
+        } else if (detail) {
+            detail = bottom >= 0 && size == regionSize &&
+                bottom == heapBase + (long) index * regionSize;
+        }
+        if (detail) {
+            long used = region[TOP] - bottom;
+            detail = used >= 0 && used <= size;
+            top[count] = (int) used;
+            tams[count] = offset(region[TAMS], bottom, size);
+            pb[count] = offset(region[PB], bottom, size);
+            flags[count] = (byte) region[FLAGS];
+        }
+        count++;
+    }
+
+    private static int offset(long address, long bottom, long size) {
+        long offset = address - bottom;
+        return address < 0 || offset < 0 || offset > size ? -1 : (int) offset;
+    }
+
+    private void emit() {
+        HeapSnapshot snapshot = detail
+            ? new HeapSnapshot(
+                lastGcCycle,
+                Arrays.copyOf(types, count),
+                Arrays.copyOf(usage, count),
+                dense ? null : Arrays.copyOf(indices, count),
+                count,
+                isFullGC,
+                gcType,
+                heapBase,
+                regionSize,
+                Arrays.copyOf(top, count),
+                Arrays.copyOf(tams, count),
+                Arrays.copyOf(pb, count),
+                Arrays.copyOf(flags, count)
+            )
+            : new HeapSnapshot(
+                lastGcCycle,
+                Arrays.copyOf(types, count),
+                Arrays.copyOf(usage, count),
+                dense ? null : Arrays.copyOf(indices, count),
+                count,
+                isFullGC,
+                gcType
+            );
+        snapshot.setTimestamp(timestamp);
+        consumer.accept(snapshot);
+        emitted++;
+    }
+
+    /**
+     * A line that is neither a "Heap Regions:" header nor region data. After
+     * such a line the parser is always outside of a region section.
+     */
+    static boolean isPlainLine(ByteBuffer buf, int start, int end) {
+        if (end > start && buf.get(end - 1) == '\r') end--;
+        return (
+            indexOf(buf, start, end, HEAP_REGIONS) < 0 &&
+            !parseRegion(buf, start, end, null)
+        );
+    }
+
+    static boolean isHeaderLine(ByteBuffer buf, int start, int end) {
+        return indexOf(buf, start, end, HEAP_REGIONS) >= 0;
+    }
+
+    private void rememberPrevLine(ByteBuffer buf, int start, int end) {
+        prevIsGcStart = indexOf(buf, start, end, GC_START) >= 0;
+        if (!prevIsGcStart) return;
+        prevIsFull = indexOf(buf, start, end, FULL) >= 0;
+        // gc,start lines are rare, decoding the type here is cheap
+        int paren = indexOf(buf, start, end, (byte) ')');
+        prevGcType = decode(buf, Math.min(paren < 0 ? start + 1 : paren + 2, end), end);
+    }
+
+    /**
+     * Decodes "... GC(n) |  idx|bottom, top, end|pct| T|CS|TAMS t| PB p| state"
+     * without splitting into out, indexed by INDEX ... FLAGS. Addresses that
+     * are missing or malformed are -1. With a null out only checks the line.
+     * Returns false when the line is not region data.
+     */
+    static boolean parseRegion(ByteBuffer buf, int start, int end, long[] out) {
+        int p0 = indexOf(buf, start, end, (byte) '|');
+        if (p0 < 0) return false;
+        int p1 = indexOf(buf, p0 + 1, end, (byte) '|');
+        if (p1 < 0) return false;
+        int p2 = indexOf(buf, p1 + 1, end, (byte) '|');
+        if (p2 < 0) return false;
+        int p3 = indexOf(buf, p2 + 1, end, (byte) '|');
+        if (p3 < 0) return false;
+        int p4 = indexOf(buf, p3 + 1, end, (byte) '|');
+        if (p4 < 0) p4 = end;
+
+        int index = parseInt(buf, p0 + 1, p1);
+        if (index < 0) return false;
+        int type = parseType(buf, p3 + 1, p4);
+        if (type < 0) return false;
+        if (out == null) return true;
+
+        //gc cycle might be absent if we're parsing crash log
+        int gcCycle = 0;
+        int gc = indexOf(buf, start, p0, GC_OPEN);
+        if (gc >= 0) {
+            int close = indexOf(buf, gc, p0, (byte) ')');
+            gcCycle = Math.max(0, parseInt(buf, gc + GC_OPEN.length, close));
+        }
+        out[INDEX] = index;
+        out[TYPE] = type;
+        out[GC_CYCLE] = gcCycle;
+
+        // "  0%" / "100%"
+        int pct = indexOf(buf, p2 + 1, p3, (byte) '%');
+        out[USAGE] = Math.min(100, Math.max(0, parseInt(buf, p2 + 1, pct < 0 ? p3 : pct)));
+
+        // "0x<bottom>, 0x<top>, 0x<end>"
+        int c1 = indexOf(buf, p1 + 1, p2, (byte) ',');
+        int c2 = c1 < 0 ? -1 : indexOf(buf, c1 + 1, p2, (byte) ',');
+        out[BOTTOM] = c2 < 0 ? -1 : parseHex(buf, p1 + 1, c1);
+        out[TOP] = c2 < 0 ? -1 : parseHex(buf, c1 + 1, c2);
+        out[END] = c2 < 0 ? -1 : parseHex(buf, c2 + 1, p2);
+
+        // optional trailing columns: CS, TAMS, PB and remembered set state
+        long tams = -1;
+        long pb = -1;
+        int flags = 0;
+        for (int col = p4; col < end; ) {
+            int next = indexOf(buf, col + 1, end, (byte) '|');
+            if (next < 0) next = end;
+            int s = col + 1;
+            while (s < next && buf.get(s) == ' ') s++;
+            if (s + 1 < next) {
+                byte a = buf.get(s);
+                byte b = buf.get(s + 1);
+                if (a == 'C' && b == 'S') flags |= HeapSnapshot.FLAG_CS;
+                else if (a == 'T' && b == 'A') tams = parseHex(buf, s + 4, next);
+                else if (a == 'P' && b == 'B') pb = parseHex(buf, s + 2, next);
+                else if (a == 'U' && b == 'n') flags |= HeapSnapshot.REMSET_UNTRACKED << 1;
+                else if (a == 'U' && b == 'p') flags |= HeapSnapshot.REMSET_UPDATING << 1;
+                else if (a == 'C' && b == 'o') flags |= HeapSnapshot.REMSET_COMPLETE << 1;
+            }
+            col = next;
+        }
+        out[TAMS] = tams;
+        out[PB] = pb;
+        out[FLAGS] = flags;
+        return true;
+    }
+
+    /**
+     * Parses " 0x00000000a0000000" up to the first non hex digit. Returns -1
+     * if there is no 0x prefix or no digit.
+     */
+    static long parseHex(ByteBuffer buf, int start, int end) {
+        while (start < end && buf.get(start) == ' ') start++;
+        if (start + 2 >= end || buf.get(start) != '0' || buf.get(start + 1) != 'x') return -1;
+        long value = 0;
+        int i = start + 2;
+        for (; i < end && i < start + 18; i++) {
+            int c = buf.get(i);
+            int digit;
+            if (c >= '0' && c <= '9') digit = c - '0';
+            else if (c >= 'a' && c <= 'f') digit = c - 'a' + 10;
+            else if (c >= 'A' && c <= 'F') digit = c - 'A' + 10;
+            else break;
+            value = (value << 4) | digit;
+        }
+        return i == start + 2 || value < 0 ? -1 : value;
+    }
+
+    /**
+     * Maps a (space padded) region type column to the codes used by Region.
+     * Returns -1 for empty or unknown types.
+     */
+    static int parseType(ByteBuffer buf, int start, int end) {
+        while (start < end && buf.get(start) == ' ') start++;
+        while (end > start && buf.get(end - 1) == ' ') end--;
+        int len = end - start;
+        if (len == 1) {
+            switch (buf.get(start)) {
+                case 'F':
+                    return 0;
+                case 'E':
+                    return 30;
+                case 'S':
+                    return 60;
+                case 'O':
+                    return 90;
+                default:
+                    return -1;
+            }
+        }
+        if (len == 2) {
+            byte a = buf.get(start);
+            byte b = buf.get(start + 1);
+            if (a == 'H' && b == 'S') return 120;
+            if (a == 'H' && b == 'C') return 150;
+            if (a == 'C' && b == 'S') return 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the JVM uptime from the first leading [...] decoration in the
+     * uptime ("[1.234s]"), uptimemillis ("[1234ms]") or uptimenanos
+     * ("[1234ns]") format. Returns milliseconds, or -1 if there is none.
+     */
+    static long parseUptime(ByteBuffer buf, int start, int end) {
+        int open = start;
+        while (open < end && buf.get(open) == '[') {
+            int close = indexOf(buf, open + 1, end, (byte) ']');
+            if (close < 0) return -1;
+            long millis = uptimeMillis(buf, open + 1, close);
+            if (millis >= 0) return millis;
+            open = close + 1;
+        }
+        return -1;
+    }
+
+    private static long uptimeMillis(ByteBuffer buf, int start, int end) {
+        long value = 0;
+        long fraction = 0;
+        int fractionDigits = -1;
+        int i = start;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                if (fractionDigits < 0) {
+                    value = value * 10 + (b - '0');
+                } else if (fractionDigits++ < 3) {
+                    fraction = fraction * 10 + (b - '0');
+                }
+            } else if (b == '.' && fractionDigits < 0 && i > start) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == start || fractionDigits == 0) return -1;
+        int unit = end - i;
+        if (unit == 1 && buf.get(i) == 's') {
+            for (int d = Math.max(fractionDigits, 0); d < 3; d++) fraction *= 10;
+            return value * 1000 + fraction;
+        }
+        if (unit == 2 && buf.get(i + 1) == 's' && fractionDigits < 0) {
+            if (buf.get(i) == 'm') return value;
+            if (buf.get(i) == 'n') return value / 1_000_000;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a space padded non-negative decimal. Returns -1 if malformed.
+     */
+    static int parseInt(ByteBuffer buf, int start, int end) {
+        if (end < 0) return -1;
+        while (start < end && buf.get(start) == ' ') start++;
+        while (end > start && buf.get(end - 1) == ' ') end--;
+        if (start == end) return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    static int indexOf(ByteBuffer buf, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    static int indexOf(ByteBuffer buf, int start, int end, byte[] needle) {
+        byte first = needle[0];
+        int last = end - needle.length;
+        outer:
+        for (int i = start; i <= last; i++) {
+            if (buf.get(i) != first) continue;
+            for (int j = 1; j < needle.length; j++) {
+                if (buf.get(i + j) != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String decode(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
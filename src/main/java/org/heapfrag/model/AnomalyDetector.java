@@ -0,0 +1,157 @@
+package org.heapfrag.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Looks across snapshots for fragmentation anomalies, fed one snapshot at a
+ * time in log order while a log is parsed or tailed.
+ *
+ * <ul>
+ * <li>{@link Kind#EXT_JUMP}: external fragmentation rises at least jump
+ *     points above its moving average.</li>
+ * <li>{@link Kind#HUMONGOUS_BLOCKED}: at least minFree percent of the heap
+ *     is free, but the longest free run is shorter than the largest humongous
+ *     object seen so far (or the configured size), so that allocation would
+ *     need a GC despite the free space.</li>
+ * <li>{@link Kind#FULL_AFTER_BUILDUP}: a Full GC while the moving average of
+ *     external fragmentation was at or above buildup percent.</li>
+ * </ul>
+ *
+ * Every detector keeps O(1) state and reports the snapshot where its
+ * condition starts to hold, not every snapshot while it holds. Only the
+ * first {@link #MAX_RETAINED} anomalies are kept; the counts cover all.
+ */
+public class AnomalyDetector implements Consumer<HeapSnapshot> {
+
+    public enum Kind {
+        EXT_JUMP,
+        HUMONGOUS_BLOCKED,
+        FULL_AFTER_BUILDUP
+    }
+
+    /**
+     * One finding. value and limit depend on the kind: external fragmentation
+     * and its moving average (EXT_JUMP), longest free run and humongous object
+     * size in regions (HUMONGOUS_BLOCKED), moving average of external
+     * fragmentation and the buildup threshold (FULL_AFTER_BUILDUP).
+     */
+    public record Anomaly(Kind kind, int position, int gcCycle, long timestamp, int value, int limit) {}
+
+    public static final int DEFAULT_JUMP = 25;
+    public static final int DEFAULT_MIN_FREE = 20;
+    public static final int DEFAULT_BUILDUP = 40;
+    public static final int MAX_RETAINED = 10_000;
+
+    // weight of a new snapshot in the moving average of external fragmentation
+    private static final double ALPHA = 1.0 / 8;
+
+    private final int jump;
+    private final int minFree;
+    private final int buildup;
+
+    private final List<Anomaly> anomalies = new ArrayList<>();
+    private final int[] counts = new int[Kind.values().length];
+    private int position = 0;
+
+    private double extAverage = -1;
+    private boolean jumping = false;
+    private int largestHumongous;
+    private boolean blocked = false;
+    private int lastFullCycle = Integer.MIN_VALUE;
+
+    public AnomalyDetector() {
+        this(DEFAULT_JUMP, DEFAULT_MIN_FREE, DEFAULT_BUILDUP, 0);
+    }
+
+    /**
+     * @param jump percentage points above the moving average that count as a jump
+     * @param minFree free heap percentage from which a blocked humongous allocation is reported
+     * @param buildup moving average of external fragmentation that counts as buildup
+     * @param humongousRegions known humongous object size in regions, 0 to
+     *                         learn it from the humongous objects in the log
+     */
+    public AnomalyDetector(int jump, int minFree, int buildup, int humongousRegions) {
+        this.jump = jump;
+        this.minFree = minFree;
+        this.buildup = buildup;
+        this.largestHumongous = humongousRegions;
+    }
+
+    @Override
+    public synchronized void accept(HeapSnapshot s) {
+        int n = position++;
+        int ext = s.calculateExternalFragmentation();
+
+        if (extAverage < 0) extAverage = ext;
+        boolean jumpNow = ext >= extAverage + jump;
+        if (jumpNow && !jumping) {
+            report(Kind.EXT_JUMP, n, s, ext, (int) Math.round(extAverage));
+        }
+        jumping = jumpNow;
+
+        if (s.isFull() && s.getGcCycle() != lastFullCycle) {
+            lastFullCycle = s.getGcCycle();
+            if (extAverage >= buildup) {
+                report(Kind.FULL_AFTER_BUILDUP, n, s, (int) Math.round(extAverage), buildup);
+            }
+        }
+        extAverage += ALPHA * (ext - extAverage);
+
+        largestHumongous = Math.max(largestHumongous, s.getMaxHumongousRun());
+        boolean blockedNow = largestHumongous > 0 &&
+            s.calculateFree() >= minFree &&
+            s.getMaxFreeRun() < largestHumongous;
+        if (blockedNow && !blocked) {
+            report(Kind.HUMONGOUS_BLOCKED, n, s, s.getMaxFreeRun(), largestHumongous);
+        }
+        blocked = blockedNow;
+    }
+
+    private void report(Kind kind, int n, HeapSnapshot s, int value, int limit) {
+        counts[kind.ordinal()]++;
+        if (anomalies.size() < MAX_RETAINED) {
+            anomalies.add(new Anomaly(kind, n, s.getGcCycle(), s.getTimestamp(), value, limit));
+        }
+    }
+
+    /** Number of snapshots seen. */
+    public synchronized int getSnapshotCount() {
+        return position;
+    }
+
+    public synchronized int getCount(Kind kind) {
+        return counts[kind.ordinal()];
+    }
+
+    /** The retained anomalies in log order. */
+    public synchronized List<Anomaly> getAnomalies() {
+        return new ArrayList<>(anomalies);
+    }
+
+    /**
+     * {"snapshots":N,"counts":{"EXT_JUMP":..,..},"anomalies":[{"kind":..,
+     * "n":..,"gc":..,"time":..,"value":..,"limit":..},..]}
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder(64 + anomalies.size() * 80);
+        json.append("{\"snapshots\":").append(position).append(",\"counts\":{");
+        for (Kind kind : Kind.values()) {
+            if (kind.ordinal() > 0) json.append(',');
+            json.append('"').append(kind).append("\":").append(counts[kind.ordinal()]);
+        }
+        json.append("},\"anomalies\":[");
+        for (int i = 0; i < anomalies.size(); i++) {
+            Anomaly a = anomalies.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"kind\":\"").append(a.kind())
+                .append("\",\"n\":").append(a.position())
+                .append(",\"gc\":").append(a.gcCycle())
+                .append(",\"time\":").append(a.timestamp())
+                .append(",\"value\":").append(a.value())
+                .append(",\"limit\":").append(a.limit()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
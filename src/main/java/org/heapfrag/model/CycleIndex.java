@@ -0,0 +1,117 @@
+package org.heapfrag.model;
+
+import java.util.Arrays;
+
+/**
+ * Maps GC cycle numbers to the positions of their snapshots in a timeline.
+ *
+ * Consecutive snapshots of the same cycle form a run [start, end). Runs are
+ * kept in log order, and an offset array indexed by cycle number points at
+ * the first run of every cycle; further runs of the same cycle (logs where
+ * cycle numbers go backwards, e.g. concatenated files) are chained. All
+ * lookups are O(1).
+ *
+ * Filled by a single writer through {@link #add}; readers only see complete
+ * runs published through the volatile run count.
+ */
+public class CycleIndex {
+
+    private static final class Runs {
+
+        final int[] cycle;
+        final int[] start;
+        final int[] end;
+        final int[] next;
+
+        Runs(int capacity) {
+            cycle = new int[capacity];
+            start = new int[capacity];
+            end = new int[capacity];
+            next = new int[capacity];
+        }
+
+        Runs(Runs from, int capacity) {
+            cycle = Arrays.copyOf(from.cycle, capacity);
+            start = Arrays.copyOf(from.start, capacity);
+            end = Arrays.copyOf(from.end, capacity);
+            next = Arrays.copyOf(from.next, capacity);
+        }
+    }
+
+    private volatile Runs runs = new Runs(64);
+    private volatile int runCount = 0;
+
+    private volatile int[] firstRun = new int[0]; // cycle -> run, -1 if none
+    private int[] lastRun = new int[0]; // cycle -> last run, for chaining
+
+    /**
+     * Records that the snapshot at position belongs to cycle. Positions must
+     * be added in increasing order without gaps.
+     */
+    void add(int position, int cycle) {
+        Runs r = runs;
+        int count = runCount;
+        if (count > 0 && r.cycle[count - 1] == cycle) {
+            r.end[count - 1] = position + 1;
+            return;
+        }
+        if (count == r.cycle.length) {
+            r = new Runs(r, count * 2);
+        }
+        r.cycle[count] = cycle;
+        r.start[count] = position;
+        r.end[count] = position + 1;
+        r.next[count] = -1;
+        runs = r;
+
+        int c = Math.max(cycle, 0);
+        int[] first = firstRun;
+        if (c >= first.length) {
+            int capacity = Math.max(c + 1, first.length * 2);
+            first = Arrays.copyOf(first, capacity);
+            Arrays.fill(first, firstRun.length, capacity, -1);
+            lastRun = Arrays.copyOf(lastRun, capacity);
+        }
+        if (first[c] < 0) {
+            first[c] = count;
+        } else {
+            r.next[lastRun[c]] = count;
+        }
+        lastRun[c] = count;
+        firstRun = first;
+        runCount = count + 1;
+    }
+
+    /** Number of runs, i.e. distinct cycles in log order. */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getRunCycle(int run) {
+        return runs.cycle[run];
+    }
+
+    /** Position of the first snapshot of the run. */
+    public int getRunStart(int run) {
+        return runs.start[run];
+    }
+
+    /** Position after the last snapshot of the run. */
+    public int getRunEnd(int run) {
+        return runs.end[run];
+    }
+
+    /** First run of the cycle, or -1 if the cycle has no snapshot. */
+    public int getFirstRun(int cycle) {
+        int[] first = firstRun;
+        if (cycle < 0 || cycle >= first.length) return -1;
+        int run = first[cycle];
+        return run < runCount ? run : -1;
+    }
+
+    /** Next run of the same cycle, or -1. */
+    public int getNextRun(int run) {
+        int next = runs.next[run];
+        return next >= 0 && next < runCount ? next : -1;
+    }
+}
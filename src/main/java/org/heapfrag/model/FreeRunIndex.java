@@ -0,0 +1,141 @@
+package org.heapfrag.model;
+
+import java.util.Arrays;
+
+/**
+ * The runs of free regions of a snapshot, for humongous allocation
+ * feasibility: can an object of N regions be placed, and how many fit.
+ *
+ * Runs are kept as a histogram of distinct run lengths in ascending order
+ * with suffix sums of run and region counts, so "does an N-region object
+ * fit", "how many runs can take one" and "how many free regions are in
+ * runs of at least N" are binary searches. "How many N-region objects fit
+ * at once" also adds up floor(length / N) over the distinct lengths of at
+ * least N; a heap with F free regions has fewer than sqrt(2F) distinct
+ * lengths, and fewer than F / N of them are long enough.
+ */
+public class FreeRunIndex {
+
+    private final int[] lengths; // distinct run lengths, ascending
+    private final int[] counts; // number of runs of each length
+    private final int[] runsFrom; // runs of lengths[i] or longer, one extra 0 at the end
+    private final long[] regionsFrom; // free regions in those runs, one extra 0 at the end
+
+    /**
+     * Indexes the free runs of the snapshot; regions are contiguous when
+     * their indices are consecutive, as in {@link HeapSnapshot#getMaxFreeRun()}.
+     */
+    public FreeRunIndex(HeapSnapshot s) {
+        int[] runs = new int[16];
+        int runCount = 0;
+        int run = 0;
+        int lastIdx = -1;
+        for (int i = 0; i <= s.getRegionCount(); i++) {
+            // one step past the end closes the last run
+            boolean free = i < s.getRegionCount() && s.getRegionType(i) == 0;
+            int index = i < s.getRegionCount() ? s.getRegionIndex(i) : lastIdx + 1;
+            if (run > 0 && (!free || lastIdx + 1 != index)) {
+                if (runCount == runs.length) runs = Arrays.copyOf(runs, runCount * 2);
+                runs[runCount++] = run;
+                run = 0;
+            }
+            if (free) run++;
+            lastIdx = index;
+        }
+        Arrays.sort(runs, 0, runCount);
+
+        int distinct = 0;
+        for (int i = 0; i < runCount; i++) {
+            if (i == 0 || runs[i] != runs[i - 1]) distinct++;
+        }
+        lengths = new int[distinct];
+        counts = new int[distinct];
+        int d = -1;
+        for (int i = 0; i < runCount; i++) {
+            if (i == 0 || runs[i] != runs[i - 1]) lengths[++d] = runs[i];
+            counts[d]++;
+        }
+        runsFrom = new int[distinct + 1];
+        regionsFrom = new long[distinct + 1];
+        for (int i = distinct - 1; i >= 0; i--) {
+            runsFrom[i] = runsFrom[i + 1] + counts[i];
+            regionsFrom[i] = regionsFrom[i + 1] + (long) counts[i] * lengths[i];
+        }
+    }
+
+    /** Position of the shortest length of at least regions. */
+    private int firstAtLeast(int regions) {
+        int i = Arrays.binarySearch(lengths, regions);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    public int getRunCount() {
+        return runsFrom[0];
+    }
+
+    public long getFreeRegions() {
+        return regionsFrom[0];
+    }
+
+    public int getMaxRun() {
+        return lengths.length == 0 ? 0 : lengths[lengths.length - 1];
+    }
+
+    /** Whether an object of the given number of regions can be placed. */
+    public boolean canPlace(int regions) {
+        return regions <= 0 || getMaxRun() >= regions;
+    }
+
+    /** Number of free runs that can each take an object of the given size. */
+    public int countRuns(int regions) {
+        return runsFrom[firstAtLeast(Math.max(regions, 1))];
+    }
+
+    /** Free regions in runs that can take an object of the given size. */
+    public long countUsableRegions(int regions) {
+        return regionsFrom[firstAtLeast(Math.max(regions, 1))];
+    }
+
+    /**
+     * Number of objects of the given size that can be placed at the same
+     * time without a GC.
+     */
+    public long countFitting(int regions) {
+        if (regions <= 0) throw new IllegalArgumentException("Object size must be positive: " + regions);
+        long fitting = 0;
+        for (int i = firstAtLeast(regions); i < lengths.length; i++) {
+            fitting += (long) counts[i] * (lengths[i] / regions);
+        }
+        return fitting;
+    }
+
+    /** Distinct run lengths in ascending order. */
+    public int[] getLengths() {
+        return lengths.clone();
+    }
+
+    /** Number of runs of each of {@link #getLengths()}. */
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * {"free":F,"runs":R,"maxRun":M,"lengths":[..],"counts":[..]}, plus for
+     * a positive object size {"regions":N,"fits":..,"fitRuns":..,"objects":..}.
+     */
+    public String toJson(int regions) {
+        StringBuilder json = new StringBuilder(64 + lengths.length * 8);
+        json.append("{\"free\":").append(getFreeRegions())
+            .append(",\"runs\":").append(getRunCount())
+            .append(",\"maxRun\":").append(getMaxRun());
+        if (regions > 0) {
+            json.append(",\"regions\":").append(regions)
+                .append(",\"fits\":").append(canPlace(regions))
+                .append(",\"fitRuns\":").append(countRuns(regions))
+                .append(",\"objects\":").append(countFitting(regions));
+        }
+        json.append(",\"lengths\":").append(Arrays.toString(lengths).replace(" ", ""))
+            .append(",\"counts\":").append(Arrays.toString(counts).replace(" ", ""));
+        return json.append('}').toString();
+    }
+}
@@ -1,7 +1,10 @@
 package org.heapfrag.model;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Example of Heap snapshot
@@ -22,33 +25,292 @@ import java.util.List;
  * [0.152s][trace][gc,heap,region] GC(0) |  13|0x000000069f000000, 0x000000069f400000, 0x000000069f400000|100%| E|CS|TAMS 0x000000069f000000| PB 0x000000069f000000| Complete
  * [0.152s][trace][gc,heap,region] GC(0) |  14|0x000000069f400000, 0x000000069f800000, 0x000000069f800000|100%| E|CS|TAMS 0x000000069f400000| PB 0x000000069f400000| Complete
  */
-public class HeapSnapshot {
+public final class HeapSnapshot {
+
+    // Regions are stored column-wise: one byte per region for the type code
+    // (see Region) and the usage percentage. The region index is implicit
+    // (position in the arrays) unless the logged regions have gaps, e.g.
+    // uncommitted parts of the heap, in which case indices holds it.
+    byte[] types;
+    byte[] usage;
+    int[] indices;
+    int count;
+
+    // Optional region detail from the address columns, null when the source
+    // had none (e.g. snapshots built from Region lists). Regions are
+    // contiguous, so bottom = heapBase + index * regionSize and end = bottom +
+    // regionSize; top, TAMS and PB are kept as offsets from bottom.
+    long heapBase;
+    int regionSize;
+    int[] top;
+    int[] tams; // -1 if not logged
+    int[] pb; // -1 if not logged
+    byte[] flags; // FLAG_CS | remembered set state << 1
+
+    public static final int FLAG_CS = 1;
+
+    // Remembered set states as logged in the last column
+    public static final int REMSET_UNKNOWN = 0;
+    public static final int REMSET_UNTRACKED = 1;
+    public static final int REMSET_UPDATING = 2;
+    public static final int REMSET_COMPLETE = 3;
 
+    /**
+     * Returns a read-only view of the regions. Region objects are created on
+     * access and not retained.
+     */
     public List<Region> getRegions() {
-        return regions;
+        return new AbstractList<>() {
+            @Override
+            public Region get(int i) {
+                Objects.checkIndex(i, count);
+                return getRegion(i);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    public Region getRegion(int i) {
+        return new Region(getRegionIndex(i), getRegionType(i), gcCycle, getUsagePercent(i));
+    }
+
+    public int getRegionCount() {
+        return count;
+    }
+
+    public int getRegionIndex(int i) {
+        return indices == null ? i : indices[i];
+    }
+
+    public int getRegionType(int i) {
+        return types[i] & 0xFF;
+    }
+
+    public int getUsagePercent(int i) {
+        return usage[i];
+    }
+
+    /** Whether addresses, TAMS, PB, CS and remembered set state are known. */
+    public boolean hasDetail() {
+        return top != null;
+    }
+
+    /** Region size in bytes, 0 without detail. */
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    public long getBottom(int i) {
+        return heapBase + (long) getRegionIndex(i) * regionSize;
+    }
+
+    public long getTop(int i) {
+        return getBottom(i) + top[i];
+    }
+
+    public long getEnd(int i) {
+        return getBottom(i) + regionSize;
+    }
+
+    /** Bytes allocated in region i, i.e. top - bottom. */
+    public int getUsedBytes(int i) {
+        return top[i];
+    }
+
+    /** Top-at-mark-start, or -1 if not logged. */
+    public long getTams(int i) {
+        return tams[i] < 0 ? -1 : getBottom(i) + tams[i];
+    }
+
+    /** Parsable bottom, or -1 if not logged. */
+    public long getParsableBottom(int i) {
+        return pb[i] < 0 ? -1 : getBottom(i) + pb[i];
+    }
+
+    public boolean isInCollectionSet(int i) {
+        return (flags[i] & FLAG_CS) != 0;
+    }
+
+    /** One of the REMSET_ constants. */
+    public int getRemSetState(int i) {
+        return (flags[i] >> 1) & 3;
     }
 
     public int getGridSize() {
-        int count = regions == null ? 0 : regions.size();
         return (int) Math.ceil(Math.sqrt(count));
     }
 
     public String regionsToJson() {
+        return new String(regionsJson(), StandardCharsets.US_ASCII);
+    }
+
+    private volatile byte[] json;
+
+    /**
+     * Returns the non-free regions as a JSON array of [x, y, type] triples.
+     * The bytes are written straight into an exactly sized array, computed
+     * once and shared, so callers must not modify them.
+     */
+    public byte[] regionsJson() {
+        byte[] result = json;
+        if (result == null) {
+            result = writeRegionsJson();
+            json = result;
+        }
+        return result;
+    }
+
+    private byte[] writeRegionsJson() {
         int gridSize = getGridSize();
-        StringBuffer result = new StringBuffer();
-        result.append("[");
-        for (Region r : regions) {
-            result.append(r.toJson(gridSize));
+        // first pass: exact output length
+        int length = 2;
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            int type = types[i] & 0xFF;
+            if (type == 0) continue;
+            int index = getRegionIndex(i);
+            // [x, y, type],
+            length += 7 + digits(index / gridSize) + digits(index % gridSize) + digits(type);
+            written++;
+        }
+        if (written > 0) length--; // no comma after the last triple
+
+        byte[] out = new byte[length];
+        int pos = 0;
+        out[pos++] = '[';
+        for (int i = 0; i < count; i++) {
+            int type = types[i] & 0xFF;
+            if (type == 0) continue;
+            int index = getRegionIndex(i);
+            if (pos > 1) out[pos++] = ',';
+            out[pos++] = '[';
+            pos = writeInt(out, pos, index / gridSize);
+            out[pos++] = ',';
+            out[pos++] = ' ';
+            pos = writeInt(out, pos, index % gridSize);
+            out[pos++] = ',';
+            out[pos++] = ' ';
+            pos = writeInt(out, pos, type);
+            out[pos++] = ']';
+        }
+        out[pos] = ']';
+        return out;
+    }
+
+    /** Type byte of heap slots that were not listed in the log (uncommitted). */
+    public static final int FRAME_ABSENT = 0xFF;
+    public static final int FRAME_RAW = 0;
+    public static final int FRAME_RLE = 1;
+    static final int FRAME_HEADER = 10;
+
+    private volatile byte[] frame;
+
+    /**
+     * Returns the regions as a compact binary frame, computed once and shared.
+     *
+     * Layout (little endian):
+     * byte 0 version (1), byte 1 encoding, int 2 grid size, int 6 slot count,
+     * followed by the type code of every slot 0..maxIndex in index order.
+     * FRAME_RAW stores one byte per slot, FRAME_RLE stores runs as a type byte
+     * followed by the run length as an unsigned LEB128 varint; whichever is
+     * smaller is used. Slots missing from the log are FRAME_ABSENT.
+     */
+    public byte[] regionsFrame() {
+        byte[] result = frame;
+        if (result == null) {
+            result = writeRegionsFrame();
+            frame = result;
+        }
+        return result;
+    }
+
+    private byte[] writeRegionsFrame() {
+        int slots = 0;
+        for (int i = 0; i < count; i++) {
+            slots = Math.max(slots, getRegionIndex(i) + 1);
+        }
+        byte[] raw = new byte[FRAME_HEADER + slots];
+        if (indices != null) {
+            Arrays.fill(raw, FRAME_HEADER, raw.length, (byte) FRAME_ABSENT);
+        }
+        for (int i = 0; i < count; i++) {
+            raw[FRAME_HEADER + getRegionIndex(i)] = types[i];
         }
-        if (result.length() > 1) {
-            result.setCharAt(result.length() - 1, ']');
+
+        int rleLength = FRAME_HEADER;
+        for (int i = FRAME_HEADER; i < raw.length;) {
+            int run = runLength(raw, i);
+            rleLength += 1 + varintLength(run);
+            i += run;
+        }
+
+        byte[] out;
+        if (rleLength < raw.length) {
+            out = new byte[rleLength];
+            int pos = FRAME_HEADER;
+            for (int i = FRAME_HEADER; i < raw.length;) {
+                int run = runLength(raw, i);
+                out[pos++] = raw[i];
+                for (int v = run; ; v >>>= 7) {
+                    if (v < 0x80) {
+                        out[pos++] = (byte) v;
+                        break;
+                    }
+                    out[pos++] = (byte) ((v & 0x7F) | 0x80);
+                }
+                i += run;
+            }
+            out[1] = FRAME_RLE;
         } else {
-            result.append("]");
+            out = raw;
+            out[1] = FRAME_RAW;
         }
-        return result.toString();
+        out[0] = 1;
+        writeIntLE(out, 2, getGridSize());
+        writeIntLE(out, 6, slots);
+        return out;
     }
 
-    List<Region> regions;
+    private static int runLength(byte[] bytes, int from) {
+        int i = from + 1;
+        while (i < bytes.length && bytes[i] == bytes[from]) i++;
+        return i - from;
+    }
+
+    private static int varintLength(int v) {
+        int length = 1;
+        while ((v >>>= 7) != 0) length++;
+        return length;
+    }
+
+    private static void writeIntLE(byte[] out, int pos, int v) {
+        out[pos] = (byte) v;
+        out[pos + 1] = (byte) (v >>> 8);
+        out[pos + 2] = (byte) (v >>> 16);
+        out[pos + 3] = (byte) (v >>> 24);
+    }
+
+    private static int digits(int v) {
+        int d = 1;
+        while (v >= 10) {
+            v /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    private static int writeInt(byte[] out, int pos, int v) {
+        int end = pos + digits(v);
+        for (int i = end - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return end;
+    }
 
     public int getGcCycle() {
         return gcCycle;
@@ -72,74 +334,407 @@ public class HeapSnapshot {
         isFull = full;
     }
 
+    long timestamp = -1;
+
+    /**
+     * JVM uptime in milliseconds when the snapshot was logged, or -1 if the
+     * log lines carry no uptime decoration.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public HeapSnapshot(
         int gcCycle,
         List<Region> regions,
         boolean isFull,
         String gcType
     ) {
+        this(regions);
         this.gcCycle = gcCycle;
-        this.regions = regions;
         this.isFull = isFull;
         this.gcType = gcType;
     }
 
     public HeapSnapshot(List<Region> regions) {
-        this.regions = regions;
+        int size = regions == null ? 0 : regions.size();
+        types = new byte[size];
+        usage = new byte[size];
+        if (regions != null) {
+            for (Region r : regions) addRegion(r);
+        }
+        computeMetrics();
     }
 
-    public void addRegion(Region r) {
-        if (regions == null) regions = new ArrayList<>();
-        regions.add(r);
+    /**
+     * Creates a snapshot from already columnar data. The arrays are taken
+     * over, not copied.
+     *
+     * @param indices region indices, or null if region i has index i
+     */
+    public HeapSnapshot(
+        int gcCycle,
+        byte[] types,
+        byte[] usage,
+        int[] indices,
+        int count,
+        boolean isFull,
+        String gcType
+    ) {
+        this.gcCycle = gcCycle;
+        this.types = types;
+        this.usage = usage;
+        this.indices = indices;
+        this.count = count;
+        this.isFull = isFull;
+        this.gcType = gcType;
+        computeMetrics();
     }
 
     /**
-     * Calculates external fragmentation based on free region distribution.
-     * Returns a percentage (0-100) where:
-     * - 0% = all free regions are contiguous (no fragmentation)
-     * - Higher % = free regions are more scattered across the heap
+     * Creates a snapshot from columnar data including region detail. The
+     * arrays are taken over, not copied.
      *
-     * Algorithm matches Shenandoah GC implementation:
+     * @param heapBase bottom address of region index 0
+     * @param regionSize region size in bytes
+     * @param top top - bottom per region
+     * @param tams TAMS - bottom per region, -1 if not logged
+     * @param pb PB - bottom per region, -1 if not logged
+     * @param flags FLAG_CS | remembered set state << 1 per region
      */
-    public Integer calculateExternalFragmentation() {
-        if (regions == null || regions.isEmpty()) {
-            return 0;
+    public HeapSnapshot(
+        int gcCycle,
+        byte[] types,
+        byte[] usage,
+        int[] indices,
+        int count,
+        boolean isFull,
+        String gcType,
+        long heapBase,
+        int regionSize,
+        int[] top,
+        int[] tams,
+        int[] pb,
+        byte[] flags
+    ) {
+        this.gcCycle = gcCycle;
+        this.types = types;
+        this.usage = usage;
+        this.indices = indices;
+        this.count = count;
+        this.isFull = isFull;
+        this.gcType = gcType;
+        this.heapBase = heapBase;
+        this.regionSize = regionSize;
+        this.top = top;
+        this.tams = tams;
+        this.pb = pb;
+        this.flags = flags;
+        computeMetrics();
+    }
+
+    public void addRegion(Region r) {
+        metricsReady = false;
+        json = null;
+        frame = null;
+        freeRuns = null;
+        // Region carries no addresses
+        top = tams = pb = null;
+        flags = null;
+        if (count == types.length) {
+            int capacity = Math.max(16, count * 2);
+            types = Arrays.copyOf(types, capacity);
+            usage = Arrays.copyOf(usage, capacity);
+            if (indices != null) indices = Arrays.copyOf(indices, capacity);
         }
+        if (indices == null && r.index != count) {
+            indices = new int[types.length];
+            for (int i = 0; i < count; i++) indices[i] = i;
+        }
+        types[count] = (byte) r.regionType;
+        usage[count] = (byte) r.usagePercent;
+        if (indices != null) indices[count] = r.index;
+        count++;
+    }
 
-        int lastIdx = -1;
-        int maxContig = 0; // Maximum contiguous empty region count
-        int emptyContig = 0; // Current contiguous empty region count
-        int freeRegionCount = 0; // Total free region count
+    // Metric aggregates, filled by a single pass over the regions
+    private boolean metricsReady;
+    private int freeRegionCount;
+    private int maxFreeRun;
+    private int maxHumongousRun;
+    private long usageSum;
+    private long usageSquares;
+    private long usedBytes;
+    private long wastedBytes;
+    private double usedSquares; // sum(used²), exceeds a long on large heaps
+    private int[] typeCounts; // regions per type, in TYPES order
+    private long[] typeBytes; // sum(used) per type, in TYPES order
+    private int[] oldOccupancy; // old regions per tenth of usage
+
+    // Region type codes in the order of the per type aggregates, also used
+    // for the per type arrays of the timeline and history classes
+    static final int[] TYPES = {0, 10, 30, 60, 90, 120, 150};
+
+    /** Number of usage buckets of the old occupancy distribution. */
+    public static final int OCCUPANCY_BUCKETS = 10;
+
+    /** Position of a type code in {@link #TYPES}; unknown codes count as free. */
+    static int typeSlot(int type) {
+        switch (type) {
+            case 10: return 1;
+            case 30: return 2;
+            case 60: return 3;
+            case 90: return 4;
+            case 120: return 5;
+            case 150: return 6;
+            default: return 0;
+        }
+    }
 
-        // Iterate through regions to find largest contiguous free block
-        for (Region region : regions) {
-            boolean isFree = (region.regionType == 0); // F = free
+    // The Vector API pass is used when the JVM runs with --add-modules
+    // jdk.incubator.vector on hardware with SIMD registers, unless
+    // -Dg1heapviz.metrics.scalar=true; the scalar pass otherwise.
+    static final boolean VECTORIZED = !Boolean.getBoolean("g1heapviz.metrics.scalar") && vectorApiUsable();
+
+    private static boolean vectorApiUsable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return false;
+        try {
+            return VectorMetrics.isUseful();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
 
-            if (isFree) {
-                freeRegionCount++;
+    /**
+     * Collects everything the fragmentation metrics need in one pass, so the
+     * calculate methods below are O(1).
+     */
+    private void computeMetrics() {
+        if (VECTORIZED && indices == null && count >= VectorMetrics.MIN_REGIONS) {
+            VectorMetrics.compute(this);
+        } else {
+            computeMetricsScalar();
+        }
+    }
 
+    /** The metric pass one region at a time, for any snapshot. */
+    void computeMetricsScalar() {
+        int lastIdx = -1;
+        int maxContig = 0; // Maximum contiguous empty region count
+        int emptyContig = 0; // Current contiguous empty region count
+        int free = 0; // Total free region count
+        int humongousRun = 0; // HS plus contiguous HC regions of the current object
+        int maxHumongous = 0;
+        long linear = 0; // sum(usagePercent[i])
+        long squared = 0; // sum(usagePercent[i]²)
+        long used = 0;
+        long wasted = 0;
+        double usedSq = 0;
+        int[] counts = new int[TYPES.length];
+        long[] bytes = new long[TYPES.length];
+        int[] old = new int[OCCUPANCY_BUCKETS];
+
+        for (int i = 0; i < count; i++) {
+            int index = indices == null ? i : indices[i];
+            if (types[i] == 0) { // F = free
+                free++;
                 // Check if this region is contiguous with the last free region
-                if (lastIdx + 1 == region.index) {
-                    emptyContig++; // Extend contiguous sequence
-                } else {
-                    emptyContig = 1; // Start new sequence
-                }
+                emptyContig = lastIdx + 1 == index ? emptyContig + 1 : 1;
             } else {
                 emptyContig = 0; // Break sequence
             }
-
-            // Track maximum contiguous sequence
             maxContig = Math.max(maxContig, emptyContig);
-            lastIdx = region.index;
+            int type = types[i] & 0xFF;
+            if (type == 120) { // HS
+                humongousRun = 1;
+            } else if (type == 150 && humongousRun > 0 && lastIdx + 1 == index) { // HC
+                humongousRun++;
+            } else {
+                humongousRun = 0;
+            }
+            maxHumongous = Math.max(maxHumongous, humongousRun);
+            lastIdx = index;
+
+            int u = usage[i]; // 0-100
+            linear += u;
+            squared += u * u;
+            int slot = typeSlot(type);
+            counts[slot]++;
+            if (type == 90) old[Math.min(u / 10, OCCUPANCY_BUCKETS - 1)]++;
+
+            if (top != null) {
+                int b = top[i];
+                used += b;
+                usedSq += (double) b * b;
+                bytes[slot] += b;
+                if (types[i] != 0) wasted += regionSize - b;
+            }
         }
 
+        setMetrics(free, maxContig, maxHumongous, linear, squared, used, wasted, usedSq, counts, bytes, old);
+    }
+
+    void setMetrics(int free, int maxContig, int maxHumongous, long linear, long squared,
+                    long used, long wasted, double usedSq, int[] counts, long[] bytes, int[] old) {
+        freeRegionCount = free;
+        maxFreeRun = maxContig;
+        maxHumongousRun = maxHumongous;
+        usageSum = linear;
+        usageSquares = squared;
+        usedBytes = used;
+        wastedBytes = wasted;
+        usedSquares = usedSq;
+        typeCounts = counts;
+        typeBytes = bytes;
+        oldOccupancy = old;
+        metricsReady = true;
+    }
+
+    private void ensureMetrics() {
+        if (!metricsReady) computeMetrics();
+    }
+
+    public int getFreeRegionCount() {
+        ensureMetrics();
+        return freeRegionCount;
+    }
+
+    /**
+     * Length of the longest run of free regions with consecutive indices.
+     */
+    public int getMaxFreeRun() {
+        ensureMetrics();
+        return maxFreeRun;
+    }
+
+    private volatile FreeRunIndex freeRuns;
+
+    /**
+     * Index of the free runs for humongous allocation feasibility, built on
+     * first use.
+     */
+    public FreeRunIndex getFreeRunIndex() {
+        FreeRunIndex index = freeRuns;
+        if (index == null) {
+            index = new FreeRunIndex(this);
+            freeRuns = index;
+        }
+        return index;
+    }
+
+    /**
+     * Size in regions of the largest humongous object (HS region followed by
+     * its HC regions), 0 if there is none.
+     */
+    public int getMaxHumongousRun() {
+        ensureMetrics();
+        return maxHumongousRun;
+    }
+
+    /**
+     * Bytes allocated in all regions (sum of top - bottom), 0 without detail.
+     */
+    public long getUsedBytes() {
+        ensureMetrics();
+        return usedBytes;
+    }
+
+    /**
+     * Bytes between top and end of all non-free regions: space that is
+     * committed to a region but not allocated, including humongous tails.
+     * 0 without detail.
+     */
+    public long getWastedBytes() {
+        ensureMetrics();
+        return wastedBytes;
+    }
+
+    /** Number of regions of the type code. */
+    public int getTypeCount(int type) {
+        ensureMetrics();
+        return typeCounts[typeSlot(type)];
+    }
+
+    /**
+     * Bytes allocated in the regions of the type code, 0 without detail.
+     */
+    public long getTypeUsedBytes(int type) {
+        ensureMetrics();
+        return typeBytes[typeSlot(type)];
+    }
+
+    /**
+     * Number of old regions with a usage in [bucket * 10, bucket * 10 + 10)
+     * percent; the last bucket includes 100%.
+     */
+    public int getOldOccupancy(int bucket) {
+        ensureMetrics();
+        return oldOccupancy[bucket];
+    }
+
+    /**
+     * Bytes between top and end of the HS and HC regions, i.e. the tail slack
+     * of humongous objects. 0 without detail.
+     */
+    public long getHumongousWastedBytes() {
+        if (top == null) return 0;
+        ensureMetrics();
+        long regions = typeCounts[typeSlot(120)] + typeCounts[typeSlot(150)];
+        return regions * regionSize - typeBytes[typeSlot(120)] - typeBytes[typeSlot(150)];
+    }
+
+    /**
+     * Region statistics: {"gc":..,"regions":N,"counts":{"F":..,..},
+     * "bytes":{"F":..,..},"oldOccupancy":[..],"humongousWasted":..} with
+     * bytes and humongousWasted 0 without detail.
+     */
+    public String statsJson() {
+        ensureMetrics();
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"gc\":").append(gcCycle)
+            .append(",\"regions\":").append(count)
+            .append(",\"counts\":{");
+        for (int t = 0; t < TYPES.length; t++) {
+            if (t > 0) json.append(',');
+            json.append('"').append(Region.typeName(TYPES[t])).append("\":").append(typeCounts[t]);
+        }
+        json.append("},\"bytes\":{");
+        for (int t = 0; t < TYPES.length; t++) {
+            if (t > 0) json.append(',');
+            json.append('"').append(Region.typeName(TYPES[t])).append("\":").append(typeBytes[t]);
+        }
+        json.append("},\"oldOccupancy\":");
+        for (int b = 0; b < OCCUPANCY_BUCKETS; b++) {
+            json.append(b == 0 ? '[' : ',').append(oldOccupancy[b]);
+        }
+        return json.append("],\"humongousWasted\":").append(getHumongousWastedBytes()).append('}').toString();
+    }
+
+    /**
+     * Calculates external fragmentation based on free region distribution.
+     * Returns a percentage (0-100) where:
+     * - 0% = all free regions are contiguous (no fragmentation)
+     * - Higher % = free regions are more scattered across the heap
+     *
+     * Algorithm matches Shenandoah GC implementation:
+     */
+    public Integer calculateExternalFragmentation() {
+        if (count == 0) {
+            return 0;
+        }
+        ensureMetrics();
+
         // If no free regions, fragmentation is 100
         if (freeRegionCount == 0) {
             return 100;
         }
 
         // Calculate: EF = 1 - (max_contiguous / total_free)
-        double ef = 1.0 - ((double) maxContig / freeRegionCount);
+        double ef = 1.0 - ((double) maxFreeRun / freeRegionCount);
         return (int) Math.round(ef * 100);
     }
 
@@ -149,18 +744,11 @@ public class HeapSnapshot {
      * indicates memory is available but scattered.
      */
     public Integer calculateFree() {
-        if (regions == null || regions.isEmpty()) return 0;
-
-        int freeRegionCount = 0;
-        // Count free regions
-        for (Region region : regions) {
-            if (region.regionType == 0) freeRegionCount++; // F = free
-        }
+        if (count == 0) return 0;
+        ensureMetrics();
 
         // Calculate percentage of free regions
-        int freePercentage = (freeRegionCount * 100) / regions.size();
-
-        return freePercentage;
+        return (freeRegionCount * 100) / count;
     }
 
     /**
@@ -169,26 +757,27 @@ public class HeapSnapshot {
      * - 0% = memory is densely packed (no internal fragmentation)
      * - Higher % = memory is spread thinly across many regions (more fragmentation)
      *
-     * Algorithm matches Shenandoah GC implementation
+     * Algorithm matches Shenandoah GC implementation. Uses the exact used
+     * bytes per region when the snapshot has detail, the logged (rounded)
+     * percentages otherwise.
      */
     public Integer calculateInternalFragmentation() {
-        if (regions == null || regions.isEmpty()) {
+        if (count == 0) {
             return 0;
         }
+        ensureMetrics();
 
-        double squared = 0; // sum(usagePercent[i]²)
-        double linear = 0; // sum(usagePercent[i])
-
-        for (Region region : regions) {
-            double usagePercent = region.getUsagePercent(); // 0-100
-            squared += usagePercent * usagePercent;
-            linear += usagePercent;
+        if (top != null) {
+            if (usedBytes == 0) return 0;
+            // IF = 1 - sum(used²) / (regionSize × sum(used))
+            double s = usedSquares / ((double) regionSize * usedBytes);
+            return (int) Math.round((1.0 - s) * 100);
         }
 
-        if (linear > 0) {
+        if (usageSum > 0) {
             // When working with percentages (0-100), the formula simplifies to:
             // IF = 1 - sum(usagePercent²) / (100 × sum(usagePercent))
-            double s = squared / (100.0 * linear);
+            double s = (double) usageSquares / (100.0 * usageSum);
             double fragmentation = 1.0 - s;
             return (int) Math.round(fragmentation * 100);
         } else {
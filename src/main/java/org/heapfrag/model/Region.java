@@ -26,6 +26,18 @@ public class Region {
         this.usagePercent = usagePercent;
     }
 
+    /**
+     * Creates a region from an already decoded type code (0 = F, 30 = E, ... as below),
+     * so byte-level parsers don't have to materialize the type string per line.
+     */
+    public Region(int index, int regionType, int gcCycle, int usagePercent) {
+        this.index = index;
+        this.regionType = regionType;
+        this.name = typeName(regionType);
+        this.gcCycle = gcCycle;
+        this.usagePercent = usagePercent;
+    }
+
     //Heap Regions:   CS=, F=free, TAMS=top-at-mark-start, PB=parsable bottom
     private int parseType(String str) {
         switch (str) {
@@ -50,6 +62,30 @@ public class Region {
         }
     }
 
+    /**
+     * Returns the log abbreviation for a type code, or null if the code is unknown.
+     */
+    public static String typeName(int regionType) {
+        switch (regionType) {
+            case 120:
+                return "HS";
+            case 150:
+                return "HC";
+            case 0:
+                return "F";
+            case 10:
+                return "CS";
+            case 30:
+                return "E";
+            case 60:
+                return "S";
+            case 90:
+                return "O";
+            default:
+                return null;
+        }
+    }
+
     public String toJson(int gridSize) {
         if (regionType == 0) return "";
         int x = index / gridSize;
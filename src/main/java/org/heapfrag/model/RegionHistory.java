@@ -0,0 +1,278 @@
+package org.heapfrag.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Type history of every region across the snapshots of a log, built
+ * incrementally while the log is parsed or tailed.
+ *
+ * Each region keeps a run-length timeline of its type: the position of the
+ * snapshot where a run starts and the type of that run, so a region that
+ * stays Old for a thousand cycles costs one entry. Per region and type the
+ * time spent and the longest closed run are kept as well, so lifetime and
+ * churn queries are O(1) or a binary search instead of a rescan of all
+ * snapshots. Regions are identified by their heap index; a region missing
+ * from a snapshot keeps its previous type, a region listed more than once
+ * has the type of its last line.
+ */
+public class RegionHistory implements Consumer<HeapSnapshot> {
+
+    private int[][] starts = new int[0][]; // per region, first position of each run
+    private byte[][] types = new byte[0][]; // per region, type code of each run
+    private int[] runs = new int[0]; // per region, number of runs
+    private int[] youngChurn = new int[0]; // per region, transitions among F, E and S
+    private int[] time = new int[0]; // per region and type, positions spent in closed runs
+    private int[] longest = new int[0]; // per region and type, longest closed run
+
+    private int[] latest = new int[0]; // per region, type in the current snapshot or -1
+    private int[] gcCycles = new int[64]; // per position
+    private int position = 0;
+    private long runTotal = 0;
+
+    @Override
+    public synchronized void accept(HeapSnapshot s) {
+        int n = position++;
+        if (n == gcCycles.length) gcCycles = Arrays.copyOf(gcCycles, n * 2);
+        gcCycles[n] = s.getGcCycle();
+
+        for (int i = 0; i < s.getRegionCount(); i++) {
+            int region = s.getRegionIndex(i);
+            if (region >= runs.length) grow(region + 1);
+            latest[region] = s.getRegionType(i);
+        }
+        for (int i = 0; i < s.getRegionCount(); i++) {
+            int region = s.getRegionIndex(i);
+            int type = latest[region];
+            if (type < 0) continue; // listed twice, already applied
+            latest[region] = -1;
+            int count = runs[region];
+            if (count > 0) {
+                int last = types[region][count - 1] & 0xFF;
+                if (last == type) continue;
+                close(region, last, n - starts[region][count - 1]);
+                if (isYoungOrFree(last) && isYoungOrFree(type)) youngChurn[region]++;
+            }
+            if (count == starts[region].length) {
+                starts[region] = Arrays.copyOf(starts[region], count * 2);
+                types[region] = Arrays.copyOf(types[region], count * 2);
+            }
+            starts[region][count] = n;
+            types[region][count] = (byte) type;
+            runs[region] = count + 1;
+            runTotal++;
+        }
+    }
+
+    private void grow(int regions) {
+        int from = runs.length;
+        int size = Math.max(regions, from * 2);
+        starts = Arrays.copyOf(starts, size);
+        types = Arrays.copyOf(types, size);
+        for (int r = from; r < size; r++) {
+            starts[r] = new int[4];
+            types[r] = new byte[4];
+        }
+        runs = Arrays.copyOf(runs, size);
+        youngChurn = Arrays.copyOf(youngChurn, size);
+        time = Arrays.copyOf(time, size * HeapSnapshot.TYPES.length);
+        longest = Arrays.copyOf(longest, size * HeapSnapshot.TYPES.length);
+        latest = Arrays.copyOf(latest, size);
+        Arrays.fill(latest, from, size, -1);
+    }
+
+    private void close(int region, int type, int length) {
+        int slot = region * HeapSnapshot.TYPES.length + HeapSnapshot.typeSlot(type);
+        time[slot] += length;
+        longest[slot] = Math.max(longest[slot], length);
+    }
+
+    private static boolean isYoungOrFree(int type) {
+        return type == 0 || type == 30 || type == 60;
+    }
+
+    /** Number of snapshots seen. */
+    public synchronized int getSnapshotCount() {
+        return position;
+    }
+
+    /** One more than the highest region index seen. */
+    public synchronized int getRegionCount() {
+        int count = runs.length;
+        while (count > 0 && runs[count - 1] == 0) count--;
+        return count;
+    }
+
+    /** Runs over all regions, i.e. the number of timeline entries kept. */
+    public synchronized long getRunTotal() {
+        return runTotal;
+    }
+
+    public synchronized int getRunCount(int region) {
+        return region >= 0 && region < runs.length ? runs[region] : 0;
+    }
+
+    /** Number of type changes of the region. */
+    public synchronized int getTransitions(int region) {
+        return Math.max(0, getRunCount(region) - 1);
+    }
+
+    /** Number of type changes of the region at positions in (from, to]. */
+    public synchronized int getTransitions(int region, int from, int to) {
+        int count = getRunCount(region);
+        if (count == 0 || to <= from) return 0;
+        // run starts after the first one are the transitions
+        return Math.max(0, runsStartingBefore(region, to + 1) - Math.max(1, runsStartingBefore(region, from + 1)));
+    }
+
+    /** Type changes of the region where both types are F, E or S. */
+    public synchronized int getYoungChurn(int region) {
+        return getRunCount(region) == 0 ? 0 : youngChurn[region];
+    }
+
+    /** Number of runs of the region starting before the position. */
+    private int runsStartingBefore(int region, int n) {
+        int i = Arrays.binarySearch(starts[region], 0, runs[region], n);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /** Type of the region in the snapshot at position n, or -1 if not seen yet. */
+    public synchronized int getTypeAt(int region, int n) {
+        if (getRunCount(region) == 0 || n < 0 || n >= position) return -1;
+        int run = runsStartingBefore(region, n + 1) - 1;
+        return run < 0 ? -1 : types[region][run] & 0xFF;
+    }
+
+    /** Position where the region's current run started, or -1 if not seen. */
+    public synchronized int getCurrentRunStart(int region) {
+        int count = getRunCount(region);
+        return count == 0 ? -1 : starts[region][count - 1];
+    }
+
+    /** Type of the region's current run, or -1 if not seen. */
+    public synchronized int getCurrentType(int region) {
+        int count = getRunCount(region);
+        return count == 0 ? -1 : types[region][count - 1] & 0xFF;
+    }
+
+    /** Number of snapshots in which the region had the type. */
+    public synchronized int getTimeIn(int region, int type) {
+        if (getRunCount(region) == 0) return 0;
+        int spent = time[region * HeapSnapshot.TYPES.length + HeapSnapshot.typeSlot(type)];
+        if (getCurrentType(region) == type) spent += position - getCurrentRunStart(region);
+        return spent;
+    }
+
+    /** Longest number of consecutive snapshots in which the region had the type. */
+    public synchronized int getLongestRun(int region, int type) {
+        if (getRunCount(region) == 0) return 0;
+        int run = longest[region * HeapSnapshot.TYPES.length + HeapSnapshot.typeSlot(type)];
+        if (getCurrentType(region) == type) run = Math.max(run, position - getCurrentRunStart(region));
+        return run;
+    }
+
+    /** GC cycle of the snapshot at position n. */
+    public synchronized int getGcCycle(int n) {
+        return gcCycles[n];
+    }
+
+    /**
+     * Regions currently under a humongous object (HS or HC) for at least
+     * minSnapshots snapshots, longest pinned first.
+     */
+    public synchronized List<Integer> getPinned(int minSnapshots) {
+        List<Integer> pinned = new ArrayList<>();
+        for (int r = 0; r < runs.length; r++) {
+            int type = getCurrentType(r);
+            if ((type == 120 || type == 150) && position - getCurrentRunStart(r) >= minSnapshots) {
+                pinned.add(r);
+            }
+        }
+        pinned.sort((a, b) -> Integer.compare(getCurrentRunStart(a), getCurrentRunStart(b)));
+        return pinned;
+    }
+
+    /** Up to limit regions with the most type changes, most first. */
+    public synchronized List<Integer> getMostChurned(int limit) {
+        List<Integer> regions = new ArrayList<>();
+        for (int r = 0; r < runs.length; r++) {
+            if (runs[r] > 1) regions.add(r);
+        }
+        regions.sort((a, b) -> runs[a] != runs[b] ? Integer.compare(runs[b], runs[a]) : Integer.compare(a, b));
+        return regions.subList(0, Math.min(limit, regions.size()));
+    }
+
+    /**
+     * {"region":R,"snapshots":N,"transitions":..,"youngChurn":..,"start":[..],
+     * "type":[..],"time":{"F":..,..},"longest":{"F":..,..}} with the runs of
+     * the region as parallel arrays of start positions and type codes.
+     */
+    public synchronized String regionJson(int region) {
+        int count = getRunCount(region);
+        StringBuilder json = new StringBuilder(128 + count * 12);
+        json.append("{\"region\":").append(region)
+            .append(",\"snapshots\":").append(position)
+            .append(",\"transitions\":").append(getTransitions(region))
+            .append(",\"youngChurn\":").append(getYoungChurn(region))
+            .append(",\"start\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append(starts[region][i]);
+        }
+        json.append("],\"type\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append(types[region][i] & 0xFF);
+        }
+        json.append("],\"time\":{");
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            if (t > 0) json.append(',');
+            int type = HeapSnapshot.TYPES[t];
+            json.append('"').append(Region.typeName(type)).append("\":").append(getTimeIn(region, type));
+        }
+        json.append("},\"longest\":{");
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            if (t > 0) json.append(',');
+            int type = HeapSnapshot.TYPES[t];
+            json.append('"').append(Region.typeName(type)).append("\":").append(getLongestRun(region, type));
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * {"regions":R,"snapshots":N,"runs":..,"churn":[{"region":..,"transitions":..,
+     * "youngChurn":..},..],"pinned":[{"region":..,"type":..,"since":n,"gc":..,
+     * "snapshots":..},..]} with the limit most churned regions and the regions
+     * pinned under humongous objects for at least minPinned snapshots.
+     */
+    public synchronized String summaryJson(int limit, int minPinned) {
+        List<Integer> churned = getMostChurned(limit);
+        List<Integer> pinned = getPinned(minPinned);
+        StringBuilder json = new StringBuilder(64 + (churned.size() + pinned.size()) * 64);
+        json.append("{\"regions\":").append(getRegionCount())
+            .append(",\"snapshots\":").append(position)
+            .append(",\"runs\":").append(runTotal)
+            .append(",\"churn\":[");
+        for (int i = 0; i < churned.size(); i++) {
+            int r = churned.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"region\":").append(r)
+                .append(",\"transitions\":").append(getTransitions(r))
+                .append(",\"youngChurn\":").append(youngChurn[r]).append('}');
+        }
+        json.append("],\"pinned\":[");
+        for (int i = 0; i < pinned.size(); i++) {
+            int r = pinned.get(i);
+            int since = getCurrentRunStart(r);
+            if (i > 0) json.append(',');
+            json.append("{\"region\":").append(r)
+                .append(",\"type\":").append(getCurrentType(r))
+                .append(",\"since\":").append(since)
+                .append(",\"gc\":").append(gcCycles[since])
+                .append(",\"snapshots\":").append(position - since).append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
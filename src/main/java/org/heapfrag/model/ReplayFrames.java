@@ -0,0 +1,196 @@
+package org.heapfrag.model;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Serialized stream frames of timelines, shared by every client streaming
+ * them.
+ *
+ * A frame is the region JSON of the snapshots at positions [from, to) of a
+ * timeline, e.g. the snapshots of one GC cycle, merged into one array. It is
+ * built by the first client that asks for it; clients asking while it is
+ * being built wait for that build instead of starting their own. Built frames
+ * of all timelines are kept in one least recently used cache bounded by their
+ * total size, so viewers replaying the same log at about the same position
+ * cost one serialization per frame.
+ *
+ * Frames are cached per timeline instance. Call {@link #evict} when a
+ * timeline is dropped from memory; the cache only references timelines
+ * weakly, so a frame built while its timeline was being dropped does not keep
+ * the timeline alive either.
+ */
+public class ReplayFrames {
+
+    private final long budget;
+
+    // in access order
+    private final Map<Key, Build> frames = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private long built = 0;
+
+    /**
+     * @param budget characters of built frames to keep; 0 keeps none beyond
+     *               the ones being built
+     */
+    public ReplayFrames(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Budget must not be negative: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /** The merged region JSON of the snapshots at positions [from, to). */
+    public String get(SnapshotTimeline timeline, int from, int to) {
+        Key key = new Key(timeline, from, to);
+        Build build;
+        synchronized (this) {
+            build = frames.get(key);
+            if (build == null) {
+                build = new Build(key, timeline);
+                frames.put(key, build);
+            }
+        }
+        build.run(); // no-op unless this caller is the first
+        try {
+            return build.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a frame", e);
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                frames.remove(key, build); // the next request tries again
+            }
+            throw new IllegalStateException("Could not build frame [" + from + ", " + to + ")", e.getCause());
+        }
+    }
+
+    /** Drops the frames of the timeline, e.g. when its session was spilled. */
+    public synchronized void evict(SnapshotTimeline timeline) {
+        Iterator<Map.Entry<Key, Build>> it = frames.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Build> e = it.next();
+            SnapshotTimeline t = e.getKey().timeline.get();
+            if (t != timeline && t != null) continue;
+            it.remove();
+            size -= e.getValue().length;
+        }
+    }
+
+    /** Counts a finished build, if it is still cached, and trims the cache. */
+    private synchronized void built(Build build) {
+        int length;
+        try {
+            length = build.get().length();
+        } catch (InterruptedException | ExecutionException e) {
+            return; // failed builds are removed by get
+        }
+        built++;
+        if (frames.get(build.key) != build) return; // evicted while it was built
+        build.length = length;
+        size += length;
+        trim(build.key);
+    }
+
+    /** Drops the least recently used built frames, except key, until within budget. */
+    private void trim(Key key) {
+        Iterator<Map.Entry<Key, Build>> it = frames.entrySet().iterator();
+        while (size > budget && it.hasNext()) {
+            Map.Entry<Key, Build> e = it.next();
+            Build build = e.getValue();
+            if (e.getKey().equals(key) || build.length == 0) continue;
+            it.remove();
+            size -= build.length;
+        }
+    }
+
+    /** Characters of the built frames in the cache. */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /** Number of frames serialized so far, including evicted ones. */
+    public synchronized long getBuiltCount() {
+        return built;
+    }
+
+    /**
+     * Merges the region arrays of the snapshots at positions [from, to) into
+     * one JSON array, copying the cached serialized bytes of each snapshot.
+     */
+    public static String merge(SnapshotTimeline timeline, int from, int to) {
+        List<byte[]> parts = new ArrayList<>(Math.max(0, to - from));
+        for (int p = from; p < to; p++) parts.add(timeline.getRegionsJson(p));
+        return merge(parts);
+    }
+
+    /** Merges region JSON arrays into one. */
+    public static String merge(List<byte[]> parts) {
+        int length = 2;
+        for (byte[] json : parts) {
+            length += json.length - 1;
+        }
+        byte[] out = new byte[length];
+        int pos = 0;
+        out[pos++] = '[';
+        for (byte[] json : parts) {
+            if (json.length <= 2) continue; // no used regions
+            if (pos > 1) out[pos++] = ',';
+            System.arraycopy(json, 1, out, pos, json.length - 2);
+            pos += json.length - 2;
+        }
+        out[pos++] = ']';
+        return new String(out, 0, pos, StandardCharsets.US_ASCII);
+    }
+
+    /** Positions of a timeline instance; timelines are compared by identity. */
+    private static final class Key {
+
+        final WeakReference<SnapshotTimeline> timeline;
+        final int from;
+        final int to;
+        final int hash;
+
+        Key(SnapshotTimeline timeline, int from, int to) {
+            this.timeline = new WeakReference<>(timeline);
+            this.from = from;
+            this.to = to;
+            this.hash = (System.identityHashCode(timeline) * 31 + from) * 31 + to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            return o instanceof Key k && k.hash == hash && k.from == from && k.to == to &&
+                k.timeline.get() == timeline.get() && timeline.get() != null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Build extends FutureTask<String> {
+
+        final Key key;
+        int length; // guarded by the cache; 0 until counted
+
+        Build(Key key, SnapshotTimeline timeline) {
+            super(() -> merge(timeline, key.from, key.to));
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            built(this);
+        }
+    }
+}
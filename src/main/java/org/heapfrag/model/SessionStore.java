@@ -0,0 +1,303 @@
+package org.heapfrag.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Named timelines (sessions) with a memory budget.
+ *
+ * Lookups and uploads to different sessions do not block each other: the
+ * session map is concurrent and a resident timeline is read without locking.
+ * When the resident timelines exceed the budget, the least recently used
+ * complete ones are written to the spill directory and dropped from memory;
+ * the next access reads them back.
+ *
+ * Sessions that are still being written (uploads in progress, live tails)
+ * are never spilled.
+ *
+ * Data derived from a timeline and kept elsewhere can be released through
+ * {@link #setDropListener}, which is told whenever a timeline leaves memory.
+ */
+public class SessionStore {
+
+    private static final class Session {
+
+        final String id;
+        final Path spillFile;
+        final long generation;
+
+        volatile SnapshotTimeline timeline; // null while spilled
+        volatile boolean complete;
+        volatile boolean spilled; // spill file is up to date
+        volatile boolean evicting; // picked by evict(), counted as gone
+        volatile long lastAccess;
+
+        Session(String id, Path spillFile, long generation, SnapshotTimeline timeline) {
+            this.id = id;
+            this.spillFile = spillFile;
+            this.generation = generation;
+            this.timeline = timeline;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictLock = new Object();
+
+    private final long memoryBudget;
+    private final Path spillDir;
+    private final boolean offHeap;
+
+    private volatile BiConsumer<String, SnapshotTimeline> dropListener = (id, timeline) -> { };
+
+    public SessionStore(long memoryBudget, Path spillDir) {
+        this(memoryBudget, spillDir, false);
+    }
+
+    /**
+     * @param memoryBudget bytes of resident timelines before eviction starts,
+     *                     see {@link SnapshotTimeline#getFootprint()} and
+     *                     {@link SnapshotTimeline#getOffHeapFootprint()}
+     * @param spillDir directory for evicted timelines, created if missing
+     * @param offHeap whether reloaded timelines keep their regions in a
+     *                {@link SnapshotArena}
+     */
+    public SessionStore(long memoryBudget, Path spillDir, boolean offHeap) {
+        this.memoryBudget = memoryBudget;
+        this.spillDir = spillDir;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Registers a timeline that is still being filled. It stays resident
+     * until {@link #complete} is called.
+     */
+    public void put(String id, SnapshotTimeline timeline) {
+        long now = clock.incrementAndGet();
+        Session session = new Session(id, spillFile(id), now, timeline);
+        session.lastAccess = now;
+        Session previous = sessions.put(id, session);
+        if (previous != null) drop(previous);
+    }
+
+    /**
+     * Sets the listener called with the session id and the timeline whenever
+     * a timeline leaves memory: when it is spilled, replaced or removed.
+     */
+    public void setDropListener(BiConsumer<String, SnapshotTimeline> listener) {
+        this.dropListener = listener;
+    }
+
+    /**
+     * Identifies the timeline put for the session: it changes when the
+     * session is replaced through {@link #put}, but not when the timeline is
+     * spilled and read back. -1 if there is no such session.
+     */
+    public long getGeneration(String id) {
+        Session session = sessions.get(id);
+        return session != null ? session.generation : -1;
+    }
+
+    /**
+     * Marks the session as fully written, making it eligible for eviction,
+     * and evicts other sessions if the budget is exceeded.
+     */
+    public void complete(String id) {
+        Session session = sessions.get(id);
+        if (session == null) return;
+        session.complete = true;
+        evict();
+    }
+
+    /**
+     * Returns the timeline of the session, reading it back from disk if it was
+     * evicted, or null if there is no such session.
+     */
+    public SnapshotTimeline get(String id) {
+        Session session = sessions.get(id);
+        if (session == null) return null;
+        session.lastAccess = clock.incrementAndGet();
+        SnapshotTimeline timeline = session.timeline;
+        if (timeline != null) return timeline;
+
+        synchronized (session) {
+            timeline = session.timeline;
+            if (timeline == null) {
+                timeline = load(session);
+                session.timeline = timeline;
+            }
+        }
+        evict();
+        return timeline;
+    }
+
+    public boolean contains(String id) {
+        return sessions.containsKey(id);
+    }
+
+    /** Whether {@link #complete} was called for the session. */
+    public boolean isComplete(String id) {
+        Session session = sessions.get(id);
+        return session != null && session.complete;
+    }
+
+    public boolean isResident(String id) {
+        Session session = sessions.get(id);
+        return session != null && session.timeline != null;
+    }
+
+    /** Session ids, most recently used first. */
+    public List<String> getIds() {
+        List<Session> all = new ArrayList<>(sessions.values());
+        all.sort(Comparator.comparingLong((Session s) -> s.lastAccess).reversed());
+        List<String> ids = new ArrayList<>(all.size());
+        for (Session s : all) ids.add(s.id);
+        return ids;
+    }
+
+    public void remove(String id) {
+        Session session = sessions.remove(id);
+        if (session != null) drop(session);
+    }
+
+    private void drop(Session session) {
+        SnapshotTimeline timeline = session.timeline;
+        if (timeline != null) dropListener.accept(session.id, timeline);
+        synchronized (session) { // waits for a spill still writing the file
+            deleteSpillFile(session);
+        }
+    }
+
+    /** Bytes held by resident timelines, on and off the heap. */
+    public long getResidentBytes() {
+        long total = 0;
+        for (Session s : sessions.values()) {
+            SnapshotTimeline t = s.timeline;
+            if (t != null) total += size(t);
+        }
+        return total;
+    }
+
+    private static long size(SnapshotTimeline timeline) {
+        return timeline.getFootprint() + timeline.getOffHeapFootprint();
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Spills least recently used complete sessions until the resident
+     * timelines fit the budget. The most recently used session stays
+     * resident even if it alone exceeds the budget.
+     *
+     * Victims are picked under a global lock and spilled after it is
+     * released, each under its own monitor, so the writes do not hold up
+     * other sessions. Sessions picked by a concurrent call are left to it.
+     */
+    private void evict() {
+        List<Session> victims = new ArrayList<>();
+        synchronized (evictLock) {
+            long resident = 0;
+            List<Session> candidates = new ArrayList<>();
+            long newest = Long.MIN_VALUE;
+            for (Session s : sessions.values()) {
+                newest = Math.max(newest, s.lastAccess);
+                SnapshotTimeline t = s.timeline;
+                if (t == null || s.evicting) continue;
+                resident += size(t);
+                if (s.complete) candidates.add(s);
+            }
+            if (resident <= memoryBudget) return;
+            candidates.sort(Comparator.comparingLong(s -> s.lastAccess));
+            for (Session s : candidates) {
+                if (resident <= memoryBudget) break;
+                SnapshotTimeline t = s.timeline;
+                if (t == null || s.lastAccess == newest) continue;
+                s.evicting = true;
+                victims.add(s);
+                resident -= size(t);
+            }
+        }
+        for (Session s : victims) {
+            try {
+                spill(s);
+            } finally {
+                s.evicting = false;
+            }
+        }
+    }
+
+    /**
+     * Writes the session's timeline to disk, unless an up to date copy is
+     * already there, and drops it from memory.
+     *
+     * @return bytes released
+     */
+    private long spill(Session session) {
+        synchronized (session) {
+            SnapshotTimeline timeline = session.timeline;
+            // replaced or removed since it was picked
+            if (timeline == null || sessions.get(session.id) != session) return 0;
+            try {
+                if (!session.spilled) {
+                    Files.createDirectories(spillDir);
+                    Path tmp = Files.createTempFile(spillDir, session.spillFile.getFileName().toString(), ".tmp");
+                    try (DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                        timeline.writeTo(out);
+                    }
+                    Files.move(tmp, session.spillFile, StandardCopyOption.REPLACE_EXISTING);
+                    session.spilled = true;
+                }
+            } catch (IOException e) {
+                // keep it in memory rather than lose it
+                System.err.println("Failed to spill session " + session.id + ": " + e.getMessage());
+                return 0;
+            }
+            session.timeline = null;
+            dropListener.accept(session.id, timeline);
+            return size(timeline);
+        }
+    }
+
+    private SnapshotTimeline load(Session session) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(session.spillFile), 1 << 16))) {
+            return SnapshotTimeline.readFrom(in, offHeap ? new SnapshotArena() : null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reload session " + session.id, e);
+        }
+    }
+
+    private void deleteSpillFile(Session session) {
+        try {
+            Files.deleteIfExists(session.spillFile);
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + session.spillFile + ": " + e.getMessage());
+        }
+    }
+
+    private Path spillFile(String id) {
+        // ids come from clients, keep file names safe
+        StringBuilder name = new StringBuilder();
+        for (char c : id.toCharArray()) {
+            name.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+        }
+        name.append('-').append(Integer.toHexString(id.hashCode())).append(".timeline");
+        return spillDir.resolve(name.toString());
+    }
+}
@@ -0,0 +1,85 @@
+package org.heapfrag.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only byte storage outside the Java heap, for the encoded regions of
+ * a {@link SnapshotTimeline}.
+ *
+ * Memory is taken from the operating system in direct buffers of
+ * {@code chunkSize} bytes (records larger than a chunk get one of their
+ * own), so the garbage collector only sees a handful of buffer objects no
+ * matter how many snapshots are stored. Records are addressed by chunk and
+ * offset packed into a long; they are written once and read by any number
+ * of threads afterwards.
+ *
+ * There is no explicit free: the chunks are released when the arena is no
+ * longer reachable, like any direct buffer. Direct memory is limited by
+ * -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+ */
+public class SnapshotArena {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    private final int chunkSize;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[8];
+    private int chunkCount = 0;
+    private int used = 0; // bytes taken in the last chunk
+
+    private volatile long capacity = 0;
+    private volatile long size = 0;
+
+    public SnapshotArena() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public SnapshotArena(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reserves length bytes and returns their address. The bytes are written
+     * through {@link #slice(long, int)} before the address is published.
+     */
+    public synchronized long allocate(int length) {
+        if (chunkCount == 0 || used + length > chunks[chunkCount - 1].capacity()) {
+            addChunk(Math.max(chunkSize, length));
+        }
+        long address = ((long) (chunkCount - 1) << 32) | used;
+        used += length;
+        size += length;
+        return address;
+    }
+
+    private void addChunk(int bytes) {
+        ByteBuffer[] current = chunks;
+        if (chunkCount == current.length) current = Arrays.copyOf(current, chunkCount * 2);
+        current[chunkCount++] = ByteBuffer.allocateDirect(bytes);
+        chunks = current;
+        used = 0;
+        capacity += bytes;
+    }
+
+    /**
+     * A buffer over length bytes at the address, positioned at 0. Every call
+     * returns a new buffer, so readers do not share a position.
+     */
+    public ByteBuffer slice(long address, int length) {
+        return chunks[(int) (address >>> 32)].slice((int) address, length);
+    }
+
+    /** Bytes reserved from the operating system. */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /** Bytes allocated to records. */
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,908 @@
+package org.heapfrag.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Append-only, delta-encoded sequence of heap snapshots.
+ *
+ * Every {@code keyframeInterval}-th snapshot is kept in full (keyframe); the
+ * snapshots in between only store the regions whose type or usage changed
+ * since the previous snapshot. Snapshot n is rebuilt on access from the
+ * closest keyframe (or the last rebuilt snapshot) by replaying the diffs.
+ *
+ * With a {@link SnapshotArena} the regions of keyframes and diffs are
+ * stored off the Java heap, encoded as in {@link #writeTo}; only the
+ * per-snapshot metrics stay on the heap, and get() decodes straight from
+ * the arena. The heap footprint then no longer grows with the region count.
+ *
+ * A single writer may append while readers call get(); readers never see a
+ * partially appended snapshot.
+ */
+public class SnapshotTimeline extends AbstractList<HeapSnapshot> {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+
+    private final int keyframeInterval;
+    private final SnapshotArena arena; // null if regions are kept on the heap
+
+    private volatile Frame[] frames = new Frame[64];
+    private volatile int size = 0;
+
+    private final CycleIndex cycleIndex = new CycleIndex();
+
+    private HeapSnapshot tail; // last appended snapshot, source for the next diff
+    private int sinceKeyframe = 0;
+
+    private volatile long footprint = 0; // approximate bytes held by the frames
+
+    // last rebuilt delta snapshot, makes stepping through cycles one diff per step
+    private volatile Built lastBuilt;
+
+    private record Built(int position, HeapSnapshot snapshot) {}
+
+    // serialized regions of recently requested snapshots, direct-mapped by position
+    private static final int CACHE_SIZE = 256;
+    private final Serialized[] jsonCache = new Serialized[CACHE_SIZE];
+    private final Serialized[] frameCache = new Serialized[CACHE_SIZE];
+
+    private record Serialized(int position, byte[] bytes) {}
+
+    /**
+     * Per type and old occupancy aggregates of a snapshot, see
+     * {@link HeapSnapshot#statsJson()}.
+     */
+    private record Stats(int[] counts, long[] bytes, int[] oldOccupancy, long humongousWasted) {
+
+        // record, three arrays and their contents
+        static final int FOOTPRINT = 24 + 3 * 16 +
+            HeapSnapshot.TYPES.length * 12 + HeapSnapshot.OCCUPANCY_BUCKETS * 4;
+
+        static Stats of(HeapSnapshot s) {
+            int[] counts = new int[HeapSnapshot.TYPES.length];
+            long[] bytes = new long[HeapSnapshot.TYPES.length];
+            for (int t = 0; t < counts.length; t++) {
+                counts[t] = s.getTypeCount(HeapSnapshot.TYPES[t]);
+                bytes[t] = s.getTypeUsedBytes(HeapSnapshot.TYPES[t]);
+            }
+            int[] old = new int[HeapSnapshot.OCCUPANCY_BUCKETS];
+            for (int b = 0; b < old.length; b++) old[b] = s.getOldOccupancy(b);
+            return new Stats(counts, bytes, old, s.getHumongousWastedBytes());
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (int c : counts) out.writeInt(c);
+            for (long b : bytes) out.writeLong(b);
+            for (int o : oldOccupancy) out.writeInt(o);
+            out.writeLong(humongousWasted);
+        }
+
+        static Stats readFrom(DataInputStream in) throws IOException {
+            int[] counts = readInts(in, HeapSnapshot.TYPES.length);
+            long[] bytes = new long[HeapSnapshot.TYPES.length];
+            for (int t = 0; t < bytes.length; t++) bytes[t] = in.readLong();
+            int[] old = readInts(in, HeapSnapshot.OCCUPANCY_BUCKETS);
+            return new Stats(counts, bytes, old, in.readLong());
+        }
+    }
+
+    /**
+     * All region columns of a keyframe. Kept instead of the appended
+     * snapshot, so the serialized forms and indexes it caches are not held
+     * for the lifetime of the timeline; get() wraps them in a fresh snapshot.
+     */
+    private record Columns(byte[] types, byte[] usage, int[] indices, int count,
+                           long heapBase, int regionSize, int[] top, int[] tams, int[] pb, byte[] flags) {
+
+        /** The snapshot's columns, trimmed to its region count. */
+        static Columns of(HeapSnapshot s) {
+            int n = s.count;
+            boolean detail = s.top != null;
+            return new Columns(trim(s.types, n), trim(s.usage, n), s.indices != null ? trim(s.indices, n) : null, n,
+                s.heapBase, s.regionSize, detail ? trim(s.top, n) : null, detail ? trim(s.tams, n) : null,
+                detail ? trim(s.pb, n) : null, detail ? trim(s.flags, n) : null);
+        }
+
+        private static byte[] trim(byte[] column, int n) {
+            return column.length == n ? column : Arrays.copyOf(column, n);
+        }
+
+        private static int[] trim(int[] column, int n) {
+            return column.length == n ? column : Arrays.copyOf(column, n);
+        }
+
+        HeapSnapshot snapshot(Frame f) {
+            HeapSnapshot s = top != null
+                ? new HeapSnapshot(f.gcCycle, types, usage, indices, count, f.isFull, f.gcType,
+                    heapBase, regionSize, top, tams, pb, flags)
+                : new HeapSnapshot(f.gcCycle, types, usage, indices, count, f.isFull, f.gcType);
+            s.timestamp = f.timestamp;
+            return s;
+        }
+
+        long footprint() {
+            return 64 + (2L + (top != null ? DETAIL_BYTES : 0) + (indices != null ? 4 : 0)) * count;
+        }
+    }
+
+    private static final class Frame {
+
+        final int gcCycle;
+        final boolean isFull;
+        final String gcType;
+        final int keyframe; // position of the keyframe this frame is based on
+        final int externalFragmentation;
+        final int internalFragmentation;
+        final int free;
+        final long wastedBytes;
+        final Stats stats;
+        final long timestamp;
+        final boolean detail; // regions have top, TAMS, PB and flags
+
+        // encoded regions in the arena, or -1 if held in the fields below
+        final long payload;
+        final int payloadLength;
+
+        // keyframes
+        final Columns regions;
+
+        // diffs against the previous frame
+        final int[] positions;
+        final byte[] types;
+        final byte[] usage;
+        // changed region detail, null if the snapshots have none
+        final int[] top;
+        final int[] tams;
+        final int[] pb;
+        final byte[] flags;
+
+        Frame(HeapSnapshot snapshot, int position) {
+            this.gcCycle = snapshot.gcCycle;
+            this.isFull = snapshot.isFull;
+            this.gcType = snapshot.gcType;
+            this.keyframe = position;
+            this.externalFragmentation = snapshot.calculateExternalFragmentation();
+            this.internalFragmentation = snapshot.calculateInternalFragmentation();
+            this.free = snapshot.calculateFree();
+            this.wastedBytes = snapshot.getWastedBytes();
+            this.stats = Stats.of(snapshot);
+            this.timestamp = snapshot.timestamp;
+            this.detail = snapshot.top != null;
+            this.payload = -1;
+            this.payloadLength = 0;
+            this.regions = Columns.of(snapshot);
+            this.positions = null;
+            this.types = null;
+            this.usage = null;
+            this.top = null;
+            this.tams = null;
+            this.pb = null;
+            this.flags = null;
+        }
+
+        Frame(
+            int gcCycle,
+            boolean isFull,
+            String gcType,
+            int keyframe,
+            int externalFragmentation,
+            int internalFragmentation,
+            int free,
+            long wastedBytes,
+            Stats stats,
+            long timestamp,
+            Columns regions,
+            int[] positions,
+            byte[] types,
+            byte[] usage,
+            int[] top,
+            int[] tams,
+            int[] pb,
+            byte[] flags
+        ) {
+            this.gcCycle = gcCycle;
+            this.isFull = isFull;
+            this.gcType = gcType;
+            this.keyframe = keyframe;
+            this.externalFragmentation = externalFragmentation;
+            this.internalFragmentation = internalFragmentation;
+            this.free = free;
+            this.wastedBytes = wastedBytes;
+            this.stats = stats;
+            this.timestamp = timestamp;
+            this.detail = regions != null ? regions.top() != null : top != null;
+            this.payload = -1;
+            this.payloadLength = 0;
+            this.regions = regions;
+            this.positions = positions;
+            this.types = types;
+            this.usage = usage;
+            this.top = top;
+            this.tams = tams;
+            this.pb = pb;
+            this.flags = flags;
+        }
+
+        /** The frame with its regions moved to the arena at payload. */
+        Frame(Frame f, long payload, int payloadLength) {
+            this.gcCycle = f.gcCycle;
+            this.isFull = f.isFull;
+            this.gcType = f.gcType;
+            this.keyframe = f.keyframe;
+            this.externalFragmentation = f.externalFragmentation;
+            this.internalFragmentation = f.internalFragmentation;
+            this.free = f.free;
+            this.wastedBytes = f.wastedBytes;
+            this.stats = f.stats;
+            this.timestamp = f.timestamp;
+            this.detail = f.detail;
+            this.payload = payload;
+            this.payloadLength = payloadLength;
+            this.regions = null;
+            this.positions = null;
+            this.types = null;
+            this.usage = null;
+            this.top = null;
+            this.tams = null;
+            this.pb = null;
+            this.flags = null;
+        }
+
+        long footprint() {
+            long fixed = 64 + Stats.FOOTPRINT;
+            if (payload >= 0) return fixed;
+            if (regions != null) return fixed + regions.footprint();
+            return fixed + (4L + (top != null ? DETAIL_BYTES : 0) + 2) * positions.length;
+        }
+
+        Frame(
+            HeapSnapshot s,
+            int keyframe,
+            int[] positions,
+            byte[] types,
+            byte[] usage,
+            int[] top,
+            int[] tams,
+            int[] pb,
+            byte[] flags
+        ) {
+            this(
+                s.gcCycle,
+                s.isFull,
+                s.gcType,
+                keyframe,
+                s.calculateExternalFragmentation(),
+                s.calculateInternalFragmentation(),
+                s.calculateFree(),
+                s.getWastedBytes(),
+                Stats.of(s),
+                s.timestamp,
+                null,
+                positions,
+                types,
+                usage,
+                top,
+                tams,
+                pb,
+                flags
+            );
+        }
+    }
+
+    // top, TAMS, PB offsets and flags
+    private static final int DETAIL_BYTES = 13;
+
+    private static int bytesPerRegion(HeapSnapshot s) {
+        return 2 + (s.top != null ? DETAIL_BYTES : 0);
+    }
+
+    public SnapshotTimeline() {
+        this(DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public SnapshotTimeline(int keyframeInterval) {
+        this(keyframeInterval, null);
+    }
+
+    /**
+     * @param arena storage for the regions outside the Java heap, or null to
+     *              keep them on the heap
+     */
+    public SnapshotTimeline(int keyframeInterval, SnapshotArena arena) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException(
+                "Keyframe interval must be positive: " + keyframeInterval
+            );
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.arena = arena;
+    }
+
+    /**
+     * Appends a snapshot. The snapshot must not be modified afterwards.
+     */
+    public synchronized void append(HeapSnapshot snapshot) {
+        int position = size;
+        Frame frame = tail == null || sinceKeyframe + 1 >= keyframeInterval
+            ? null
+            : diff(tail, snapshot, frames[position - 1].keyframe);
+        if (frame == null) {
+            frame = new Frame(snapshot, position);
+            sinceKeyframe = 0;
+        } else {
+            sinceKeyframe++;
+        }
+        if (arena != null) frame = store(frame, sinceKeyframe == 0);
+
+        Frame[] current = frames;
+        if (position == current.length) {
+            current = Arrays.copyOf(current, position * 2);
+        }
+        current[position] = frame;
+        frames = current;
+        cycleIndex.add(position, snapshot.gcCycle);
+        tail = snapshot;
+        footprint += frame.footprint();
+        size = position + 1;
+    }
+
+    /**
+     * Encodes the changes from prev to next, or returns null if the region
+     * layout differs or the diff would not be smaller than a keyframe.
+     */
+    private static Frame diff(HeapSnapshot prev, HeapSnapshot next, int keyframe) {
+        boolean detail = next.top != null;
+        if (
+            prev.count != next.count ||
+            !Arrays.equals(prev.indices, next.indices) ||
+            (prev.top != null) != detail ||
+            prev.heapBase != next.heapBase ||
+            prev.regionSize != next.regionSize
+        ) {
+            return null;
+        }
+        int changed = 0;
+        for (int i = 0; i < next.count; i++) {
+            if (changed(prev, next, i)) changed++;
+        }
+        // an int position plus the columns per change against the columns per region
+        int perRegion = bytesPerRegion(next);
+        if ((long) changed * (4 + perRegion) >= (long) next.count * perRegion) return null;
+
+        int[] positions = new int[changed];
+        byte[] types = new byte[changed];
+        byte[] usage = new byte[changed];
+        int[] top = detail ? new int[changed] : null;
+        int[] tams = detail ? new int[changed] : null;
+        int[] pb = detail ? new int[changed] : null;
+        byte[] flags = detail ? new byte[changed] : null;
+        int c = 0;
+        for (int i = 0; i < next.count; i++) {
+            if (changed(prev, next, i)) {
+                positions[c] = i;
+                types[c] = next.types[i];
+                usage[c] = next.usage[i];
+                if (detail) {
+                    top[c] = next.top[i];
+                    tams[c] = next.tams[i];
+                    pb[c] = next.pb[i];
+                    flags[c] = next.flags[i];
+                }
+                c++;
+            }
+        }
+        return new Frame(next, keyframe, positions, types, usage, top, tams, pb, flags);
+    }
+
+    private static boolean changed(HeapSnapshot prev, HeapSnapshot next, int i) {
+        if (prev.types[i] != next.types[i] || prev.usage[i] != next.usage[i]) return true;
+        return next.top != null && (
+            prev.top[i] != next.top[i] ||
+            prev.tams[i] != next.tams[i] ||
+            prev.pb[i] != next.pb[i] ||
+            prev.flags[i] != next.flags[i]
+        );
+    }
+
+    @Override
+    public HeapSnapshot get(int n) {
+        int count = size;
+        Objects.checkIndex(n, count);
+        Frame[] current = frames;
+        Frame frame = current[n];
+        Built built = lastBuilt;
+        if (built != null && built.position() == n) return built.snapshot();
+        if (frame.keyframe == n) {
+            HeapSnapshot result = keyframe(frame).snapshot(frame);
+            lastBuilt = new Built(n, result);
+            return result;
+        }
+
+        // replay from the keyframe, or from the last rebuilt snapshot if closer
+        Columns base;
+        int from;
+        if (
+            built != null &&
+            built.position() >= frame.keyframe &&
+            built.position() < n &&
+            current[built.position()].keyframe == frame.keyframe
+        ) {
+            base = Columns.of(built.snapshot());
+            from = built.position();
+        } else {
+            base = keyframe(current[frame.keyframe]);
+            from = frame.keyframe;
+        }
+
+        byte[] types = Arrays.copyOf(base.types(), base.count());
+        byte[] usage = Arrays.copyOf(base.usage(), base.count());
+        boolean detail = base.top() != null;
+        int[] top = detail ? Arrays.copyOf(base.top(), base.count()) : null;
+        int[] tams = detail ? Arrays.copyOf(base.tams(), base.count()) : null;
+        int[] pb = detail ? Arrays.copyOf(base.pb(), base.count()) : null;
+        byte[] flags = detail ? Arrays.copyOf(base.flags(), base.count()) : null;
+        for (int p = from + 1; p <= n; p++) {
+            Frame f = current[p];
+            if (f.payload >= 0) {
+                applyDiff(arena.slice(f.payload, f.payloadLength), types, usage, top, tams, pb, flags);
+                continue;
+            }
+            for (int i = 0; i < f.positions.length; i++) {
+                int r = f.positions[i];
+                types[r] = f.types[i];
+                usage[r] = f.usage[i];
+                if (detail) {
+                    top[r] = f.top[i];
+                    tams[r] = f.tams[i];
+                    pb[r] = f.pb[i];
+                    flags[r] = f.flags[i];
+                }
+            }
+        }
+        HeapSnapshot result = new Columns(types, usage, base.indices(), base.count(),
+            base.heapBase(), base.regionSize(), top, tams, pb, flags).snapshot(frame);
+        lastBuilt = new Built(n, result);
+        return result;
+    }
+
+    // Regions in the arena, encoded as written by writeTo()
+
+    /** Moves the regions of a frame into the arena. */
+    private Frame store(Frame frame, boolean isKeyframe) {
+        int length = payloadLength(frame, isKeyframe);
+        long address = arena.allocate(length);
+        encode(frame, isKeyframe, arena.slice(address, length));
+        return new Frame(frame, address, length);
+    }
+
+    private static int payloadLength(Frame f, boolean isKeyframe) {
+        if (isKeyframe) {
+            Columns c = f.regions;
+            return 4 + 2 * c.count() + 1 + (c.indices() != null ? 4 * c.count() : 0) + 1 +
+                (c.top() != null ? 12 + DETAIL_BYTES * c.count() : 0);
+        }
+        return 4 + (4 + 2 + (f.detail ? DETAIL_BYTES : 0)) * f.positions.length;
+    }
+
+    /** Encodes the regions of an on-heap frame into out. */
+    private static void encode(Frame f, boolean isKeyframe, ByteBuffer out) {
+        if (isKeyframe) {
+            Columns c = f.regions;
+            out.putInt(c.count());
+            out.put(c.types(), 0, c.count());
+            out.put(c.usage(), 0, c.count());
+            out.put((byte) (c.indices() != null ? 1 : 0));
+            if (c.indices() != null) putInts(out, c.indices(), c.count());
+            out.put((byte) (c.top() != null ? 1 : 0));
+            if (c.top() != null) {
+                out.putLong(c.heapBase());
+                out.putInt(c.regionSize());
+                putInts(out, c.top(), c.count());
+                putInts(out, c.tams(), c.count());
+                putInts(out, c.pb(), c.count());
+                out.put(c.flags(), 0, c.count());
+            }
+        } else {
+            int changed = f.positions.length;
+            out.putInt(-1 - changed);
+            putInts(out, f.positions, changed);
+            out.put(f.types);
+            out.put(f.usage);
+            if (f.detail) {
+                putInts(out, f.top, changed);
+                putInts(out, f.tams, changed);
+                putInts(out, f.pb, changed);
+                out.put(f.flags);
+            }
+        }
+    }
+
+    private static void putInts(ByteBuffer out, int[] values, int count) {
+        out.asIntBuffer().put(values, 0, count);
+        out.position(out.position() + 4 * count);
+    }
+
+    private static int[] getInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    /** The regions of a keyframe, decoded if it is stored in the arena. */
+    private Columns keyframe(Frame f) {
+        if (f.regions != null) return f.regions;
+        ByteBuffer in = arena.slice(f.payload, f.payloadLength);
+        int n = in.getInt();
+        byte[] types = new byte[n];
+        byte[] usage = new byte[n];
+        in.get(types);
+        in.get(usage);
+        int[] indices = in.get() != 0 ? getInts(in, n) : null;
+        if (in.get() == 0) return new Columns(types, usage, indices, n, 0, 0, null, null, null, null);
+        long heapBase = in.getLong();
+        int regionSize = in.getInt();
+        int[] top = getInts(in, n);
+        int[] tams = getInts(in, n);
+        int[] pb = getInts(in, n);
+        byte[] flags = new byte[n];
+        in.get(flags);
+        return new Columns(types, usage, indices, n, heapBase, regionSize, top, tams, pb, flags);
+    }
+
+    /** Applies a diff stored in the arena to the region columns. */
+    private static void applyDiff(
+        ByteBuffer in,
+        byte[] types,
+        byte[] usage,
+        int[] top,
+        int[] tams,
+        int[] pb,
+        byte[] flags
+    ) {
+        int changed = -1 - in.getInt(0);
+        int typesAt = 4 + 4 * changed;
+        int usageAt = typesAt + changed;
+        int topAt = usageAt + changed;
+        int tamsAt = topAt + 4 * changed;
+        int pbAt = tamsAt + 4 * changed;
+        int flagsAt = pbAt + 4 * changed;
+        for (int i = 0; i < changed; i++) {
+            int r = in.getInt(4 + 4 * i);
+            types[r] = in.get(typesAt + i);
+            usage[r] = in.get(usageAt + i);
+            if (top != null) {
+                top[r] = in.getInt(topAt + 4 * i);
+                tams[r] = in.getInt(tamsAt + 4 * i);
+                pb[r] = in.getInt(pbAt + 4 * i);
+                flags[r] = in.get(flagsAt + i);
+            }
+        }
+    }
+
+    /**
+     * Returns {@link HeapSnapshot#regionsJson()} of snapshot n, serializing it
+     * only on the first request.
+     */
+    public byte[] getRegionsJson(int n) {
+        Objects.checkIndex(n, size);
+        int slot = n % CACHE_SIZE;
+        Serialized cached = jsonCache[slot];
+        if (cached != null && cached.position() == n) return cached.bytes();
+        byte[] bytes = get(n).regionsJson();
+        jsonCache[slot] = new Serialized(n, bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns {@link HeapSnapshot#regionsFrame()} of snapshot n, encoding it
+     * only on the first request.
+     */
+    public byte[] getRegionsFrame(int n) {
+        Objects.checkIndex(n, size);
+        int slot = n % CACHE_SIZE;
+        Serialized cached = frameCache[slot];
+        if (cached != null && cached.position() == n) return cached.bytes();
+        byte[] bytes = get(n).regionsFrame();
+        frameCache[slot] = new Serialized(n, bytes);
+        return bytes;
+    }
+
+    // Per-snapshot values answered without rebuilding the snapshot
+
+    public int getGcCycle(int n) {
+        return frame(n).gcCycle;
+    }
+
+    public boolean isFull(int n) {
+        return frame(n).isFull;
+    }
+
+    public int getExternalFragmentation(int n) {
+        return frame(n).externalFragmentation;
+    }
+
+    public int getInternalFragmentation(int n) {
+        return frame(n).internalFragmentation;
+    }
+
+    public int getFree(int n) {
+        return frame(n).free;
+    }
+
+    public long getWastedBytes(int n) {
+        return frame(n).wastedBytes;
+    }
+
+    /** See {@link HeapSnapshot#getTimestamp()}. */
+    public long getTimestamp(int n) {
+        return frame(n).timestamp;
+    }
+
+    /** See {@link HeapSnapshot#getTypeCount(int)}. */
+    public int getTypeCount(int n, int type) {
+        return frame(n).stats.counts()[HeapSnapshot.typeSlot(type)];
+    }
+
+    /** See {@link HeapSnapshot#getTypeUsedBytes(int)}. */
+    public long getTypeUsedBytes(int n, int type) {
+        return frame(n).stats.bytes()[HeapSnapshot.typeSlot(type)];
+    }
+
+    /** See {@link HeapSnapshot#getOldOccupancy(int)}. */
+    public int getOldOccupancy(int n, int bucket) {
+        return frame(n).stats.oldOccupancy()[bucket];
+    }
+
+    /** See {@link HeapSnapshot#getHumongousWastedBytes()}. */
+    public long getHumongousWastedBytes(int n) {
+        return frame(n).stats.humongousWasted();
+    }
+
+    private Frame frame(int n) {
+        Objects.checkIndex(n, size);
+        return frames[n];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public CycleIndex getCycleIndex() {
+        return cycleIndex;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Approximate number of heap bytes held by the encoded snapshots, not
+     * counting caches.
+     */
+    public long getFootprint() {
+        return footprint;
+    }
+
+    /** Bytes of direct memory reserved by the arena, 0 without one. */
+    public long getOffHeapFootprint() {
+        return arena != null ? arena.getCapacity() : 0;
+    }
+
+    /** Whether the regions are stored in a {@link SnapshotArena}. */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    // Binary form, frames are written as they are encoded in memory
+
+    private static final int MAGIC = 0x47314856; // "G1HV"
+    private static final int FORMAT_VERSION = 4;
+
+    /**
+     * Writes the encoded timeline. Must not run concurrently with append().
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        int count = size;
+        Frame[] current = frames;
+        byte[] copy = null;
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(keyframeInterval);
+        out.writeInt(count);
+        for (int p = 0; p < count; p++) {
+            Frame f = current[p];
+            out.writeInt(f.gcCycle);
+            out.writeBoolean(f.isFull);
+            out.writeBoolean(f.gcType != null);
+            if (f.gcType != null) out.writeUTF(f.gcType);
+            out.writeInt(f.keyframe);
+            out.writeInt(f.externalFragmentation);
+            out.writeInt(f.internalFragmentation);
+            out.writeInt(f.free);
+            out.writeLong(f.wastedBytes);
+            f.stats.writeTo(out);
+            out.writeLong(f.timestamp);
+            if (f.payload >= 0) {
+                // already encoded
+                ByteBuffer encoded = arena.slice(f.payload, f.payloadLength);
+                if (copy == null) copy = new byte[1 << 16];
+                while (encoded.hasRemaining()) {
+                    int length = Math.min(copy.length, encoded.remaining());
+                    encoded.get(copy, 0, length);
+                    out.write(copy, 0, length);
+                }
+            } else if (f.regions != null) {
+                Columns c = f.regions;
+                out.writeInt(c.count());
+                out.write(c.types(), 0, c.count());
+                out.write(c.usage(), 0, c.count());
+                out.writeBoolean(c.indices() != null);
+                if (c.indices() != null) writeInts(out, c.indices(), c.count());
+                out.writeBoolean(c.top() != null);
+                if (c.top() != null) {
+                    out.writeLong(c.heapBase());
+                    out.writeInt(c.regionSize());
+                    writeInts(out, c.top(), c.count());
+                    writeInts(out, c.tams(), c.count());
+                    writeInts(out, c.pb(), c.count());
+                    out.write(c.flags(), 0, c.count());
+                }
+            } else {
+                int changed = f.positions.length;
+                out.writeInt(-1 - changed);
+                writeInts(out, f.positions, changed);
+                out.write(f.types);
+                out.write(f.usage);
+                if (f.top != null) {
+                    writeInts(out, f.top, changed);
+                    writeInts(out, f.tams, changed);
+                    writeInts(out, f.pb, changed);
+                    out.write(f.flags);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a timeline written by {@link #writeTo}.
+     *
+     * @throws IOException if the data is truncated or not a timeline
+     */
+    public static SnapshotTimeline readFrom(DataInputStream in) throws IOException {
+        return readFrom(in, null);
+    }
+
+    /**
+     * Reads a timeline written by {@link #writeTo}, storing its regions in the
+     * arena if one is given. Counts, keyframe references and diff positions
+     * are checked against what was read before them, and arrays grow as
+     * their data arrives, so corrupt lengths fail at the end of the data.
+     *
+     * @throws IOException if the data is truncated, inconsistent or not a
+     *                     timeline
+     */
+    public static SnapshotTimeline readFrom(DataInputStream in, SnapshotArena arena) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a snapshot timeline");
+        }
+        int interval = in.readInt();
+        int count = in.readInt();
+        if (interval < 1 || count < 0) {
+            throw new IOException("Bad timeline header: interval " + interval + ", count " + count);
+        }
+        SnapshotTimeline timeline = new SnapshotTimeline(interval, arena);
+        Frame[] frames = new Frame[64];
+        long footprint = 0;
+        int lastKeyframe = -1; // diffs are based on the latest keyframe
+        int keyRegions = 0;
+        boolean keyDetail = false;
+        for (int p = 0; p < count; p++) {
+            int gcCycle = in.readInt();
+            boolean isFull = in.readBoolean();
+            String gcType = in.readBoolean() ? in.readUTF() : null;
+            int keyframe = in.readInt();
+            int ext = in.readInt();
+            int internal = in.readInt();
+            int free = in.readInt();
+            long wasted = in.readLong();
+            Stats stats = Stats.readFrom(in);
+            long timestamp = in.readLong();
+            int n = in.readInt();
+            Frame f;
+            if (n >= 0) {
+                if (keyframe != p) throw new IOException("Bad keyframe " + keyframe + " at " + p);
+                byte[] types = readBytes(in, n);
+                byte[] usage = readBytes(in, n);
+                int[] indices = in.readBoolean() ? readInts(in, n) : null;
+                Columns regions;
+                if (in.readBoolean()) {
+                    long heapBase = in.readLong();
+                    int regionSize = in.readInt();
+                    int[] top = readInts(in, n);
+                    int[] tams = readInts(in, n);
+                    int[] pb = readInts(in, n);
+                    byte[] flags = readBytes(in, n);
+                    regions = new Columns(types, usage, indices, n, heapBase, regionSize, top, tams, pb, flags);
+                } else {
+                    regions = new Columns(types, usage, indices, n, 0, 0, null, null, null, null);
+                }
+                f = new Frame(gcCycle, isFull, gcType, p, ext, internal, free, wasted, stats, timestamp, regions,
+                    null, null, null, null, null, null, null);
+                lastKeyframe = p;
+                keyRegions = n;
+                keyDetail = regions.top() != null;
+            } else {
+                if (keyframe < 0 || keyframe != lastKeyframe) {
+                    throw new IOException("Bad keyframe " + keyframe + " at " + p);
+                }
+                int changed = -1 - n;
+                if (changed > keyRegions) {
+                    throw new IOException(changed + " changes to " + keyRegions + " regions at " + p);
+                }
+                int[] positions = readInts(in, changed);
+                for (int r : positions) {
+                    if (r < 0 || r >= keyRegions) throw new IOException("Bad region " + r + " at " + p);
+                }
+                byte[] types = readBytes(in, changed);
+                byte[] usage = readBytes(in, changed);
+                int[] top = null, tams = null, pb = null;
+                byte[] flags = null;
+                if (keyDetail) {
+                    top = readInts(in, changed);
+                    tams = readInts(in, changed);
+                    pb = readInts(in, changed);
+                    flags = readBytes(in, changed);
+                }
+                f = new Frame(gcCycle, isFull, gcType, keyframe, ext, internal, free, wasted, stats, timestamp, null,
+                    positions, types, usage, top, tams, pb, flags);
+            }
+            if (arena != null) f = timeline.store(f, n >= 0);
+            if (p == frames.length) frames = Arrays.copyOf(frames, p * 2);
+            frames[p] = f;
+            footprint += f.footprint();
+            timeline.cycleIndex.add(p, gcCycle);
+        }
+        timeline.frames = frames;
+        timeline.footprint = footprint;
+        timeline.size = count;
+        if (count > 0) {
+            timeline.tail = timeline.get(count - 1);
+            timeline.sinceKeyframe = count - 1 - frames[count - 1].keyframe;
+        }
+        return timeline;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int count)
+        throws IOException {
+        for (int i = 0; i < count; i++) out.writeInt(values[i]);
+    }
+
+    // arrays whose length is read from the data start at most this large and
+    // double as their elements arrive
+    private static final int READ_CHUNK = 1 << 16;
+
+    private static int[] readInts(DataInputStream in, int count) throws IOException {
+        int[] values = new int[Math.min(count, READ_CHUNK)];
+        for (int i = 0; i < count; i++) {
+            if (i == values.length) values = Arrays.copyOf(values, (int) Math.min(count, 2L * i));
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int count) throws IOException {
+        byte[] values = new byte[Math.min(count, READ_CHUNK)];
+        for (int read = 0; read < count; read = values.length) {
+            if (read == values.length) values = Arrays.copyOf(values, (int) Math.min(count, 2L * read));
+            in.readFully(values, read, values.length - read);
+        }
+        return values;
+    }
+}
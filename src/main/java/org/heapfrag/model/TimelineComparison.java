@@ -0,0 +1,258 @@
+package org.heapfrag.model;
+
+import java.util.Arrays;
+
+/**
+ * Compares two logs, e.g. runs before and after a G1 flag change, snapshot
+ * by snapshot.
+ *
+ * Snapshots are aligned by GC cycle (the k-th snapshot of a cycle in one log
+ * with the k-th snapshot of the same cycle in the other) or by uptime (every
+ * snapshot of the first log with the nearest one of the second). Both
+ * timelines are walked once in log order, so only the current snapshot of
+ * each is rebuilt at a time; per aligned pair only the metric deltas and the
+ * difference of the region type distribution are kept.
+ *
+ * Deltas are second minus first. Type shares are percentages of the regions
+ * of each snapshot, so logs with different region sizes compare as well.
+ */
+public class TimelineComparison {
+
+    private int pairs = 0;
+    private int[] first = new int[64]; // position in the first log
+    private int[] second = new int[64]; // position in the second log
+    private int[] ext = new int[64];
+    private int[] internal = new int[64];
+    private int[] free = new int[64];
+    private long[] wasted = new long[64];
+    private float[][] typeShares = new float[HeapSnapshot.TYPES.length][64]; // share delta per type
+
+    // sums over the pairs, per log
+    private final long[] extSum = new long[2];
+    private final long[] intSum = new long[2];
+    private final long[] freeSum = new long[2];
+    private final int[] fullCount = new int[2];
+    private final double[][] shareSum = new double[2][HeapSnapshot.TYPES.length];
+
+    private final SnapshotTimeline a;
+    private final SnapshotTimeline b;
+    private final TimelineOverview.Axis axis;
+
+    public TimelineComparison(SnapshotTimeline a, SnapshotTimeline b, TimelineOverview.Axis axis) {
+        this.a = a;
+        this.b = b;
+        this.axis = axis;
+        if (axis == TimelineOverview.Axis.TIME) {
+            alignByTime();
+        } else {
+            alignByCycle();
+        }
+    }
+
+    private void alignByCycle() {
+        int i = 0, j = 0;
+        int occurrenceA = 0, occurrenceB = 0; // position within the current cycle
+        while (i < a.size() && j < b.size()) {
+            int gcA = a.getGcCycle(i);
+            int gcB = b.getGcCycle(j);
+            if (gcA == gcB && occurrenceA == occurrenceB) {
+                pair(i, j);
+            }
+            boolean advanceA = gcA < gcB || gcA == gcB && occurrenceA <= occurrenceB;
+            boolean advanceB = gcB < gcA || gcA == gcB && occurrenceB <= occurrenceA;
+            if (advanceA) {
+                i++;
+                occurrenceA = i < a.size() && a.getGcCycle(i) == gcA ? occurrenceA + 1 : 0;
+            }
+            if (advanceB) {
+                j++;
+                occurrenceB = j < b.size() && b.getGcCycle(j) == gcB ? occurrenceB + 1 : 0;
+            }
+        }
+    }
+
+    private void alignByTime() {
+        int j = 0;
+        for (int i = 0; i < a.size(); i++) {
+            long time = a.getTimestamp(i);
+            if (time < 0) continue;
+            while (j < b.size() && b.getTimestamp(j) < 0) j++;
+            if (j == b.size()) break;
+            // move on while the next snapshot of b is at least as close
+            int next = j + 1;
+            while (next < b.size()) {
+                long t = b.getTimestamp(next);
+                if (t >= 0) {
+                    if (Math.abs(t - time) > Math.abs(b.getTimestamp(j) - time)) break;
+                    j = next;
+                }
+                next++;
+            }
+            pair(i, j);
+        }
+    }
+
+    private void pair(int i, int j) {
+        if (pairs == first.length) growPairs();
+        int p = pairs++;
+        first[p] = i;
+        second[p] = j;
+        ext[p] = b.getExternalFragmentation(j) - a.getExternalFragmentation(i);
+        internal[p] = b.getInternalFragmentation(j) - a.getInternalFragmentation(i);
+        free[p] = b.getFree(j) - a.getFree(i);
+        wasted[p] = b.getWastedBytes(j) - a.getWastedBytes(i);
+
+        float[] sharesA = shares(a.get(i));
+        float[] sharesB = shares(b.get(j));
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            typeShares[t][p] = sharesB[t] - sharesA[t];
+            shareSum[0][t] += sharesA[t];
+            shareSum[1][t] += sharesB[t];
+        }
+        add(0, a, i);
+        add(1, b, j);
+    }
+
+    private void add(int side, SnapshotTimeline t, int n) {
+        extSum[side] += t.getExternalFragmentation(n);
+        intSum[side] += t.getInternalFragmentation(n);
+        freeSum[side] += t.getFree(n);
+        if (t.isFull(n)) fullCount[side]++;
+    }
+
+    private void growPairs() {
+        int size = first.length * 2;
+        first = Arrays.copyOf(first, size);
+        second = Arrays.copyOf(second, size);
+        ext = Arrays.copyOf(ext, size);
+        internal = Arrays.copyOf(internal, size);
+        free = Arrays.copyOf(free, size);
+        wasted = Arrays.copyOf(wasted, size);
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            typeShares[t] = Arrays.copyOf(typeShares[t], size);
+        }
+    }
+
+    /** Percentage of the snapshot's regions per type, in {@link HeapSnapshot#TYPES} order. */
+    private static float[] shares(HeapSnapshot s) {
+        int[] counts = new int[HeapSnapshot.TYPES.length];
+        for (int i = 0; i < s.getRegionCount(); i++) {
+            counts[HeapSnapshot.typeSlot(s.getRegionType(i))]++;
+        }
+        float[] shares = new float[HeapSnapshot.TYPES.length];
+        if (s.getRegionCount() == 0) return shares;
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            shares[t] = counts[t] * 100f / s.getRegionCount();
+        }
+        return shares;
+    }
+
+    public int getPairCount() {
+        return pairs;
+    }
+
+    /** Position in the first log of pair p. */
+    public int getFirst(int p) {
+        return first[p];
+    }
+
+    /** Position in the second log of pair p. */
+    public int getSecond(int p) {
+        return second[p];
+    }
+
+    public int getExternalFragmentationDelta(int p) {
+        return ext[p];
+    }
+
+    public int getInternalFragmentationDelta(int p) {
+        return internal[p];
+    }
+
+    public int getFreeDelta(int p) {
+        return free[p];
+    }
+
+    public long getWastedBytesDelta(int p) {
+        return wasted[p];
+    }
+
+    /** Difference in percentage points of the regions of the type in pair p. */
+    public float getTypeShareDelta(int p, int type) {
+        return typeShares[HeapSnapshot.typeSlot(type)][p];
+    }
+
+    /**
+     * {"by":..,"pairs":P,"a":{summary},"b":{summary},"n_a":[..],"n_b":[..],
+     * "gc_a":[..],"gc_b":[..],"time_a":[..],"time_b":[..],"ext":[..],"int":[..],
+     * "free":[..],"wasted":[..],"types":{"F":[..],..}} with one element per
+     * aligned pair; summaries hold the snapshot count, the number of paired
+     * Full GC snapshots and the averages of the metrics and type shares over
+     * the pairs.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(512 + pairs * 96);
+        json.append("{\"by\":\"").append(axis.name().toLowerCase())
+            .append("\",\"pairs\":").append(pairs)
+            .append(",\"a\":");
+        summary(json, 0, a.size());
+        json.append(",\"b\":");
+        summary(json, 1, b.size());
+
+        json.append(",\"n_a\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(first[p]);
+        json.append("],\"n_b\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(second[p]);
+        json.append("],\"gc_a\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(a.getGcCycle(first[p]));
+        json.append("],\"gc_b\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(b.getGcCycle(second[p]));
+        json.append("],\"time_a\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(a.getTimestamp(first[p]));
+        json.append("],\"time_b\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(b.getTimestamp(second[p]));
+        json.append("],\"ext\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(ext[p]);
+        json.append("],\"int\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(internal[p]);
+        json.append("],\"free\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(free[p]);
+        json.append("],\"wasted\":[");
+        for (int p = 0; p < pairs; p++) separate(json, p).append(wasted[p]);
+        json.append("],\"types\":{");
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            if (t > 0) json.append(',');
+            json.append('"').append(Region.typeName(HeapSnapshot.TYPES[t])).append("\":[");
+            for (int p = 0; p < pairs; p++) separate(json, p).append(round(typeShares[t][p]));
+            json.append(']');
+        }
+        return json.append("}}").toString();
+    }
+
+    private void summary(StringBuilder json, int side, int snapshots) {
+        json.append("{\"snapshots\":").append(snapshots)
+            .append(",\"full\":").append(fullCount[side])
+            .append(",\"ext\":").append(average(extSum[side]))
+            .append(",\"int\":").append(average(intSum[side]))
+            .append(",\"free\":").append(average(freeSum[side]))
+            .append(",\"types\":{");
+        for (int t = 0; t < HeapSnapshot.TYPES.length; t++) {
+            if (t > 0) json.append(',');
+            json.append('"').append(Region.typeName(HeapSnapshot.TYPES[t])).append("\":")
+                .append(pairs == 0 ? 0 : round(shareSum[side][t] / pairs));
+        }
+        json.append("}}");
+    }
+
+    private double average(long sum) {
+        return pairs == 0 ? 0 : round((double) sum / pairs);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static StringBuilder separate(StringBuilder json, int p) {
+        return p > 0 ? json.append(',') : json;
+    }
+}
@@ -0,0 +1,375 @@
+package org.heapfrag.model;
+
+import java.util.Arrays;
+
+/**
+ * Server-side aggregation of a timeline range for overviews.
+ *
+ * The snapshots whose GC cycle (or uptime) lies in [from, to] are split, in
+ * log order, into at most the requested number of buckets of consecutive
+ * snapshots. Metric buckets are folded from the per-snapshot values the
+ * timeline keeps anyway, so no snapshot is rebuilt; the heap map rebuilds
+ * one snapshot per bucket and folds its regions into a fixed number of
+ * columns. Response sizes grow with the number of buckets only.
+ */
+public class TimelineOverview {
+
+    public enum Axis {
+        CYCLE,
+        TIME;
+
+        /** "time" selects {@link #TIME}, anything else {@link #CYCLE}. */
+        public static Axis of(String name) {
+            return "time".equalsIgnoreCase(name) ? TIME : CYCLE;
+        }
+    }
+
+    private final SnapshotTimeline timeline;
+    private final int[] selected; // positions in range, in log order
+    private final int buckets;
+
+    public TimelineOverview(SnapshotTimeline timeline, Axis axis, long from, long to, int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("Bucket count must be positive: " + buckets);
+        }
+        this.timeline = timeline;
+        int size = timeline.size();
+        int[] positions = new int[size];
+        int count = 0;
+        for (int p = 0; p < size; p++) {
+            long key = axis == Axis.TIME ? timeline.getTimestamp(p) : timeline.getGcCycle(p);
+            if (key >= from && key <= to) positions[count++] = p;
+        }
+        this.selected = Arrays.copyOf(positions, count);
+        this.buckets = Math.min(buckets, count);
+    }
+
+    /** Number of snapshots in the range. */
+    public int getSnapshotCount() {
+        return selected.length;
+    }
+
+    public int getBucketCount() {
+        return buckets;
+    }
+
+    private int bucketStart(int b) {
+        return (int) ((long) b * selected.length / buckets);
+    }
+
+    /** Position of the first snapshot of bucket b. */
+    public int getFirst(int b) {
+        return selected[bucketStart(b)];
+    }
+
+    /** Position of the last snapshot of bucket b. */
+    public int getLast(int b) {
+        return selected[bucketStart(b + 1) - 1];
+    }
+
+    /**
+     * Metric buckets as parallel arrays:
+     * {"first":[..],"last":[..],"gcFrom":[..],"gcTo":[..],"timeFrom":[..],
+     * "timeTo":[..],"full":[..],"extMin":[..],"extMax":[..],"extAvg":[..],
+     * "intMin":..,"intMax":..,"intAvg":..,"freeMin":..,"freeMax":..,"freeAvg":..}
+     * where first/last are positions usable as n for /graph/getn, full counts
+     * the full GC snapshots and averages have one decimal.
+     */
+    public String metricsJson() {
+        String[] names = {
+            "first", "last", "gcFrom", "gcTo", "timeFrom", "timeTo", "full",
+            "extMin", "extMax", "extAvg", "intMin", "intMax", "intAvg",
+            "freeMin", "freeMax", "freeAvg",
+        };
+        StringBuilder[] columns = new StringBuilder[names.length];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = new StringBuilder(buckets * 4 + 2);
+        }
+        for (int b = 0; b < buckets; b++) {
+            int start = bucketStart(b);
+            int end = bucketStart(b + 1);
+            int gcFrom = Integer.MAX_VALUE, gcTo = Integer.MIN_VALUE, full = 0;
+            int extMin = 100, extMax = 0, intMin = 100, intMax = 0, freeMin = 100, freeMax = 0;
+            long extSum = 0, intSum = 0, freeSum = 0;
+            for (int i = start; i < end; i++) {
+                int p = selected[i];
+                int gc = timeline.getGcCycle(p);
+                int ext = timeline.getExternalFragmentation(p);
+                int internal = timeline.getInternalFragmentation(p);
+                int free = timeline.getFree(p);
+                gcFrom = Math.min(gcFrom, gc);
+                gcTo = Math.max(gcTo, gc);
+                if (timeline.isFull(p)) full++;
+                extMin = Math.min(extMin, ext);
+                extMax = Math.max(extMax, ext);
+                extSum += ext;
+                intMin = Math.min(intMin, internal);
+                intMax = Math.max(intMax, internal);
+                intSum += internal;
+                freeMin = Math.min(freeMin, free);
+                freeMax = Math.max(freeMax, free);
+                freeSum += free;
+            }
+            int n = end - start;
+            char sep = b == 0 ? '[' : ',';
+            columns[0].append(sep).append(selected[start]);
+            columns[1].append(sep).append(selected[end - 1]);
+            columns[2].append(sep).append(gcFrom);
+            columns[3].append(sep).append(gcTo);
+            columns[4].append(sep).append(timeline.getTimestamp(selected[start]));
+            columns[5].append(sep).append(timeline.getTimestamp(selected[end - 1]));
+            columns[6].append(sep).append(full);
+            columns[7].append(sep).append(extMin);
+            columns[8].append(sep).append(extMax);
+            columns[9].append(sep).append(average(extSum, n));
+            columns[10].append(sep).append(intMin);
+            columns[11].append(sep).append(intMax);
+            columns[12].append(sep).append(average(intSum, n));
+            columns[13].append(sep).append(freeMin);
+            columns[14].append(sep).append(freeMax);
+            columns[15].append(sep).append(average(freeSum, n));
+        }
+        StringBuilder json = new StringBuilder();
+        for (int c = 0; c < names.length; c++) {
+            json.append(c == 0 ? '{' : ',').append('"').append(names[c]).append("\":");
+            json.append(buckets == 0 ? "[" : columns[c]).append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static double average(long sum, int n) {
+        return Math.round(sum * 10.0 / n) / 10.0;
+    }
+
+    /**
+     * Downsampled region grid, one row per bucket showing the bucket's last
+     * snapshot, with the regions folded into at most the given number of
+     * columns: {"regions":R,"columns":C,"n":[..],"gc":[..],"time":[..],
+     * "types":[[..],..],"usage":[[..],..]}. A cell holds the most frequent
+     * region type of its regions (ties go to the later type in F, CS, E, S,
+     * O, HS, HC order) and their average usage percentage.
+     */
+    public String heapMapJson(int maxColumns) {
+        if (maxColumns < 1) {
+            throw new IllegalArgumentException("Column count must be positive: " + maxColumns);
+        }
+        int regions = buckets == 0 ? 0 : timeline.get(getLast(0)).getRegionCount();
+        int perColumn = Math.max(1, (regions + maxColumns - 1) / maxColumns);
+        int columns = (regions + perColumn - 1) / perColumn;
+
+        StringBuilder n = new StringBuilder("[");
+        StringBuilder gc = new StringBuilder("[");
+        StringBuilder time = new StringBuilder("[");
+        StringBuilder types = new StringBuilder("[");
+        StringBuilder usage = new StringBuilder("[");
+        int[] counts = new int[HeapSnapshot.TYPES.length];
+        for (int b = 0; b < buckets; b++) {
+            int p = getLast(b);
+            HeapSnapshot s = timeline.get(p);
+            if (b > 0) {
+                n.append(',');
+                gc.append(',');
+                time.append(',');
+                types.append(',');
+                usage.append(',');
+            }
+            n.append(p);
+            gc.append(s.getGcCycle());
+            time.append(s.getTimestamp());
+            types.append('[');
+            usage.append('[');
+            // snapshots with another region count are folded into the same columns
+            for (int c = 0; c < columns; c++) {
+                int from = Math.min(c * perColumn, s.getRegionCount());
+                int to = Math.min(from + perColumn, s.getRegionCount());
+                Arrays.fill(counts, 0);
+                long usageSum = 0;
+                for (int i = from; i < to; i++) {
+                    counts[HeapSnapshot.typeSlot(s.getRegionType(i))]++;
+                    usageSum += s.getUsagePercent(i);
+                }
+                int dominant = 0; // ties go to the later type in HeapSnapshot.TYPES
+                for (int t = 1; t < counts.length; t++) {
+                    if (counts[t] >= counts[dominant]) dominant = t;
+                }
+                if (c > 0) {
+                    types.append(',');
+                    usage.append(',');
+                }
+                types.append(to > from ? HeapSnapshot.TYPES[dominant] : 0);
+                usage.append(to > from ? usageSum / (to - from) : 0);
+            }
+            types.append(']');
+            usage.append(']');
+        }
+        return "{\"regions\":" + regions + ",\"columns\":" + columns +
+            ",\"n\":" + n + "],\"gc\":" + gc + "],\"time\":" + time +
+            "],\"types\":" + types + "],\"usage\":" + usage + "]}";
+    }
+
+    /**
+     * Humongous allocation feasibility of an object of the given number of
+     * regions over the range, for the last snapshot of every bucket:
+     * {"regions":N,"n":[..],"gc":[..],"time":[..],"fits":[..],"fitRuns":[..],
+     * "objects":[..],"maxRun":[..]} with fits as 0/1, see {@link FreeRunIndex}.
+     */
+    public String humongousJson(int regions) {
+        if (regions < 1) {
+            throw new IllegalArgumentException("Object size must be positive: " + regions);
+        }
+        StringBuilder n = new StringBuilder("[");
+        StringBuilder gc = new StringBuilder("[");
+        StringBuilder time = new StringBuilder("[");
+        StringBuilder fits = new StringBuilder("[");
+        StringBuilder fitRuns = new StringBuilder("[");
+        StringBuilder objects = new StringBuilder("[");
+        StringBuilder maxRun = new StringBuilder("[");
+        for (int b = 0; b < buckets; b++) {
+            int p = getLast(b);
+            HeapSnapshot s = timeline.get(p);
+            FreeRunIndex index = s.getFreeRunIndex();
+            if (b > 0) {
+                n.append(',');
+                gc.append(',');
+                time.append(',');
+                fits.append(',');
+                fitRuns.append(',');
+                objects.append(',');
+                maxRun.append(',');
+            }
+            n.append(p);
+            gc.append(s.getGcCycle());
+            time.append(s.getTimestamp());
+            fits.append(index.canPlace(regions) ? 1 : 0);
+            fitRuns.append(index.countRuns(regions));
+            objects.append(index.countFitting(regions));
+            maxRun.append(index.getMaxRun());
+        }
+        return "{\"regions\":" + regions + ",\"n\":" + n + "],\"gc\":" + gc +
+            "],\"time\":" + time + "],\"fits\":" + fits + "],\"fitRuns\":" + fitRuns +
+            "],\"objects\":" + objects + "],\"maxRun\":" + maxRun + "]}";
+    }
+
+    /**
+     * Region statistics aggregated per bucket:
+     * {"first":[..],"last":[..],"gcFrom":[..],"gcTo":[..],"timeFrom":[..],
+     * "timeTo":[..],"counts":{"F":A,..},"bytes":{"F":A,..},
+     * "oldOccupancy":[A,..],"humongousWasted":A} where every A is
+     * {"min":[..],"max":[..],"avg":[..]} over the snapshots of each bucket,
+     * oldOccupancy has one per tenth of usage and averages have one decimal.
+     * See {@link HeapSnapshot#statsJson()}; read from the timeline's
+     * per-snapshot values, no snapshot is rebuilt.
+     */
+    public String statsJson() {
+        String[] names = {"first", "last", "gcFrom", "gcTo", "timeFrom", "timeTo"};
+        StringBuilder[] columns = new StringBuilder[names.length];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = new StringBuilder(buckets * 4 + 2).append('[');
+        }
+        int types = HeapSnapshot.TYPES.length;
+        Aggregate[] counts = Aggregate.array(types, buckets);
+        Aggregate[] bytes = Aggregate.array(types, buckets);
+        Aggregate[] old = Aggregate.array(HeapSnapshot.OCCUPANCY_BUCKETS, buckets);
+        Aggregate humongousWasted = new Aggregate(buckets);
+        for (int b = 0; b < buckets; b++) {
+            int start = bucketStart(b);
+            int end = bucketStart(b + 1);
+            int gcFrom = Integer.MAX_VALUE, gcTo = Integer.MIN_VALUE;
+            for (int i = start; i < end; i++) {
+                int p = selected[i];
+                int gc = timeline.getGcCycle(p);
+                gcFrom = Math.min(gcFrom, gc);
+                gcTo = Math.max(gcTo, gc);
+                for (int t = 0; t < types; t++) {
+                    counts[t].add(timeline.getTypeCount(p, HeapSnapshot.TYPES[t]));
+                    bytes[t].add(timeline.getTypeUsedBytes(p, HeapSnapshot.TYPES[t]));
+                }
+                for (int o = 0; o < old.length; o++) old[o].add(timeline.getOldOccupancy(p, o));
+                humongousWasted.add(timeline.getHumongousWastedBytes(p));
+            }
+            String sep = b > 0 ? "," : "";
+            columns[0].append(sep).append(selected[start]);
+            columns[1].append(sep).append(selected[end - 1]);
+            columns[2].append(sep).append(gcFrom);
+            columns[3].append(sep).append(gcTo);
+            columns[4].append(sep).append(timeline.getTimestamp(selected[start]));
+            columns[5].append(sep).append(timeline.getTimestamp(selected[end - 1]));
+            for (Aggregate a : counts) a.close();
+            for (Aggregate a : bytes) a.close();
+            for (Aggregate a : old) a.close();
+            humongousWasted.close();
+        }
+        StringBuilder json = new StringBuilder(512 + buckets * 512);
+        for (int c = 0; c < names.length; c++) {
+            json.append(c == 0 ? '{' : ',').append('"').append(names[c]).append("\":").append(columns[c]).append(']');
+        }
+        json.append(",\"counts\":{");
+        for (int t = 0; t < types; t++) {
+            if (t > 0) json.append(',');
+            json.append('"').append(Region.typeName(HeapSnapshot.TYPES[t])).append("\":");
+            counts[t].appendTo(json);
+        }
+        json.append("},\"bytes\":{");
+        for (int t = 0; t < types; t++) {
+            if (t > 0) json.append(',');
+            json.append('"').append(Region.typeName(HeapSnapshot.TYPES[t])).append("\":");
+            bytes[t].appendTo(json);
+        }
+        json.append("},\"oldOccupancy\":[");
+        for (int o = 0; o < old.length; o++) {
+            if (o > 0) json.append(',');
+            old[o].appendTo(json);
+        }
+        json.append("],\"humongousWasted\":");
+        humongousWasted.appendTo(json);
+        return json.append('}').toString();
+    }
+
+    /** Minimum, maximum and average of a value per bucket. */
+    private static final class Aggregate {
+
+        private final StringBuilder min;
+        private final StringBuilder max;
+        private final StringBuilder avg;
+        private long low = Long.MAX_VALUE;
+        private long high = Long.MIN_VALUE;
+        private long sum = 0;
+        private int n = 0;
+
+        Aggregate(int buckets) {
+            min = new StringBuilder(buckets * 4 + 2).append('[');
+            max = new StringBuilder(buckets * 4 + 2).append('[');
+            avg = new StringBuilder(buckets * 6 + 2).append('[');
+        }
+
+        static Aggregate[] array(int length, int buckets) {
+            Aggregate[] all = new Aggregate[length];
+            for (int i = 0; i < length; i++) all[i] = new Aggregate(buckets);
+            return all;
+        }
+
+        void add(long value) {
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+            sum += value;
+            n++;
+        }
+
+        /** Ends the current bucket. */
+        void close() {
+            String sep = min.length() > 1 ? "," : "";
+            min.append(sep).append(low);
+            max.append(sep).append(high);
+            avg.append(sep).append(average(sum, n));
+            low = Long.MAX_VALUE;
+            high = Long.MIN_VALUE;
+            sum = 0;
+            n = 0;
+        }
+
+        void appendTo(StringBuilder json) {
+            json.append("{\"min\":").append(min).append("],\"max\":").append(max)
+                .append("],\"avg\":").append(avg).append("]}");
+        }
+    }
+}
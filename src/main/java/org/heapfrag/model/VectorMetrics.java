@@ -0,0 +1,237 @@
+package org.heapfrag.model;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The metric pass of {@link HeapSnapshot} with the incubating Vector API.
+ *
+ * Types and usage are processed a vector of bytes at a time: free regions are
+ * counted with a lane compare, the usage percentages are widened to ints for
+ * their sum and sum of squares, and the longest free and humongous runs only
+ * look at single regions in vectors that mix free and used (or humongous and
+ * other) regions. Type counts and the old occupancy distribution are lane
+ * compares as well, the latter counting the old regions at or above each
+ * tenth of usage. The top column is processed in int vectors of the same
+ * shape and widened to longs and doubles for the byte totals.
+ *
+ * Only snapshots without index gaps are handled here. This class links
+ * against jdk.incubator.vector, so it must not be touched unless the module
+ * is in the boot layer; {@link HeapSnapshot} checks that before the first
+ * call and falls back to its scalar pass otherwise.
+ */
+final class VectorMetrics {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // bytes with one lane per int lane, to mask the top column by type
+    private static final VectorSpecies<Byte> TYPE_LANES =
+        VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+
+    /** Below this many regions the scalar pass is as fast. */
+    static final int MIN_REGIONS = 256;
+
+    // int lanes of the usage sums are added to the totals before they can
+    // overflow: 100² per region and lane
+    private static final int FLUSH_INTERVAL = 1 << 14;
+
+    private static final byte HS = 120;
+    private static final byte HC = (byte) 150;
+    private static final byte O = 90;
+
+    private VectorMetrics() {
+    }
+
+    /**
+     * Whether vectors are wide enough to pay off. Without SIMD registers the
+     * Vector API runs in its Java fallback, which is slower than the scalar
+     * pass.
+     */
+    static boolean isUseful() {
+        return BYTES.vectorBitSize() >= 128 && TYPE_LANES.length() == INTS.length();
+    }
+
+    /**
+     * Computes the metric aggregates of a snapshot whose region i has index i
+     * and stores them in the snapshot.
+     */
+    static void compute(HeapSnapshot s) {
+        byte[] types = s.types;
+        byte[] usage = s.usage;
+        int count = s.count;
+        int lanes = BYTES.length();
+        int bound = BYTES.loopBound(count);
+        int parts = lanes / INTS.length();
+
+        int free = 0;
+        int freeRun = 0;
+        int maxFreeRun = 0;
+        int humongousRun = 0;
+        int maxHumongous = 0;
+        long linear = 0;
+        long squared = 0;
+        IntVector linearLanes = IntVector.zero(INTS);
+        IntVector squaredLanes = IntVector.zero(INTS);
+        int[] counts = new int[HeapSnapshot.TYPES.length];
+        int[] oldAtLeast = new int[HeapSnapshot.OCCUPANCY_BUCKETS]; // old regions with usage >= 10 * b
+
+        int i = 0;
+        for (int step = 1; i < bound; i += lanes, step++) {
+            ByteVector t = ByteVector.fromArray(BYTES, types, i);
+
+            int freeLanes = t.eq((byte) 0).trueCount();
+            free += freeLanes;
+            if (freeLanes == lanes) {
+                freeRun += lanes;
+            } else if (freeLanes == 0) {
+                maxFreeRun = Math.max(maxFreeRun, freeRun);
+                freeRun = 0;
+            } else {
+                for (int k = i; k < i + lanes; k++) {
+                    if (types[k] == 0) {
+                        freeRun++;
+                    } else {
+                        maxFreeRun = Math.max(maxFreeRun, freeRun);
+                        freeRun = 0;
+                    }
+                }
+            }
+
+            VectorMask<Byte> humongous = t.eq(HS).or(t.eq(HC));
+            if (!humongous.anyTrue()) {
+                humongousRun = 0;
+            } else {
+                for (int k = i; k < i + lanes; k++) {
+                    humongousRun = humongousRun(types[k], humongousRun);
+                    maxHumongous = Math.max(maxHumongous, humongousRun);
+                }
+            }
+
+            for (int slot = 1; slot < counts.length; slot++) {
+                counts[slot] += t.eq((byte) HeapSnapshot.TYPES[slot]).trueCount();
+            }
+
+            ByteVector u = ByteVector.fromArray(BYTES, usage, i);
+            VectorMask<Byte> old = t.eq(O);
+            if (old.anyTrue()) {
+                oldAtLeast[0] += old.trueCount();
+                for (int b = 1; b < oldAtLeast.length; b++) {
+                    oldAtLeast[b] += u.compare(VectorOperators.GE, (byte) (b * 10)).and(old).trueCount();
+                }
+            }
+            for (int p = 0; p < parts; p++) {
+                IntVector w = (IntVector) u.convertShape(VectorOperators.B2I, INTS, p);
+                linearLanes = linearLanes.add(w);
+                squaredLanes = squaredLanes.add(w.mul(w));
+            }
+            if (step % FLUSH_INTERVAL == 0) {
+                linear += linearLanes.reduceLanesToLong(VectorOperators.ADD);
+                squared += squaredLanes.reduceLanesToLong(VectorOperators.ADD);
+                linearLanes = IntVector.zero(INTS);
+                squaredLanes = IntVector.zero(INTS);
+            }
+        }
+        linear += linearLanes.reduceLanesToLong(VectorOperators.ADD);
+        squared += squaredLanes.reduceLanesToLong(VectorOperators.ADD);
+
+        for (; i < count; i++) {
+            if (types[i] == 0) {
+                free++;
+                freeRun++;
+            } else {
+                maxFreeRun = Math.max(maxFreeRun, freeRun);
+                freeRun = 0;
+            }
+            humongousRun = humongousRun(types[i], humongousRun);
+            maxHumongous = Math.max(maxHumongous, humongousRun);
+            int p = usage[i];
+            linear += p;
+            squared += p * p;
+            int slot = HeapSnapshot.typeSlot(types[i] & 0xFF);
+            if (slot > 0) counts[slot]++;
+            if (types[i] == O) {
+                for (int b = 0; b < oldAtLeast.length && p >= b * 10; b++) oldAtLeast[b]++;
+            }
+        }
+        maxFreeRun = Math.max(maxFreeRun, freeRun);
+        // unknown type codes count as free, as in the scalar pass
+        counts[0] = count;
+        for (int slot = 1; slot < counts.length; slot++) counts[0] -= counts[slot];
+        int[] old = new int[oldAtLeast.length];
+        for (int b = 0; b < old.length; b++) {
+            old[b] = oldAtLeast[b] - (b + 1 < old.length ? oldAtLeast[b + 1] : 0);
+        }
+
+        long used = 0;
+        long wasted = 0;
+        double usedSq = 0;
+        long[] bytes = new long[HeapSnapshot.TYPES.length];
+        if (s.top != null) {
+            int[] top = s.top;
+            int intLanes = INTS.length();
+            int intBound = INTS.loopBound(count);
+            int halves = intLanes / LONGS.length();
+            IntVector none = IntVector.zero(INTS);
+            LongVector usedLanes = LongVector.zero(LONGS);
+            LongVector nonFreeLanes = LongVector.zero(LONGS); // top of regions that are not free
+            DoubleVector squareLanes = DoubleVector.zero(DOUBLES);
+            LongVector[] typeLanes = new LongVector[HeapSnapshot.TYPES.length]; // free regions are the rest
+            for (int slot = 1; slot < typeLanes.length; slot++) typeLanes[slot] = LongVector.zero(LONGS);
+
+            int j = 0;
+            for (; j < intBound; j += intLanes) {
+                IntVector b = IntVector.fromArray(INTS, top, j);
+                ByteVector t = ByteVector.fromArray(TYPE_LANES, types, j);
+                VectorMask<Integer> nonFree = t.compare(VectorOperators.NE, (byte) 0).cast(INTS);
+                IntVector counted = none.blend(b, nonFree);
+                for (int p = 0; p < halves; p++) {
+                    usedLanes = usedLanes.add((LongVector) b.convertShape(VectorOperators.I2L, LONGS, p));
+                    nonFreeLanes = nonFreeLanes.add((LongVector) counted.convertShape(VectorOperators.I2L, LONGS, p));
+                    DoubleVector d = (DoubleVector) b.convertShape(VectorOperators.I2D, DOUBLES, p);
+                    squareLanes = d.fma(d, squareLanes);
+                }
+                if (!nonFree.anyTrue()) continue;
+                for (int slot = 1; slot < typeLanes.length; slot++) {
+                    VectorMask<Integer> isType = t.eq((byte) HeapSnapshot.TYPES[slot]).cast(INTS);
+                    if (!isType.anyTrue()) continue;
+                    IntVector typed = none.blend(b, isType);
+                    for (int p = 0; p < halves; p++) {
+                        typeLanes[slot] = typeLanes[slot].add((LongVector) typed.convertShape(VectorOperators.I2L, LONGS, p));
+                    }
+                }
+            }
+            used = usedLanes.reduceLanes(VectorOperators.ADD);
+            long nonFreeTop = nonFreeLanes.reduceLanes(VectorOperators.ADD);
+            usedSq = squareLanes.reduceLanes(VectorOperators.ADD);
+            for (int slot = 1; slot < typeLanes.length; slot++) {
+                bytes[slot] = typeLanes[slot].reduceLanes(VectorOperators.ADD);
+            }
+            for (; j < count; j++) {
+                int b = top[j];
+                used += b;
+                usedSq += (double) b * b;
+                if (types[j] != 0) nonFreeTop += b;
+                bytes[HeapSnapshot.typeSlot(types[j] & 0xFF)] += b;
+            }
+            bytes[0] = used;
+            for (int slot = 1; slot < bytes.length; slot++) bytes[0] -= bytes[slot];
+            // sum of regionSize - top over the regions that are not free
+            wasted = (long) (count - free) * s.regionSize - nonFreeTop;
+        }
+        s.setMetrics(free, maxFreeRun, maxHumongous, linear, squared, used, wasted, usedSq, counts, bytes, old);
+    }
+
+    private static int humongousRun(byte type, int run) {
+        if (type == HS) return 1;
+        if (type == HC && run > 0) return run + 1;
+        return 0;
+    }
+}
@@ -3,14 +3,27 @@ package org.http;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Path;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HexFormat;
 
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
+import jakarta.ws.rs.core.MediaType;
 
-import org.gc.log.parser.GcLogParser;
-import org.heapfrag.model.HeapSnapshot;
+import org.gc.log.parser.LogDecompressor;
+import org.gc.log.parser.ParallelGcLogParser;
+import org.gc.log.parser.SnapshotCache;
+import org.gc.log.parser.StreamingGcLogParser;
+import org.heapfrag.model.SnapshotTimeline;
 import org.jboss.resteasy.reactive.RestForm;
+import org.jboss.resteasy.reactive.RestQuery;
+import org.jboss.resteasy.reactive.RestResponse;
 import org.jboss.resteasy.reactive.multipart.FileUpload;
 
 @Path("multipart")
@@ -21,13 +34,153 @@ public class DataResource {
 
     @POST
     public String upload(@RestForm String description,
-                         @RestForm("file") FileUpload file) throws IOException {
+                         @RestForm("file") FileUpload file,
+                         @RestQuery("session") String session) throws IOException {
         System.out.println("Uploading: " + file.fileName() + " (" + file.size() + " bytes)");
 
-        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(file.uploadedFile().toFile());
-        dataStore.setSnapshots(snapshots);
+        SnapshotCache cache = dataStore.getCache();
+        String key = cache != null ? SnapshotCache.contentKeyOf(file.uploadedFile()) : null;
+        SnapshotTimeline cached = cache != null ? cache.load(key) : null;
+        if (cached != null) {
+            dataStore.put(session, cached);
+            System.out.println("Loaded " + cached.size() + " heap snapshots from cache");
+            return "Loaded " + cached.size() + " heap snapshots from " + file.fileName();
+        }
 
-        System.out.println("Parsed " + snapshots.size() + " heap snapshots");
-        return "Parsed " + snapshots.size() + " heap snapshots from " + file.fileName();
+        SnapshotTimeline timeline = dataStore.open(session);
+        try (InputStream in = Files.newInputStream(file.uploadedFile())) {
+            BufferedInputStream buffered = new BufferedInputStream(in);
+            if (LogDecompressor.detect(buffered) == LogDecompressor.Format.PLAIN) {
+                ParallelGcLogParser.parse(file.uploadedFile(), dataStore.appender(session, timeline));
+            } else {
+                StreamingGcLogParser.parse(LogDecompressor.decompress(buffered), dataStore.appender(session, timeline));
+            }
+        } finally {
+            dataStore.complete(session);
+        }
+        if (cache != null) cache.store(key, timeline);
+
+        System.out.println("Parsed " + timeline.size() + " heap snapshots");
+        return "Parsed " + timeline.size() + " heap snapshots from " + file.fileName();
+    }
+
+    /**
+     * Parses the raw request body (plain, gzip or zstd) while it is being
+     * received. The new timeline is published before parsing starts, so
+     * clients can render snapshots before the upload has finished.
+     * Uploads to different sessions run concurrently.
+     *
+     * The body is digested while it is read and the result is cached under
+     * the SHA-256 of the received bytes, see {@link #cached}. If the client
+     * passes the file's size, nothing is cached unless exactly that many
+     * bytes arrived.
+     */
+    @POST
+    @Path("stream")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public String stream(@RestQuery("name") String name,
+                         @RestQuery("session") String session,
+                         @RestQuery("size") Long size,
+                         InputStream body) throws IOException {
+        System.out.println("Streaming upload: " + name);
+
+        DigestingInputStream received = new DigestingInputStream(body);
+        SnapshotTimeline timeline = dataStore.open(session);
+        try {
+            StreamingGcLogParser.parse(LogDecompressor.decompress(received), dataStore.appender(session, timeline));
+            received.transferTo(OutputStream.nullOutputStream()); // trailing bytes the decompressor left
+        } finally {
+            dataStore.complete(session);
+        }
+        SnapshotCache cache = dataStore.getCache();
+        if (cache != null && (size == null || size == received.getCount())) {
+            cache.store(SnapshotCache.contentKeyOf(received.digest()), timeline);
+        } else if (cache != null) {
+            System.err.println("Not caching " + name + ": received " + received.getCount() + " of " + size + " bytes");
+        }
+
+        System.out.println("Parsed " + timeline.size() + " heap snapshots");
+        return "Parsed " + timeline.size() + " heap snapshots from " + name;
+    }
+
+    /**
+     * Loads a log previously sent to {@link #stream} or {@link #upload} from
+     * the cache, so the client can skip the upload. The log is identified by
+     * the SHA-256 of its bytes as sent, hex encoded; only a client that has
+     * the content can know it. Responds 404 if it is not cached.
+     */
+    @POST
+    @Path("cached")
+    public RestResponse<String> cached(@RestQuery("name") String name,
+                                       @RestQuery("session") String session,
+                                       @RestQuery("sha256") String sha256) {
+        SnapshotCache cache = dataStore.getCache();
+        if (cache == null || sha256 == null || !sha256.matches("[0-9a-fA-F]{64}")) {
+            return RestResponse.notFound();
+        }
+        SnapshotTimeline timeline = cache.load(SnapshotCache.contentKeyOf(HexFormat.of().parseHex(sha256)));
+        if (timeline == null) {
+            return RestResponse.notFound();
+        }
+        dataStore.put(session, timeline);
+        System.out.println("Loaded " + timeline.size() + " heap snapshots from cache");
+        return RestResponse.ok("Loaded " + timeline.size() + " heap snapshots from " + name);
+    }
+
+    /** Counts and digests (SHA-256) the bytes read through it. */
+    private static final class DigestingInputStream extends FilterInputStream {
+
+        private final MessageDigest sha = SnapshotCache.sha256();
+        private long count;
+
+        DigestingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                sha.update((byte) b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                sha.update(b, off, n);
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be digested too
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (r < 0) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        byte[] digest() {
+            return sha.digest();
+        }
     }
 }
@@ -5,9 +5,16 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import org.heapfrag.model.AnomalyDetector;
+import org.heapfrag.model.FreeRunIndex;
 import org.heapfrag.model.HeapSnapshot;
+import org.heapfrag.model.RegionHistory;
+import org.heapfrag.model.SnapshotTimeline;
+import org.heapfrag.model.TimelineComparison;
+import org.heapfrag.model.TimelineOverview;
 import org.jboss.resteasy.reactive.RestQuery;
 
+import java.util.Arrays;
 import java.util.List;
 
 @Path("/graph")
@@ -16,54 +23,344 @@ public class GreetingResource {
     @Inject
     HeapDataStore dataStore;
 
+    private static final byte[] EMPTY = {'[', ']'};
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/getn")
-    public String getn(@RestQuery("n") String n) {
-        List<HeapSnapshot> snapshots = dataStore.getSnapshots();
-        if (snapshots.isEmpty() || n == null) {
-            return "[]";
+    public byte[] getn(@RestQuery("n") String n, @RestQuery("session") String session) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        if (timeline.isEmpty() || n == null) {
+            return EMPTY;
         }
         int index = Integer.parseInt(n);
-        if (index < 0 || index >= snapshots.size()) {
-            return "[]";
+        if (index < 0 || index >= timeline.size()) {
+            return EMPTY;
+        }
+        return timeline.getRegionsJson(index);
+    }
+
+    private static final byte[] EMPTY_FRAME = {1, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * Binary alternative to /getn, see {@link HeapSnapshot#regionsFrame()}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/frame")
+    public byte[] frame(@RestQuery("n") String n, @RestQuery("session") String session) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        if (timeline.isEmpty() || n == null) {
+            return EMPTY_FRAME;
+        }
+        int index = Integer.parseInt(n);
+        if (index < 0 || index >= timeline.size()) {
+            return EMPTY_FRAME;
         }
-        return snapshots.get(index).regionsToJson();
+        return timeline.getRegionsFrame(index);
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/gridsize")
-    public String gridsize() {
-        List<HeapSnapshot> snapshots = dataStore.getSnapshots();
+    public String gridsize(@RestQuery("session") String session) {
+        List<HeapSnapshot> snapshots = dataStore.getTimeline(session);
         if (snapshots.isEmpty()) {
             return "0";
         }
         return String.valueOf(snapshots.get(0).getGridSize());
     }
 
+    /**
+     * Snapshot positions (usable as n for /getn) of a GC cycle.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/cycle")
+    public String cycle(@RestQuery("gc") String gc, @RestQuery("session") String session) {
+        if (gc == null) {
+            return "[]";
+        }
+        return Arrays.toString(dataStore.getPositionsOfCycle(session, Integer.parseInt(gc)));
+    }
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/size")
-    public String size() {
-        return String.valueOf(dataStore.getSnapshots().size());
+    public String size(@RestQuery("session") String session) {
+        return String.valueOf(dataStore.getTimeline(session).size());
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/metrics")
-    public String metrics(@RestQuery("n") String n) {
-        List<HeapSnapshot> snapshots = dataStore.getSnapshots();
-        if (snapshots.isEmpty() || n == null) {
-            return "{\"ext\":0,\"int\":0,\"free\":0}";
+    public String metrics(@RestQuery("n") String n, @RestQuery("session") String session) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        if (timeline.isEmpty() || n == null) {
+            return "{\"ext\":0,\"int\":0,\"free\":0,\"wasted\":0}";
+        }
+        int index = Integer.parseInt(n);
+        if (index < 0 || index >= timeline.size()) {
+            return "{\"ext\":0,\"int\":0,\"free\":0,\"wasted\":0}";
+        }
+        return "{\"ext\":" + timeline.getExternalFragmentation(index)
+             + ",\"int\":" + timeline.getInternalFragmentation(index)
+             + ",\"free\":" + timeline.getFree(index)
+             + ",\"wasted\":" + timeline.getWastedBytes(index) + "}";
+    }
+
+    /**
+     * Metric time series over all snapshots as parallel arrays:
+     * {"gc":[..],"ext":[..],"int":[..],"free":[..],"full":[..]}
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/metrics/all")
+    public String allMetrics(@RestQuery("session") String session) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        int size = timeline.size();
+        StringBuilder gc = new StringBuilder(size * 4);
+        StringBuilder ext = new StringBuilder(size * 3);
+        StringBuilder intFrag = new StringBuilder(size * 3);
+        StringBuilder free = new StringBuilder(size * 3);
+        StringBuilder full = new StringBuilder(size * 2);
+        for (int i = 0; i < size; i++) {
+            char sep = i == 0 ? '[' : ',';
+            gc.append(sep).append(timeline.getGcCycle(i));
+            ext.append(sep).append(timeline.getExternalFragmentation(i));
+            intFrag.append(sep).append(timeline.getInternalFragmentation(i));
+            free.append(sep).append(timeline.getFree(i));
+            full.append(sep).append(timeline.isFull(i) ? 1 : 0);
+        }
+        if (size == 0) {
+            return "{\"gc\":[],\"ext\":[],\"int\":[],\"free\":[],\"full\":[]}";
+        }
+        return "{\"gc\":" + gc + "],\"ext\":" + ext + "],\"int\":" + intFrag
+             + "],\"free\":" + free + "],\"full\":" + full + "]}";
+    }
+
+    /**
+     * Fragmentation anomalies of the session, see {@link AnomalyDetector#toJson()}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/anomalies")
+    public String anomalies(@RestQuery("session") String session) {
+        return dataStore.getAnomalies(session).toJson();
+    }
+
+    private static final int DEFAULT_CHURN_LIMIT = 20;
+    private static final int MAX_CHURN_LIMIT = 10_000;
+
+    /**
+     * Type history of one region across all snapshots, see
+     * {@link RegionHistory#regionJson(int)}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/region/history")
+    public String regionHistory(
+        @RestQuery("region") String region,
+        @RestQuery("session") String session
+    ) {
+        if (region == null) {
+            return "{}";
+        }
+        return dataStore.getRegionHistory(session).regionJson(Integer.parseInt(region));
+    }
+
+    /**
+     * Most churned regions and regions pinned under humongous objects for at
+     * least pinned snapshots, see {@link RegionHistory#summaryJson(int, int)}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/region/summary")
+    public String regionSummary(
+        @RestQuery("limit") String limit,
+        @RestQuery("pinned") String pinned,
+        @RestQuery("session") String session
+    ) {
+        return dataStore.getRegionHistory(session).summaryJson(
+            clamp(limit, DEFAULT_CHURN_LIMIT, MAX_CHURN_LIMIT),
+            pinned == null ? 1 : Integer.parseInt(pinned)
+        );
+    }
+
+    private static final int DEFAULT_BUCKETS = 200;
+    private static final int MAX_BUCKETS = 10_000;
+    private static final int DEFAULT_COLUMNS = 256;
+    private static final int MAX_COLUMNS = 4096;
+
+    /**
+     * Metrics of a range of snapshots aggregated into at most buckets
+     * buckets, see {@link TimelineOverview#metricsJson()}. The range is
+     * [from, to] in GC cycles, or in uptime milliseconds with by=time; open
+     * ends default to the whole timeline.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/range")
+    public String range(
+        @RestQuery("by") String by,
+        @RestQuery("from") String from,
+        @RestQuery("to") String to,
+        @RestQuery("buckets") String buckets,
+        @RestQuery("session") String session
+    ) {
+        return overview(session, by, from, to, buckets).metricsJson();
+    }
+
+    /**
+     * Downsampled heap map of a range, one row per bucket and at most
+     * columns cells per row, see {@link TimelineOverview#heapMapJson(int)}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/heatmap")
+    public String heatmap(
+        @RestQuery("by") String by,
+        @RestQuery("from") String from,
+        @RestQuery("to") String to,
+        @RestQuery("buckets") String buckets,
+        @RestQuery("columns") String columns,
+        @RestQuery("session") String session
+    ) {
+        return overview(session, by, from, to, buckets)
+            .heapMapJson(clamp(columns, DEFAULT_COLUMNS, MAX_COLUMNS));
+    }
+
+    /**
+     * Free run index of snapshot n, answering whether and how many humongous
+     * objects of the given number of regions fit, see {@link FreeRunIndex#toJson(int)}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/humongous")
+    public String humongous(
+        @RestQuery("n") String n,
+        @RestQuery("regions") String regions,
+        @RestQuery("session") String session
+    ) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        int size = regions == null ? 0 : Integer.parseInt(regions);
+        if (timeline.isEmpty() || n == null) {
+            return "{}";
+        }
+        int index = Integer.parseInt(n);
+        if (index < 0 || index >= timeline.size()) {
+            return "{}";
+        }
+        return timeline.get(index).getFreeRunIndex().toJson(size);
+    }
+
+    /**
+     * Humongous feasibility of a regions-sized object over a range, one value
+     * per bucket, see {@link TimelineOverview#humongousJson(int)}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/humongous/range")
+    public String humongousRange(
+        @RestQuery("regions") String regions,
+        @RestQuery("by") String by,
+        @RestQuery("from") String from,
+        @RestQuery("to") String to,
+        @RestQuery("buckets") String buckets,
+        @RestQuery("session") String session
+    ) {
+        return overview(session, by, from, to, buckets)
+            .humongousJson(regions == null ? 1 : Integer.parseInt(regions));
+    }
+
+    /**
+     * Region type counts and bytes, old occupancy distribution and humongous
+     * waste of a snapshot, see {@link HeapSnapshot#statsJson()}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/stats")
+    public String stats(@RestQuery("n") String n, @RestQuery("session") String session) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        if (timeline.isEmpty() || n == null) {
+            return "{}";
         }
         int index = Integer.parseInt(n);
-        if (index < 0 || index >= snapshots.size()) {
-            return "{\"ext\":0,\"int\":0,\"free\":0}";
+        if (index < 0 || index >= timeline.size()) {
+            return "{}";
+        }
+        return timeline.get(index).statsJson();
+    }
+
+    /**
+     * Region statistics over a range (e.g. one GC cycle with from=to), with
+     * minimum, maximum and average per bucket, see
+     * {@link TimelineOverview#statsJson()}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/stats/range")
+    public String statsRange(
+        @RestQuery("by") String by,
+        @RestQuery("from") String from,
+        @RestQuery("to") String to,
+        @RestQuery("buckets") String buckets,
+        @RestQuery("session") String session
+    ) {
+        return overview(session, by, from, to, buckets).statsJson();
+    }
+
+    /**
+     * Compares the snapshots of two sessions aligned by GC cycle, or by
+     * uptime with by=time, see {@link TimelineComparison#toJson()}.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/compare")
+    public String compare(
+        @RestQuery("a") String a,
+        @RestQuery("b") String b,
+        @RestQuery("by") String by
+    ) {
+        return new TimelineComparison(
+            dataStore.getTimeline(a),
+            dataStore.getTimeline(b),
+            TimelineOverview.Axis.of(by)
+        ).toJson();
+    }
+
+    private TimelineOverview overview(String session, String by, String from, String to, String buckets) {
+        return new TimelineOverview(
+            dataStore.getTimeline(session),
+            TimelineOverview.Axis.of(by),
+            from == null ? Long.MIN_VALUE : Long.parseLong(from),
+            to == null ? Long.MAX_VALUE : Long.parseLong(to),
+            clamp(buckets, DEFAULT_BUCKETS, MAX_BUCKETS)
+        );
+    }
+
+    private static int clamp(String value, int defaultValue, int max) {
+        if (value == null) return defaultValue;
+        return Math.max(1, Math.min(max, Integer.parseInt(value)));
+    }
+
+    /**
+     * Ids of the uploaded datasets, most recently used first.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/sessions")
+    public String sessions() {
+        StringBuilder json = new StringBuilder("[");
+        for (String id : dataStore.getSessionIds()) {
+            if (json.length() > 1) json.append(',');
+            json.append('"');
+            for (char c : id.toCharArray()) {
+                if (c == '"' || c == '\\') json.append('\\');
+                if (c >= ' ') json.append(c);
+            }
+            json.append('"');
         }
-        HeapSnapshot snap = snapshots.get(index);
-        return "{\"ext\":" + snap.calculateExternalFragmentation()
-             + ",\"int\":" + snap.calculateInternalFragmentation()
-             + ",\"free\":" + snap.calculateFree() + "}";
+        return json.append(']').toString();
     }
 }
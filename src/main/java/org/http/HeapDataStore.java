@@ -1,23 +1,320 @@
 package org.http;
 
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.operators.multi.processors.BroadcastProcessor;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
-import java.util.Collections;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.gc.log.parser.GcLogTailer;
+import org.gc.log.parser.SnapshotCache;
+import org.heapfrag.model.AnomalyDetector;
+import org.heapfrag.model.CycleIndex;
 import org.heapfrag.model.HeapSnapshot;
+import org.heapfrag.model.RegionHistory;
+import org.heapfrag.model.ReplayFrames;
+import org.heapfrag.model.SessionStore;
+import org.heapfrag.model.SnapshotArena;
+import org.heapfrag.model.SnapshotTimeline;
 
 /**
  * Application-scoped store for parsed heap snapshots.
+ * Snapshots are kept delta-encoded in a {@link SnapshotTimeline} per named
+ * session; requests without a session use {@link #DEFAULT_SESSION}. Least
+ * recently used sessions are spilled to disk once the memory budget is
+ * exceeded, see {@link SessionStore}.
+ *
+ * Every session has an {@link AnomalyDetector} and a {@link RegionHistory}.
+ * They are fed while the log is parsed or tailed, or replayed from the
+ * timeline on first use when the timeline came from the cache, and are kept
+ * until the session is replaced.
  */
 @ApplicationScoped
 public class HeapDataStore {
 
-    private volatile List<HeapSnapshot> snapshots = Collections.emptyList();
+    public static final String DEFAULT_SESSION = "default";
 
+    private static final SnapshotTimeline EMPTY = new SnapshotTimeline();
+
+    @ConfigProperty(name = "g1heapviz.store.memory-budget-mb", defaultValue = "512")
+    long memoryBudgetMb;
+
+    @ConfigProperty(name = "g1heapviz.store.spill-dir", defaultValue = "${java.io.tmpdir}/g1heapviz")
+    String spillDir;
+
+    @ConfigProperty(name = "g1heapviz.store.off-heap", defaultValue = "false")
+    boolean offHeap;
+
+    @ConfigProperty(name = "g1heapviz.sse.frame-cache-mb", defaultValue = "64")
+    long frameCacheMb;
+
+    @ConfigProperty(name = "g1heapviz.cache.enabled", defaultValue = "true")
+    boolean cacheEnabled;
+
+    @ConfigProperty(name = "g1heapviz.cache.dir", defaultValue = "${user.home}/.cache/g1heapviz")
+    String cacheDir;
+
+    @ConfigProperty(name = "g1heapviz.cache.max-mb", defaultValue = "2048")
+    long cacheMaxMb;
+
+    private SessionStore sessions;
+
+    private SnapshotCache cache;
+
+    // small, kept for all sessions including spilled ones
+    private final Map<String, AnomalyDetector> detectors = new ConcurrentHashMap<>();
+
+    // grow with the number of region type changes, kept like the detectors
+    private final Map<String, RegionHistory> histories = new ConcurrentHashMap<>();
+
+    // serialized stream frames of all sessions, shared by their clients
+    private ReplayFrames replayFrames;
+
+    // timeline fed by a live tail, if any, and the tail to stop when it is replaced
+    private volatile SnapshotTimeline liveTimeline;
+    private GcLogTailer liveTail;
+
+    private volatile BroadcastProcessor<Integer> appended = BroadcastProcessor.create();
+
+    @PostConstruct
+    void init() {
+        sessions = new SessionStore(memoryBudgetMb * 1024 * 1024, Paths.get(spillDir), offHeap);
+        replayFrames = new ReplayFrames(frameCacheMb * 1024 * 1024);
+        sessions.setDropListener((id, timeline) -> {
+            replayFrames.evict(timeline);
+            if (timeline == liveTimeline) stopLive(); // live timelines are never spilled
+        });
+        cache = cacheEnabled ? new SnapshotCache(Paths.get(cacheDir), offHeap, cacheMaxMb * 1024 * 1024) : null;
+    }
+
+    /**
+     * A new, empty timeline; with g1heapviz.store.off-heap its regions are
+     * kept in a {@link SnapshotArena} of its own.
+     */
+    public SnapshotTimeline newTimeline() {
+        return new SnapshotTimeline(
+            SnapshotTimeline.DEFAULT_KEYFRAME_INTERVAL,
+            offHeap ? new SnapshotArena() : null
+        );
+    }
+
+    /** Cache of parsed logs, or null if disabled. */
+    public SnapshotCache getCache() {
+        return cache;
+    }
+
+    private static String id(String session) {
+        return session == null || session.isBlank() ? DEFAULT_SESSION : session;
+    }
+
+    /**
+     * Returns the snapshots as a list view; get(n) rebuilds snapshot n.
+     */
     public List<HeapSnapshot> getSnapshots() {
-        return snapshots;
+        return getTimeline(DEFAULT_SESSION);
+    }
+
+    public SnapshotTimeline getTimeline() {
+        return getTimeline(DEFAULT_SESSION);
+    }
+
+    /**
+     * Returns the session's timeline, reloading it from disk if it was
+     * evicted, or an empty timeline for unknown sessions.
+     */
+    public SnapshotTimeline getTimeline(String session) {
+        SnapshotTimeline timeline = sessions.get(id(session));
+        return timeline != null ? timeline : EMPTY;
+    }
+
+    /**
+     * Returns the timeline positions of all snapshots of a GC cycle, in log
+     * order, using the timeline's cycle index.
+     */
+    public int[] getPositionsOfCycle(String session, int gcCycle) {
+        SnapshotTimeline t = getTimeline(session);
+        CycleIndex index = t.getCycleIndex();
+        IntStream.Builder positions = IntStream.builder();
+        for (int run = index.getFirstRun(gcCycle); run >= 0; run = index.getNextRun(run)) {
+            int end = index.getRunEnd(run);
+            for (int p = index.getRunStart(run); p < end; p++) {
+                positions.add(p);
+            }
+        }
+        return positions.build().toArray();
     }
 
     public void setSnapshots(List<HeapSnapshot> snapshots) {
-        this.snapshots = snapshots;
+        SnapshotTimeline t = newTimeline();
+        snapshots.forEach(t::append);
+        setTimeline(t);
+    }
+
+    public void setTimeline(SnapshotTimeline timeline) {
+        put(DEFAULT_SESSION, timeline);
+    }
+
+    /**
+     * Starts a new, empty timeline for the session, replacing the previous
+     * one. Readers see it immediately; it is not evicted before
+     * {@link #complete} is called.
+     */
+    public SnapshotTimeline open(String session) {
+        SnapshotTimeline timeline = newTimeline();
+        forget(id(session));
+        sessions.put(id(session), timeline);
+        return timeline;
+    }
+
+    /**
+     * Returns a consumer for parsed snapshots that appends them to a timeline
+     * returned by {@link #open} and feeds the session's anomaly detection and
+     * region history.
+     */
+    public Consumer<HeapSnapshot> appender(String session, SnapshotTimeline timeline) {
+        AnomalyDetector detector = new AnomalyDetector();
+        RegionHistory history = new RegionHistory();
+        detectors.put(id(session), detector);
+        histories.put(id(session), history);
+        return snapshot -> {
+            timeline.append(snapshot);
+            detector.accept(snapshot);
+            history.accept(snapshot);
+        };
+    }
+
+    /** Stores an already complete timeline, e.g. one read from the cache. */
+    public void put(String session, SnapshotTimeline timeline) {
+        forget(id(session));
+        sessions.put(id(session), timeline);
+        sessions.complete(id(session));
+    }
+
+    /**
+     * Anomalies of the session, see {@link AnomalyDetector}. Replays the
+     * timeline if the session was not parsed through {@link #appender}.
+     */
+    public AnomalyDetector getAnomalies(String session) {
+        return derived(detectors, id(session), AnomalyDetector::new);
+    }
+
+    /**
+     * Region type history of the session, see {@link RegionHistory}. Replays
+     * the timeline if the session was not parsed through {@link #appender}.
+     */
+    public RegionHistory getRegionHistory(String session) {
+        return derived(histories, id(session), RegionHistory::new);
+    }
+
+    private <T extends Consumer<HeapSnapshot>> T derived(Map<String, T> map, String id, Supplier<T> factory) {
+        T existing = map.get(id);
+        if (existing != null) return existing;
+        long generation = sessions.getGeneration(id);
+        SnapshotTimeline timeline = getTimeline(id);
+        if (timeline == EMPTY) return factory.get();
+        T replayed = factory.get();
+        for (HeapSnapshot snapshot : timeline) replayed.accept(snapshot);
+        // a parse started meanwhile has registered its own
+        T raced = map.putIfAbsent(id, replayed);
+        if (raced != null) return raced;
+        // the session was replaced while replaying, keep nothing of the old one
+        if (sessions.getGeneration(id) != generation) map.remove(id, replayed);
+        return replayed;
+    }
+
+    /**
+     * Stream frames of all sessions, shared by their clients; frames of a
+     * timeline are dropped when it leaves memory. See {@link ReplayFrames}.
+     */
+    public ReplayFrames getReplayFrames() {
+        return replayFrames;
+    }
+
+    /**
+     * Changes when the session's timeline is replaced, not when it is
+     * spilled and read back; see {@link SessionStore#getGeneration}.
+     */
+    public long getGeneration(String session) {
+        return sessions.getGeneration(id(session));
+    }
+
+    private void forget(String id) {
+        detectors.remove(id);
+        histories.remove(id);
+    }
+
+    /** Marks a timeline started with {@link #open} as fully parsed. */
+    public void complete(String session) {
+        sessions.complete(id(session));
+    }
+
+    /** Session ids, most recently used first. */
+    public List<String> getSessionIds() {
+        return sessions.getIds();
+    }
+
+    /**
+     * Makes the timeline the default session and marks it as live, i.e.
+     * still growing through {@link #append} by the tail. Live timelines stay
+     * resident. When the default session is replaced, e.g. by an upload, the
+     * tail is closed and {@link #appended()} streams complete.
+     */
+    public synchronized void setLiveTimeline(SnapshotTimeline timeline, GcLogTailer tail) {
+        sessions.put(DEFAULT_SESSION, timeline); // stops a previous tail
+        detectors.put(DEFAULT_SESSION, new AnomalyDetector());
+        histories.put(DEFAULT_SESSION, new RegionHistory());
+        liveTail = tail;
+        liveTimeline = timeline;
+    }
+
+    private synchronized void stopLive() {
+        liveTimeline = null;
+        if (liveTail != null) liveTail.close();
+        liveTail = null;
+        BroadcastProcessor<Integer> ended = appended;
+        appended = BroadcastProcessor.create();
+        ended.onComplete();
+        System.out.println("g1heapviz: Stopped following the GC log, its session was replaced");
+    }
+
+    public boolean isLive(String session) {
+        SnapshotTimeline live = liveTimeline;
+        return live != null && sessions.get(id(session)) == live;
+    }
+
+    /**
+     * Appends to the given timeline and, if it is the current default one,
+     * announces the new position to {@link #appended()} subscribers.
+     */
+    public void append(SnapshotTimeline target, HeapSnapshot snapshot) {
+        target.append(snapshot);
+        if (target == sessions.get(DEFAULT_SESSION)) {
+            if (target == liveTimeline) {
+                AnomalyDetector detector = detectors.get(DEFAULT_SESSION);
+                if (detector != null) detector.accept(snapshot);
+                RegionHistory history = histories.get(DEFAULT_SESSION);
+                if (history != null) history.accept(snapshot);
+            }
+            appended.onNext(target.size() - 1);
+        }
+    }
+
+    /**
+     * Positions of snapshots appended to the live timeline from now on;
+     * completes when the live timeline is replaced.
+     */
+    public Multi<Integer> appended() {
+        return appended;
+    }
+
+    /** The timeline of the live tail, or null. */
+    public SnapshotTimeline getLiveTimeline() {
+        return liveTimeline;
     }
 }
@@ -5,13 +5,18 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.core.MediaType;
-import org.heapfrag.model.HeapSnapshot;
+import org.heapfrag.model.CycleIndex;
+import org.heapfrag.model.ReplayFrames;
+import org.heapfrag.model.SnapshotTimeline;
+import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 
 import java.time.Duration;
-import java.util.List;
+import java.util.Arrays;
 
 import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 
 @ApplicationScoped
 @Path("/sse")
@@ -20,34 +25,83 @@ public class SSEResource {
     @Inject
     HeapDataStore dataStore;
 
-    String postprocess(List<HeapSnapshot> snaps) {
-        StringBuffer result = new StringBuffer();
-        result.append("[");
-        for (HeapSnapshot snapshot : snaps)
-            result.append(snapshot.regionsToJson().substring(1, snapshot.regionsToJson().length() - 1)).append(",");
-        if (result.length() > 1) {
-            result.setCharAt(result.length() - 1, ']');
-        } else {
-            result.append("]");
-        }
-        return result.toString();
-    }
+    private static final Duration TICK = Duration.ofMillis(320);
 
+    /**
+     * Replays the GC cycles in [from, to] in log order, one frame per cycle
+     * present in the log (looked up in the timeline's cycle index, so cycles
+     * without snapshots are not sent as empty frames), and completes after
+     * the last one.
+     *
+     * Frames are sent on demand: the next frame is built, or taken from the
+     * shared {@link ReplayFrames}, when the client has consumed the previous
+     * one, and no sooner than 320 ms / speed after it. speed=0 sends them as
+     * fast as the client reads. A slow client gets every frame, late; to seek,
+     * open a new stream with another from. The timeline is fetched again for
+     * every frame, so a watched session stays recently used and one spilled
+     * meanwhile is read back; if the session is replaced or cannot be read
+     * back, the stream fails.
+     *
+     * While a log is being tailed, every new snapshot is pushed as soon as it
+     * has been parsed instead; the tail does not wait for slow clients, so up
+     * to 100 frames are buffered per client.
+     */
     @GET
     @Path("/events")
     @RestStreamElementType(MediaType.APPLICATION_JSON)
-    public Multi<String> stream() {
-        return Multi.createFrom().ticks().every(Duration.ofMillis(320))
-                .onOverflow().buffer(100)
-                .map(tick -> {
-                    try {
-                        List<HeapSnapshot> snapshots = dataStore.getSnapshots();
-                        return postprocess(snapshots.stream()
-                                .filter(rr -> rr.getGcCycle() == tick.intValue()).toList());
-                    } catch (Exception e) {
-                        System.err.println("Error streaming: " + e.getMessage());
-                        return "[]";
-                    }
-                });
+    public Multi<String> stream(
+        @RestQuery("session") String session,
+        @RestQuery("from") String from,
+        @RestQuery("to") String to,
+        @RestQuery("speed") String speed
+    ) {
+        if (dataStore.isLive(session)) {
+            ReplayFrames frames = dataStore.getReplayFrames();
+            SnapshotTimeline live = dataStore.getTimeline(session);
+            return dataStore.appended()
+                    .onOverflow().buffer(100)
+                    .map(position -> frames.get(live, position, position + 1))
+                    .onFailure().invoke(e -> System.err.println("Error streaming: " + e.getMessage()));
+        }
+        long generation = dataStore.getGeneration(session);
+        CycleIndex index = dataStore.getTimeline(session).getCycleIndex();
+        int[] runs = runs(index,
+            from == null ? Integer.MIN_VALUE : Integer.parseInt(from),
+            to == null ? Integer.MAX_VALUE : Integer.parseInt(to));
+        Duration interval = interval(speed);
+        return Multi.createFrom().range(0, runs.length)
+                .onItem().transformToUniAndConcatenate(k -> {
+                    int run = runs[k];
+                    Uni<String> frame = Uni.createFrom()
+                            .item(() -> frame(session, generation, index.getRunStart(run), index.getRunEnd(run)))
+                            .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                    return k == 0 || interval.isZero() ? frame : frame.onItem().delayIt().by(interval);
+                })
+                .onFailure().invoke(e -> System.err.println("Error streaming: " + e.getMessage()));
+    }
+
+    private String frame(String session, long generation, int from, int to) {
+        SnapshotTimeline timeline = dataStore.getTimeline(session);
+        if (dataStore.getGeneration(session) != generation) {
+            throw new IllegalStateException("Session was replaced during the replay");
+        }
+        return dataStore.getReplayFrames().get(timeline, from, to);
+    }
+
+    /** Cycle index runs whose GC cycle lies in [from, to], in log order. */
+    private static int[] runs(CycleIndex index, int from, int to) {
+        int[] runs = new int[index.getRunCount()];
+        int count = 0;
+        for (int run = 0; run < index.getRunCount(); run++) {
+            int cycle = index.getRunCycle(run);
+            if (cycle >= from && cycle <= to) runs[count++] = run;
+        }
+        return Arrays.copyOf(runs, count);
+    }
+
+    private static Duration interval(String speed) {
+        double factor = speed == null ? 1 : Double.parseDouble(speed);
+        if (!(factor > 0)) return Duration.ZERO;
+        return Duration.ofNanos((long) (TICK.toNanos() / factor));
     }
 }
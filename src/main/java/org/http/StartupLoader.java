@@ -1,18 +1,29 @@
 package org.http;
 
+import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
-import org.gc.log.parser.GcLogParser;
-import org.heapfrag.model.HeapSnapshot;
+import org.gc.log.parser.GcLogTailer;
+import org.gc.log.parser.ParallelGcLogParser;
+import org.gc.log.parser.SnapshotCache;
+import org.heapfrag.model.SnapshotTimeline;
 
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Loads a GC log file on startup if a file path is provided as a CLI argument.
- * Usage: java -jar quarkus-run.jar /path/to/gc.log
+ * Usage: java -jar quarkus-run.jar [--follow] /path/to/gc.log
+ *
+ * Parsed logs are kept in the {@link SnapshotCache}; an unchanged log opens
+ * from there on the next start without being parsed.
+ *
+ * With --follow (-f) the log is tailed: it is read from the start and new
+ * snapshots are appended while the JVM keeps writing, across log rotation,
+ * until the default session is replaced.
  */
 @ApplicationScoped
 public class StartupLoader {
@@ -24,24 +35,77 @@ public class StartupLoader {
     @io.quarkus.runtime.annotations.CommandLineArguments
     String[] args;
 
+    private GcLogTailer tailer;
+
     void onStart(@Observes StartupEvent event) {
-        if (args == null || args.length == 0) {
+        boolean follow = false;
+        String filePath = null;
+        for (String arg : args == null ? new String[0] : args) {
+            if (arg.equals("--follow") || arg.equals("-f")) follow = true;
+            else filePath = arg;
+        }
+        if (filePath == null) {
             System.out.println("g1heapviz: No GC log file specified. Use the web UI to upload a file.");
-            System.out.println("g1heapviz: Usage: java -jar quarkus-run.jar <gc-log-file>");
+            System.out.println("g1heapviz: Usage: java -jar quarkus-run.jar [--follow] <gc-log-file>");
+            return;
+        }
+
+        if (follow) {
+            follow(filePath);
             return;
         }
 
-        String filePath = args[0];
         File file = new File(filePath);
         if (!file.exists()) {
             System.err.println("g1heapviz: File not found: " + filePath);
             return;
         }
 
-        System.out.println("g1heapviz: Loading GC log: " + filePath);
-        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(filePath);
-        dataStore.setSnapshots(snapshots);
-        System.out.println("g1heapviz: Loaded " + snapshots.size() + " heap snapshots");
+        SnapshotCache cache = dataStore.getCache();
+        SnapshotTimeline timeline;
+        try {
+            String key = SnapshotCache.keyOf(file.toPath());
+            timeline = cache != null ? cache.load(key) : null;
+            if (timeline != null) {
+                System.out.println("g1heapviz: Loaded GC log from cache: " + filePath);
+                dataStore.setTimeline(timeline);
+            } else {
+                System.out.println("g1heapviz: Loading GC log: " + filePath);
+                String session = HeapDataStore.DEFAULT_SESSION;
+                timeline = dataStore.open(session);
+                try {
+                    ParallelGcLogParser.parse(file.toPath(), dataStore.appender(session, timeline));
+                } finally {
+                    dataStore.complete(session);
+                }
+                if (cache != null) cache.store(key, timeline);
+            }
+        } catch (IOException e) {
+            System.err.println("g1heapviz: Failed to read " + filePath + ": " + e.getMessage());
+            return;
+        }
+        System.out.println("g1heapviz: Loaded " + timeline.size() + " heap snapshots");
+        System.out.println("g1heapviz: Open http://localhost:8080/index.html to visualize");
+    }
+
+    private void follow(String filePath) {
+        SnapshotTimeline timeline = dataStore.newTimeline();
+        tailer = new GcLogTailer(Paths.get(filePath), snapshot -> dataStore.append(timeline, snapshot));
+        dataStore.setLiveTimeline(timeline, tailer);
+        Thread.ofPlatform().daemon().name("g1heapviz-tail").start(() -> {
+            try {
+                tailer.run();
+            } catch (IOException e) {
+                System.err.println("g1heapviz: Failed to follow " + filePath + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        System.out.println("g1heapviz: Following GC log: " + filePath);
         System.out.println("g1heapviz: Open http://localhost:8080/index.html to visualize");
     }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (tailer != null) tailer.close();
+    }
 }
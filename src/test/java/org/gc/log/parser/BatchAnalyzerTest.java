@@ -0,0 +1,130 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchAnalyzerTest {
+
+    private static final String DATA_DIR = "data/";
+
+    private static List<String> run(String... args) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchAnalyzer.run(BatchAnalyzer.Options.parse(args), new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        return bytes.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    private static String row(List<String> lines, String fileName) {
+        return lines.stream().filter(l -> l.contains(fileName)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void analyzesDirectoryInParallel() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Path sample = Path.of(DATA_DIR + "sample_gc.log");
+        Files.copy(sample, dir.resolve("a.log"));
+        try (OutputStream gz = new GZIPOutputStream(Files.newOutputStream(dir.resolve("b.log.gz")))) {
+            Files.copy(sample, gz);
+        }
+        Files.writeString(dir.resolve("notes.txt"), "not a log");
+        Files.createDirectory(dir.resolve("sub"));
+        Files.copy(sample, dir.resolve("sub").resolve("c.log"));
+
+        List<String> lines = run("--threads", "2", dir.toString());
+
+        assertEquals(LogSummary.CSV_HEADER, lines.get(0));
+        assertEquals(4, lines.size(), "header and one row per log");
+        // compressed and plain copies only differ in name and size
+        String plain = row(lines, "a.log");
+        String gzip = row(lines, "b.log.gz");
+        assertEquals(plain.substring(plain.indexOf(",", plain.indexOf(",") + 1)),
+                gzip.substring(gzip.indexOf(",", gzip.indexOf(",") + 1)));
+    }
+
+    @Test
+    void summaryMatchesSnapshotMetrics() throws IOException {
+        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        String[] columns = row(run(DATA_DIR + "sample_gc.log"), "sample_gc.log").split(",", -1);
+        List<String> header = Arrays.asList(LogSummary.CSV_HEADER.split(","));
+
+        assertEquals(String.valueOf(snapshots.size()), columns[header.indexOf("snapshots")]);
+        int extMax = snapshots.stream().mapToInt(HeapSnapshot::calculateExternalFragmentation).max().orElse(0);
+        assertEquals(String.valueOf(extMax), columns[header.indexOf("ext_max")]);
+        long wastedMax = snapshots.stream().mapToLong(HeapSnapshot::getWastedBytes).max().orElse(0);
+        assertEquals(String.valueOf(wastedMax), columns[header.indexOf("wasted_max")]);
+        assertEquals("", columns[header.indexOf("error")]);
+    }
+
+    @Test
+    void filtersAndErrors() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Files.copy(Path.of(DATA_DIR + "sample_gc.log"), dir.resolve("a.log"));
+        Files.writeString(dir.resolve("empty.log"), "[0.001s][info][gc] Using G1\n");
+
+        assertEquals(2, run("--min-snapshots", "1", dir.toString()).size());
+        assertEquals(1, run("--only-over", "--ext-threshold", "101", "--humongous-threshold", "100000", dir.toString()).size());
+
+        String missing = row(run(dir.resolve("missing.log").toString()), "missing.log");
+        assertTrue(missing.endsWith("NoSuchFileException: " + dir.resolve("missing.log")), missing);
+    }
+
+    @Test
+    void picksUpRotatedLogsAndReportsBadFiles() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Path sample = Path.of(DATA_DIR + "sample_gc.log");
+        Files.copy(sample, dir.resolve("gc.log"));
+        Files.copy(sample, dir.resolve("gc.log.0"));
+        Files.copy(sample, dir.resolve("gc.log.1"));
+        // zstd magic followed by garbage: the decoder fails with a runtime exception
+        Files.write(dir.resolve("broken.zst"), new byte[] {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 1, 2, 3, 4, 5, 6, 7, 8});
+
+        List<String> lines = run("--threads", "2", dir.toString());
+
+        assertEquals(5, lines.size(), "header and one row per file");
+        row(lines, "gc.log.0");
+        row(lines, "gc.log.1");
+        String[] broken = row(lines, "broken.zst").split(",", -1);
+        List<String> header = Arrays.asList(LogSummary.CSV_HEADER.split(","));
+        assertFalse(broken[header.indexOf("error")].isEmpty(), "Error should be recorded in the row");
+    }
+
+    @Test
+    void writesAnomalies() throws IOException {
+        Path log = Files.createTempFile("batch", ".log");
+        Path anomalies = Files.createTempFile("anomalies", ".csv");
+        try (OutputStream out = Files.newOutputStream(log)) {
+            new GcLogGenerator(512, 30, 1).write(out);
+        }
+
+        String[] columns = row(run("--anomalies", anomalies.toString(), log.toString()), log.toString()).split(",", -1);
+        List<String> header = Arrays.asList(LogSummary.CSV_HEADER.split(","));
+        int jumps = Integer.parseInt(columns[header.indexOf("ext_jumps")]);
+        int blocked = Integer.parseInt(columns[header.indexOf("humongous_blocked")]);
+        int fulls = Integer.parseInt(columns[header.indexOf("full_after_buildup")]);
+
+        List<String> rows = Files.readAllLines(anomalies);
+        assertEquals(LogSummary.ANOMALY_CSV_HEADER, rows.get(0));
+        assertEquals(jumps + blocked + fulls, rows.size() - 1);
+        assertTrue(rows.size() > 1, "Generated log should drift into anomalies");
+        assertTrue(rows.get(1).startsWith(log + ","), rows.get(1));
+    }
+
+    @Test
+    void rejectsUnknownOptions() {
+        assertThrows(IllegalArgumentException.class, () -> BatchAnalyzer.Options.parse(new String[] {"--bogus"}));
+        assertThrows(IllegalArgumentException.class, () -> BatchAnalyzer.Options.parse(new String[] {"--threads"}));
+    }
+}
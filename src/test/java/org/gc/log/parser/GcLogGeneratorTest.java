@@ -0,0 +1,143 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcLogGeneratorTest {
+
+    private static byte[] generate(GcLogGenerator.Options options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = new GcLogGenerator(options).write(out);
+        assertEquals(out.size(), written);
+        return out.toByteArray();
+    }
+
+    private static List<HeapSnapshot> parse(byte[] log) throws IOException {
+        List<HeapSnapshot> snapshots = new ArrayList<>();
+        StreamingGcLogParser.parse(new ByteArrayInputStream(log), snapshots::add);
+        return snapshots;
+    }
+
+    private static int count(HeapSnapshot s, int type) {
+        int n = 0;
+        for (int i = 0; i < s.getRegionCount(); i++) {
+            if (s.getRegionType(i) == type) n++;
+        }
+        return n;
+    }
+
+    @Test
+    void generatedLogParsesWithBothParsers() throws IOException {
+        byte[] log = generate(GcLogGenerator.Options.parse(new String[] {"--regions", "300", "--cycles", "6"}));
+
+        List<HeapSnapshot> streamed = parse(log);
+        List<HeapSnapshot> scanned = GcLogParser.parseLog(
+            new Scanner(new ByteArrayInputStream(log), StandardCharsets.US_ASCII));
+
+        assertEquals(12, streamed.size(), "Before and after section per cycle");
+        StreamingGcLogParserTest.assertSameSnapshots(scanned, streamed);
+        for (HeapSnapshot s : streamed) {
+            assertEquals(300, s.getRegionCount());
+            assertTrue(s.hasDetail(), "Region detail should be decoded");
+            assertEquals(4 << 20, s.getRegionSize());
+        }
+        assertEquals(0, streamed.get(0).getGcCycle());
+        assertEquals(5, streamed.get(11).getGcCycle());
+    }
+
+    @Test
+    void sameSeedGivesSameLog() throws IOException {
+        String[] args = {"--regions", "128", "--cycles", "4", "--seed", "7"};
+        assertArrayEquals(generate(GcLogGenerator.Options.parse(args)), generate(GcLogGenerator.Options.parse(args)));
+    }
+
+    @Test
+    void mixFollowsOptions() throws IOException {
+        List<HeapSnapshot> none = parse(generate(GcLogGenerator.Options.parse(
+            new String[] {"--regions", "512", "--cycles", "10", "--humongous", "0"})));
+        List<HeapSnapshot> humongous = parse(generate(GcLogGenerator.Options.parse(
+            new String[] {"--regions", "512", "--cycles", "10", "--humongous", "0.5"})));
+
+        for (HeapSnapshot s : none) {
+            assertEquals(0, count(s, 120) + count(s, 150), "No humongous regions expected");
+        }
+        HeapSnapshot before = humongous.get(humongous.size() - 2);
+        assertTrue(count(before, 120) > 0, "Humongous objects expected");
+        assertTrue(count(before, 30) > 0, "Eden expected before the pause");
+        assertEquals(0, count(humongous.get(humongous.size() - 1), 30), "Eden is evacuated by the pause");
+    }
+
+    @Test
+    void driftFragmentsOldGenUntilFullGc() throws IOException {
+        List<HeapSnapshot> snapshots = parse(generate(GcLogGenerator.Options.parse(new String[] {
+            "--regions", "1024", "--cycles", "10", "--humongous", "0", "--drift", "0.05", "--full-every", "10"})));
+
+        // after the last young pause
+        HeapSnapshot beforeFull = snapshots.get(snapshots.size() - 3);
+        assertFalse(beforeFull.isFull());
+        HeapSnapshot afterFull = snapshots.get(snapshots.size() - 1);
+        assertTrue(afterFull.isFull());
+        assertTrue(beforeFull.calculateExternalFragmentation() > afterFull.calculateExternalFragmentation(),
+            "Full GC should compact the drifted old generation");
+
+        // after compaction the old regions form one run at the bottom of the heap
+        int old = count(afterFull, 90);
+        assertTrue(old > 0);
+        for (int i = 0; i < old; i++) {
+            assertEquals(90, afterFull.getRegionType(i));
+        }
+    }
+
+    @Test
+    void writesParsableFileForParallelParser() throws IOException {
+        Path file = Files.createTempFile("generated", ".log");
+        try {
+            Files.write(file, generate(GcLogGenerator.Options.parse(
+                new String[] {"--regions", "2048", "--cycles", "40"})));
+            List<HeapSnapshot> parallel = ParallelGcLogParser.parse(file);
+            List<HeapSnapshot> streamed = new ArrayList<>();
+            StreamingGcLogParser.parse(file, streamed::add);
+            assertEquals(80, parallel.size());
+            StreamingGcLogParserTest.assertSameSnapshots(streamed, parallel);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void sectionsCrossingTheBufferBoundaryAreWritten() throws IOException {
+        // hundreds of MB per run, so section headers land at many buffer
+        // offsets; e.g. 3000 regions with seed 3 put one in the last bytes
+        for (String regions : new String[] {"1237", "3000", "4099"}) {
+            for (int seed = 1; seed <= 8; seed++) {
+                String[] args = {"--regions", regions, "--cycles", "200", "--seed", String.valueOf(seed)};
+                long written = new GcLogGenerator(GcLogGenerator.Options.parse(args))
+                    .write(OutputStream.nullOutputStream());
+                assertTrue(written > 64 << 20, "Expected hundreds of MB, got " + written);
+            }
+        }
+    }
+
+    @Test
+    void rejectsBadOptions() {
+        assertThrows(IllegalArgumentException.class,
+            () -> GcLogGenerator.Options.parse(new String[] {"--regions"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> GcLogGenerator.Options.parse(new String[] {"--region-size", "3"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> GcLogGenerator.Options.parse(new String[] {"--bogus", "1"}));
+    }
+}
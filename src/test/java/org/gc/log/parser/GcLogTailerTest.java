@@ -0,0 +1,109 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcLogTailerTest {
+
+    private static final String DATA_DIR = "data/";
+
+    private static String cycle(int gc) {
+        StringBuilder log = new StringBuilder();
+        log.append("[1.0s][info][gc,start    ] GC(").append(gc).append(") Pause Young (Normal) (G1 Evacuation Pause)\n");
+        log.append("[1.0s][trace][gc,heap,region] GC(").append(gc).append(") Heap Regions: E=young(eden), F=free\n");
+        for (int r = 0; r < 16; r++) {
+            log.append("[1.0s][trace][gc,heap,region] GC(").append(gc).append(") |")
+               .append(String.format("%4d", r))
+               .append("|0x0, 0x0, 0x1|  0%|").append(r < gc % 16 ? " O" : " F")
+               .append("|  |TAMS 0x0| PB 0x0| Untracked\n");
+        }
+        log.append("[1.0s][info][gc          ] GC(").append(gc).append(") Pause Young (Normal) 10M->5M(64M) 1.0ms\n");
+        return log.toString();
+    }
+
+    private static void waitFor(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, list.size());
+    }
+
+    @Test
+    void followsAppendsAndRotation() throws Exception {
+        Path dir = Files.createTempDirectory("tail");
+        Path log = dir.resolve("gc.log");
+        Files.writeString(log, cycle(0));
+
+        List<HeapSnapshot> snapshots = new CopyOnWriteArrayList<>();
+        GcLogTailer tailer = new GcLogTailer(log, snapshots::add, Duration.ofMillis(10));
+        Thread thread = new Thread(() -> {
+            try {
+                tailer.run();
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            waitFor(snapshots, 1);
+
+            Files.writeString(log, cycle(1), StandardOpenOption.APPEND);
+            waitFor(snapshots, 2);
+
+            // -Xlog rotation: current file becomes an archive, a new one starts
+            Files.writeString(log, cycle(2), StandardOpenOption.APPEND);
+            Files.move(log, dir.resolve("gc.log.0"), StandardCopyOption.ATOMIC_MOVE);
+            Files.writeString(log, cycle(3));
+            waitFor(snapshots, 4);
+
+            for (int gc = 0; gc < 4; gc++) {
+                assertEquals(gc, snapshots.get(gc).getGcCycle());
+                assertEquals("Pause Young (Normal) (G1 Evacuation Pause)", snapshots.get(gc).getGcType());
+            }
+        } finally {
+            tailer.close();
+            thread.join();
+        }
+    }
+
+    @Test
+    void readsExistingContentLikeTheFileParser() throws Exception {
+        File file = new File(DATA_DIR + "sample_gc.log");
+        // the last section of a live log is only complete with the next line
+        Path log = Files.createTempFile("tail", ".log");
+        Files.write(log, Files.readAllBytes(file.toPath()));
+        Files.writeString(log, "[9.9s][info][gc] done\n", StandardOpenOption.APPEND);
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(log.toFile());
+
+        List<HeapSnapshot> snapshots = new CopyOnWriteArrayList<>();
+        GcLogTailer tailer = new GcLogTailer(log, snapshots::add, Duration.ofMillis(10));
+        Thread thread = new Thread(() -> {
+            try {
+                tailer.run();
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            waitFor(snapshots, expected.size());
+            StreamingGcLogParserTest.assertSameSnapshots(expected, snapshots);
+        } finally {
+            tailer.close();
+            thread.join();
+        }
+    }
+}
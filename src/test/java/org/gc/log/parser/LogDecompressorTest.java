@@ -0,0 +1,52 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogDecompressorTest {
+
+    private static final String DATA_DIR = "data/";
+
+    @Test
+    void detectsFormatsByMagicBytes() throws IOException {
+        byte[] zstd = {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0};
+        byte[] gzip = {0x1F, (byte) 0x8B, 8, 0};
+        byte[] plain = "[0.1s][info][gc] GC(0)".getBytes();
+
+        assertEquals(LogDecompressor.Format.ZSTD, LogDecompressor.detect(new BufferedInputStream(new ByteArrayInputStream(zstd))));
+        assertEquals(LogDecompressor.Format.GZIP, LogDecompressor.detect(new BufferedInputStream(new ByteArrayInputStream(gzip))));
+        assertEquals(LogDecompressor.Format.PLAIN, LogDecompressor.detect(new BufferedInputStream(new ByteArrayInputStream(plain))));
+        assertEquals(LogDecompressor.Format.PLAIN, LogDecompressor.detect(new BufferedInputStream(new ByteArrayInputStream(new byte[0]))));
+    }
+
+    @Test
+    void gzipLogParsesLikePlainLog() throws IOException {
+        File file = new File(DATA_DIR + "sample_gc.log");
+        byte[] plain = Files.readAllBytes(file.toPath());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(plain);
+        }
+
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(file);
+        List<HeapSnapshot> actual = new ArrayList<>();
+        try (InputStream in = LogDecompressor.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+            StreamingGcLogParser.parse(in, actual::add);
+        }
+
+        StreamingGcLogParserTest.assertSameSnapshots(expected, actual);
+    }
+}
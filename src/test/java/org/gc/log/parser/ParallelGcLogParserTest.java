@@ -0,0 +1,93 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelGcLogParserTest {
+
+    private static final String DATA_DIR = "data/";
+
+    /**
+     * Builds a log where every snapshot is surrounded by gc,start and summary
+     * lines, the way -Xlog:gc*,gc+heap+region=trace writes it.
+     */
+    private static Path writeMultiCycleLog(int cycles) throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int gc = 0; gc < cycles; gc++) {
+            boolean full = gc % 5 == 4;
+            String type = full ? "Pause Full (G1 Compaction Pause)" : "Pause Young (Normal) (G1 Evacuation Pause)";
+            for (int phase = 0; phase < 2; phase++) {
+                log.append("[1.0s][info][gc,start    ] GC(").append(gc).append(") ").append(type).append('\n');
+                log.append("[1.0s][trace][gc,heap,region] GC(").append(gc)
+                   .append(") Heap Regions: E=young(eden), S=young(survivor), O=old, F=free\n");
+                for (int r = 0; r < 64; r++) {
+                    String t = (r + gc + phase) % 3 == 0 ? " F" : (r % 7 == 0 ? "HS" : " O");
+                    log.append("[1.0s][trace][gc,heap,region] GC(").append(gc).append(") |")
+                       .append(String.format("%4d", r))
+                       .append("|0x0000000680000000, 0x0000000680000000, 0x0000000680400000|  0%|")
+                       .append(t).append("|  |TAMS 0x0000000680000000| PB 0x0000000680000000| Untracked\n");
+                }
+                log.append("[1.0s][info][gc,heap     ] GC(").append(gc).append(") Eden regions: 1->0(10)\n");
+                log.append("[1.0s][info][gc          ] GC(").append(gc).append(") ").append(type).append(" 10M->5M(64M) 1.0ms\n");
+            }
+        }
+        Path file = Files.createTempFile("parallel-gc", ".log");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, log);
+        return file;
+    }
+
+    @Test
+    void matchesSequentialParserAcrossManyChunks() throws IOException {
+        Path file = writeMultiCycleLog(200);
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(file.toFile());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<HeapSnapshot> actual = new ArrayList<>();
+            ParallelGcLogParser.parse(file, pool, 4096, actual::add);
+            assertEquals(400, expected.size());
+            StreamingGcLogParserTest.assertSameSnapshots(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void matchesSequentialParserOnSampleLog() throws IOException {
+        File file = new File(DATA_DIR + "sample_gc.log");
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(file);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<HeapSnapshot> actual = new ArrayList<>();
+            ParallelGcLogParser.parse(file.toPath(), pool, 1024, actual::add);
+            StreamingGcLogParserTest.assertSameSnapshots(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void crashLogKeepsTrailingSection() throws IOException {
+        File file = new File(DATA_DIR + "hs_err_pid4018.log");
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(file);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<HeapSnapshot> actual = new ArrayList<>();
+            ParallelGcLogParser.parse(file.toPath(), pool, 1024, actual::add);
+            assertEquals(1, actual.size());
+            StreamingGcLogParserTest.assertSameSnapshots(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.heapfrag.model.SnapshotTimeline;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotCacheTest {
+
+    private static final String DATA_DIR = "data/";
+
+    @Test
+    void storedTimelineLoadsWithoutParsing() throws IOException {
+        Path log = Path.of(DATA_DIR + "sample_gc.log");
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        ParallelGcLogParser.parse(log, timeline::append);
+
+        SnapshotCache cache = new SnapshotCache(Files.createTempDirectory("cache"));
+        String key = SnapshotCache.keyOf(log);
+        assertNull(cache.load(key));
+        cache.store(key, timeline);
+
+        SnapshotTimeline loaded = cache.load(key);
+        assertNotNull(loaded);
+        StreamingGcLogParserTest.assertSameSnapshots(expected, loaded);
+    }
+
+    @Test
+    void modifiedLogMissesTheCache() throws IOException {
+        Path log = Files.createTempFile("gc", ".log");
+        Files.copy(Path.of(DATA_DIR + "sample_gc.log"), log, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        SnapshotCache cache = new SnapshotCache(Files.createTempDirectory("cache"));
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        ParallelGcLogParser.parse(log, timeline::append);
+        cache.store(SnapshotCache.keyOf(log), timeline);
+        assertNotNull(cache.load(SnapshotCache.keyOf(log)));
+
+        Files.setLastModifiedTime(log, FileTime.fromMillis(Files.getLastModifiedTime(log).toMillis() + 1000));
+        assertNull(cache.load(SnapshotCache.keyOf(log)));
+    }
+
+    @Test
+    void contentKeyDependsOnContent() throws IOException {
+        Path a = Files.createTempFile("gc", ".log");
+        Path b = Files.createTempFile("gc", ".log");
+        Files.writeString(a, "[0.001s][info][gc] Using G1\n");
+        Files.writeString(b, "[0.001s][info][gc] Using G2\n");
+
+        assertEquals(SnapshotCache.contentKeyOf(a), SnapshotCache.contentKeyOf(a));
+        assertNotEquals(SnapshotCache.contentKeyOf(a), SnapshotCache.contentKeyOf(b));
+        assertEquals(SnapshotCache.contentKeyOf(a),
+            SnapshotCache.contentKeyOf(SnapshotCache.sha256().digest(Files.readAllBytes(a))));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreDeletedBeyondTheLimit() throws IOException {
+        Path log = Path.of(DATA_DIR + "sample_gc.log");
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        ParallelGcLogParser.parse(log, timeline::append);
+        Path dir = Files.createTempDirectory("cache");
+        new SnapshotCache(dir).store("probe", timeline);
+        long entry = Files.size(new SnapshotCache(dir).sidecar("probe"));
+        Files.delete(new SnapshotCache(dir).sidecar("probe"));
+
+        // room for two entries
+        SnapshotCache cache = new SnapshotCache(dir, false, 2 * entry + entry / 2);
+        cache.store("a", timeline);
+        cache.store("b", timeline);
+        Files.setLastModifiedTime(cache.sidecar("a"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(cache.sidecar("b"), FileTime.fromMillis(2000));
+        assertNotNull(cache.load("a")); // now more recently used than b
+        cache.store("c", timeline);
+
+        assertNotNull(cache.load("a"));
+        assertNull(cache.load("b"));
+        assertNotNull(cache.load("c"));
+    }
+
+    @Test
+    void truncatedSidecarIsAMissAndDeleted() throws IOException {
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        ParallelGcLogParser.parse(Path.of(DATA_DIR + "sample_gc.log"), timeline::append);
+        SnapshotCache cache = new SnapshotCache(Files.createTempDirectory("cache"));
+        cache.store("key", timeline);
+        Path file = cache.sidecar("key");
+        byte[] data = Files.readAllBytes(file);
+
+        for (int length : new int[] {data.length / 3, data.length / 2, data.length - 1}) {
+            Files.write(file, Arrays.copyOf(data, length));
+            assertNull(cache.load("key"));
+            assertFalse(Files.exists(file));
+        }
+    }
+
+    @Test
+    void corruptSidecarIsIgnored() throws IOException {
+        SnapshotCache cache = new SnapshotCache(Files.createTempDirectory("cache"));
+        Files.writeString(cache.sidecar("key"), "garbage");
+        assertNull(cache.load("key"));
+    }
+}
@@ -0,0 +1,232 @@
+package org.gc.log.parser;
+
+import org.heapfrag.model.HeapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingGcLogParserTest {
+
+    private static final String DATA_DIR = "data/";
+
+    static void assertSameSnapshots(List<HeapSnapshot> expected, List<HeapSnapshot> actual) {
+        assertEquals(expected.size(), actual.size(), "Snapshot count should match");
+        for (int i = 0; i < expected.size(); i++) {
+            HeapSnapshot e = expected.get(i);
+            HeapSnapshot a = actual.get(i);
+            assertEquals(e.getGcCycle(), a.getGcCycle());
+            assertEquals(e.isFull(), a.isFull());
+            assertEquals(e.getGcType(), a.getGcType());
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertEquals(e.getRegions().size(), a.getRegions().size());
+            assertEquals(e.regionsToJson(), a.regionsToJson());
+            for (int r = 0; r < e.getRegionCount(); r++) {
+                assertEquals(e.getUsagePercent(r), a.getUsagePercent(r));
+            }
+        }
+    }
+
+    @Test
+    void matchesScannerParserOnSampleLog() throws IOException {
+        File file = new File(DATA_DIR + "sample_gc.log");
+        List<HeapSnapshot> expected;
+        try (Scanner scanner = new Scanner(file)) {
+            expected = GcLogParser.parseLog(scanner);
+        }
+        List<HeapSnapshot> actual = new ArrayList<>();
+        int emitted = StreamingGcLogParser.parse(file.toPath(), actual::add);
+
+        assertEquals(actual.size(), emitted);
+        assertSameSnapshots(expected, actual);
+    }
+
+    @Test
+    void matchesScannerParserOnCrashLog() throws IOException {
+        File file = new File(DATA_DIR + "hs_err_pid4018.log");
+        List<HeapSnapshot> expected;
+        try (Scanner scanner = new Scanner(file)) {
+            expected = GcLogParser.parseLog(scanner);
+        }
+        List<HeapSnapshot> actual = new ArrayList<>();
+        StreamingGcLogParser.parse(file.toPath(), actual::add);
+
+        assertFalse(actual.isEmpty(), "Crash log should produce a snapshot");
+        assertSameSnapshots(expected, actual);
+    }
+
+    @Test
+    void linesSplitAcrossBuffersAreCarriedOver() throws IOException {
+        byte[] log = Files.readAllBytes(new File(DATA_DIR + "sample_gc.log").toPath());
+        List<HeapSnapshot> expected = new ArrayList<>();
+        StreamingGcLogParser.parse(new File(DATA_DIR + "sample_gc.log").toPath(), expected::add);
+
+        List<HeapSnapshot> actual = new ArrayList<>();
+        StreamingGcLogParser parser = new StreamingGcLogParser(actual::add);
+        ByteBuffer buf = ByteBuffer.wrap(log);
+        int position = 0;
+        while (position < log.length) {
+            int end = Math.min(log.length, position + 4096);
+            position += parser.acceptLines(buf, position, end, end == log.length);
+        }
+        parser.finish();
+
+        assertSameSnapshots(expected, actual);
+    }
+
+    @Test
+    void parsesFromStreamDeliveredInSmallReads() throws IOException {
+        File file = new File(DATA_DIR + "sample_gc.log");
+        byte[] log = Files.readAllBytes(file.toPath());
+        List<HeapSnapshot> expected = GcLogParser.parseLogFile(file);
+
+        // deliver at most 1000 bytes per read, like a slow network upload
+        java.io.InputStream in = new java.io.ByteArrayInputStream(log) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        List<HeapSnapshot> actual = new ArrayList<>();
+        StreamingGcLogParser.parse(in, actual::add);
+
+        assertSameSnapshots(expected, actual);
+    }
+
+    @Test
+    void gcStartLineSetsTypeAndFullFlag() {
+        String log = """
+            [1.000s][info][gc,start] GC(7) Pause Full (System.gc())
+            [1.001s][trace][gc,heap,region] GC(7) Heap Regions: E=young(eden), F=free
+            [1.001s][trace][gc,heap,region] GC(7) |   0|0x0, 0x0, 0x1|  0%| F|  |TAMS 0x0| PB 0x0| Untracked
+            [1.001s][trace][gc,heap,region] GC(7) |   1|0x1, 0x2, 0x2|100%| O|  |TAMS 0x1| PB 0x1| Complete
+            [1.002s][info][gc] GC(7) Pause Full (System.gc()) 10M->5M(64M) 2.000ms
+            """;
+        List<HeapSnapshot> snapshots = new ArrayList<>();
+        StreamingGcLogParser parser = new StreamingGcLogParser(snapshots::add);
+        byte[] bytes = log.getBytes(StandardCharsets.US_ASCII);
+        parser.acceptLines(ByteBuffer.wrap(bytes), 0, bytes.length, true);
+        parser.finish();
+
+        assertEquals(1, snapshots.size());
+        HeapSnapshot snap = snapshots.get(0);
+        assertEquals(7, snap.getGcCycle());
+        assertTrue(snap.isFull());
+        assertEquals("Pause Full (System.gc())", snap.getGcType());
+        assertEquals(2, snap.getRegions().size());
+    }
+
+    @Test
+    void malformedUsageIsReadAlikeByBothParsers() {
+        String log = """
+            [1.001s][trace][gc,heap,region] GC(7) Heap Regions: E=young(eden), F=free
+            [1.001s][trace][gc,heap,region] GC(7) |   0|0x0, 0x0, 0x1| 4x%| E|  |TAMS 0x0| PB 0x0| Untracked
+            [1.001s][trace][gc,heap,region] GC(7) |   1|0x1, 0x2, 0x2|250%| O|  |TAMS 0x1| PB 0x1| Complete
+            [1.001s][trace][gc,heap,region] GC(7) |   2|0x2, 0x2, 0x3|  7%| O|  |TAMS 0x2| PB 0x2| Complete
+            [1.002s][info][gc] GC(7) Pause Young (Normal) (G1 Evacuation Pause) 10M->5M(64M) 2.000ms
+            """;
+        List<HeapSnapshot> expected = GcLogParser.parseLog(new Scanner(log));
+        List<HeapSnapshot> actual = new ArrayList<>();
+        StreamingGcLogParser parser = new StreamingGcLogParser(actual::add);
+        byte[] bytes = log.getBytes(StandardCharsets.US_ASCII);
+        parser.acceptLines(ByteBuffer.wrap(bytes), 0, bytes.length, true);
+        parser.finish();
+
+        assertSameSnapshots(expected, actual);
+        HeapSnapshot snap = actual.get(0);
+        assertEquals(3, snap.getRegionCount());
+        assertEquals(0, snap.getUsagePercent(0));
+        assertEquals(100, snap.getUsagePercent(1));
+        assertEquals(7, snap.getUsagePercent(2));
+    }
+
+    @Test
+    void regionDetailIsDecoded() {
+        String log = """
+            [0.521s][trace][gc,heap,region] GC(3) Heap Regions: E=young(eden), F=free
+            [0.521s][trace][gc,heap,region] GC(3) |   0|0x00000000a0000000, 0x00000000a0000000, 0x00000000a1000000|  0%| F|  |TAMS 0x00000000a0000000| PB 0x00000000a0000000| Untracked
+            [0.521s][trace][gc,heap,region] GC(3) |   1|0x00000000a1000000, 0x00000000a17d7e50, 0x00000000a2000000| 49%| S|CS|TAMS 0x00000000a1000000| PB 0x00000000a1000000| Complete
+            [0.521s][trace][gc,heap,region] GC(3) |   2|0x00000000a2000000, 0x00000000a3000000, 0x00000000a3000000|100%| O|  |TAMS 0x00000000a2800000| PB 0x00000000a2000000| Updating
+            [0.522s][info][gc] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 10M->5M(64M) 2.000ms
+            """;
+        List<HeapSnapshot> snapshots = new ArrayList<>();
+        StreamingGcLogParser parser = new StreamingGcLogParser(snapshots::add);
+        byte[] bytes = log.getBytes(StandardCharsets.US_ASCII);
+        parser.acceptLines(ByteBuffer.wrap(bytes), 0, bytes.length, true);
+        parser.finish();
+
+        HeapSnapshot snap = snapshots.get(0);
+        assertTrue(snap.hasDetail());
+        assertEquals(0x1000000, snap.getRegionSize());
+        assertEquals(49, snap.getUsagePercent(1));
+        assertEquals(0xa1000000L, snap.getBottom(1));
+        assertEquals(0xa17d7e50L, snap.getTop(1));
+        assertEquals(0xa2000000L, snap.getEnd(1));
+        assertEquals(0x7d7e50, snap.getUsedBytes(1));
+        assertTrue(snap.isInCollectionSet(1));
+        assertFalse(snap.isInCollectionSet(2));
+        assertEquals(0xa2800000L, snap.getTams(2));
+        assertEquals(0xa2000000L, snap.getParsableBottom(2));
+        assertEquals(HeapSnapshot.REMSET_UNTRACKED, snap.getRemSetState(0));
+        assertEquals(HeapSnapshot.REMSET_COMPLETE, snap.getRemSetState(1));
+        assertEquals(HeapSnapshot.REMSET_UPDATING, snap.getRemSetState(2));
+        // S region: 16M - 0x7d7e50 unused, O region full, F not counted
+        assertEquals(0x1000000L - 0x7d7e50, snap.getWastedBytes());
+        assertEquals(0x7d7e50L + 0x1000000, snap.getUsedBytes());
+    }
+
+    @Test
+    void sampleLogHasUsageAndDetail() throws IOException {
+        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        boolean partlyUsed = false;
+        for (HeapSnapshot snap : snapshots) {
+            assertTrue(snap.hasDetail());
+            for (int i = 0; i < snap.getRegionCount(); i++) {
+                int pct = snap.getUsagePercent(i);
+                partlyUsed |= pct > 0 && pct < 100;
+                // the logged percentage is used / capacity, rounded down
+                assertEquals(pct, (int) (snap.getUsedBytes(i) * 100L / snap.getRegionSize()));
+            }
+        }
+        assertTrue(partlyUsed);
+    }
+
+    private static long uptime(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        long millis = StreamingGcLogParser.parseUptime(ByteBuffer.wrap(bytes), 0, bytes.length);
+        assertEquals(GcLogParser.parseUptime(line), millis, line);
+        return millis;
+    }
+
+    @Test
+    void uptimeDecorationIsDecoded() throws IOException {
+        assertEquals(516, uptime("[0.516s][trace][gc,heap,region] GC(0) Heap Regions:"));
+        assertEquals(7, uptime("[0.0071s][trace][gc,heap,region] GC(0) Heap Regions:"));
+        assertEquals(2500, uptime("[2.5s] Heap Regions:"));
+        assertEquals(1234, uptime("[1234ms][trace] Heap Regions:"));
+        assertEquals(1234, uptime("[1234567890ns][trace] Heap Regions:"));
+        assertEquals(61000, uptime("[2024-05-01T10:00:00.000+0000][61.000s][trace] Heap Regions:"));
+        assertEquals(-1, uptime("[2024-05-01T10:00:00.000+0000][trace] Heap Regions:"));
+        assertEquals(-1, uptime("Heap Regions: E=young(eden)"));
+
+        List<HeapSnapshot> snapshots = new ArrayList<>();
+        StreamingGcLogParser.parse(new File(DATA_DIR + "sample_gc.log").toPath(), snapshots::add);
+        assertEquals(516, snapshots.get(0).getTimestamp());
+        for (int i = 1; i < snapshots.size(); i++) {
+            assertTrue(snapshots.get(i).getTimestamp() > snapshots.get(i - 1).getTimestamp());
+        }
+
+        // crash logs have no decorations
+        snapshots.clear();
+        StreamingGcLogParser.parse(new File(DATA_DIR + "hs_err_pid4018.log").toPath(), snapshots::add);
+        assertEquals(-1, snapshots.get(0).getTimestamp());
+    }
+}
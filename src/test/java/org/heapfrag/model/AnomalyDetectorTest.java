@@ -0,0 +1,86 @@
+package org.heapfrag.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.heapfrag.model.Layouts.heap;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnomalyDetectorTest {
+
+    private static final String COMPACT = "OOOOOOOO........";   // ext 0, 50% free
+    private static final String SCATTERED = "O.O.O.O.O.O.O.O."; // ext 88, 50% free
+
+    @Test
+    void extJumpIsReportedAtOnset() {
+        AnomalyDetector detector = new AnomalyDetector();
+        for (int gc = 0; gc < 10; gc++) detector.accept(heap(gc, false, COMPACT));
+        for (int gc = 10; gc < 13; gc++) detector.accept(heap(gc, false, SCATTERED));
+
+        List<AnomalyDetector.Anomaly> anomalies = detector.getAnomalies();
+        assertEquals(1, detector.getCount(AnomalyDetector.Kind.EXT_JUMP));
+        AnomalyDetector.Anomaly jump = anomalies.get(0);
+        assertEquals(AnomalyDetector.Kind.EXT_JUMP, jump.kind());
+        assertEquals(10, jump.position());
+        assertEquals(10, jump.gcCycle());
+        assertEquals(10_000, jump.timestamp());
+        assertEquals(88, jump.value());
+        assertEquals(0, jump.limit());
+    }
+
+    @Test
+    void humongousBlockedUsesLargestObjectSeen() {
+        AnomalyDetector detector = new AnomalyDetector();
+        detector.accept(heap(0, false, "HCCC............"));
+        detector.accept(heap(1, false, "OO.OO.OO.OO..OO."));  // free runs of 2, 38% free
+        detector.accept(heap(2, false, "OO.OO.OO.OO..OO."));  // still blocked, not reported again
+        detector.accept(heap(3, false, "OOOOOOOOOOOOO..."));  // only 19% free
+
+        assertEquals(1, detector.getCount(AnomalyDetector.Kind.HUMONGOUS_BLOCKED));
+        AnomalyDetector.Anomaly blocked = detector.getAnomalies().stream()
+            .filter(a -> a.kind() == AnomalyDetector.Kind.HUMONGOUS_BLOCKED).findFirst().orElseThrow();
+        assertEquals(1, blocked.position());
+        assertEquals(2, blocked.value());
+        assertEquals(4, blocked.limit());
+
+        // a configured size applies before any humongous object is logged
+        AnomalyDetector configured = new AnomalyDetector(
+            AnomalyDetector.DEFAULT_JUMP, AnomalyDetector.DEFAULT_MIN_FREE, AnomalyDetector.DEFAULT_BUILDUP, 3);
+        configured.accept(heap(0, false, "OO.OO.OO.OO..OO."));
+        assertEquals(1, configured.getCount(AnomalyDetector.Kind.HUMONGOUS_BLOCKED));
+    }
+
+    @Test
+    void fullGcAfterBuildupIsReportedOncePerCycle() {
+        AnomalyDetector detector = new AnomalyDetector();
+        for (int gc = 0; gc < 20; gc++) detector.accept(heap(gc, false, SCATTERED));
+        detector.accept(heap(20, true, SCATTERED));
+        detector.accept(heap(20, true, COMPACT));
+
+        assertEquals(1, detector.getCount(AnomalyDetector.Kind.FULL_AFTER_BUILDUP));
+        AnomalyDetector.Anomaly full = detector.getAnomalies().get(detector.getAnomalies().size() - 1);
+        assertEquals(AnomalyDetector.Kind.FULL_AFTER_BUILDUP, full.kind());
+        assertEquals(20, full.position());
+        assertEquals(AnomalyDetector.DEFAULT_BUILDUP, full.limit());
+
+        // a Full GC on a compact heap is not an anomaly
+        AnomalyDetector compact = new AnomalyDetector();
+        for (int gc = 0; gc < 20; gc++) compact.accept(heap(gc, false, COMPACT));
+        compact.accept(heap(20, true, COMPACT));
+        assertEquals(0, compact.getCount(AnomalyDetector.Kind.FULL_AFTER_BUILDUP));
+        assertEquals(21, compact.getSnapshotCount());
+    }
+
+    @Test
+    void jsonListsCountsAndAnomalies() {
+        AnomalyDetector detector = new AnomalyDetector();
+        detector.accept(heap(0, false, COMPACT));
+        detector.accept(heap(1, false, SCATTERED));
+
+        assertEquals(
+            "{\"snapshots\":2,\"counts\":{\"EXT_JUMP\":1,\"HUMONGOUS_BLOCKED\":0,\"FULL_AFTER_BUILDUP\":0}," +
+            "\"anomalies\":[{\"kind\":\"EXT_JUMP\",\"n\":1,\"gc\":1,\"time\":1000,\"value\":88,\"limit\":0}]}",
+            detector.toJson());
+    }
+}
@@ -0,0 +1,66 @@
+package org.heapfrag.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CycleIndexTest {
+
+    private static CycleIndex indexOf(int... cycles) {
+        CycleIndex index = new CycleIndex();
+        for (int p = 0; p < cycles.length; p++) {
+            index.add(p, cycles[p]);
+        }
+        return index;
+    }
+
+    @Test
+    void consecutiveSnapshotsOfACycleFormOneRun() {
+        CycleIndex index = indexOf(0, 0, 1, 1, 3, 3, 3);
+
+        assertEquals(3, index.getRunCount());
+        int run = index.getFirstRun(3);
+        assertEquals(2, run);
+        assertEquals(4, index.getRunStart(run));
+        assertEquals(7, index.getRunEnd(run));
+        assertEquals(-1, index.getNextRun(run));
+    }
+
+    @Test
+    void missingCyclesHaveNoRun() {
+        CycleIndex index = indexOf(0, 5, 9);
+
+        assertEquals(-1, index.getFirstRun(2));
+        assertEquals(-1, index.getFirstRun(100));
+        assertEquals(-1, index.getFirstRun(-1));
+        assertEquals(9, index.getRunCycle(index.getFirstRun(9)));
+    }
+
+    @Test
+    void repeatedCyclesAreChained() {
+        // e.g. two rotated log files concatenated
+        CycleIndex index = indexOf(0, 1, 2, 0, 1);
+
+        int run = index.getFirstRun(1);
+        assertEquals(1, index.getRunStart(run));
+        run = index.getNextRun(run);
+        assertEquals(4, index.getRunStart(run));
+        assertEquals(-1, index.getNextRun(run));
+    }
+
+    @Test
+    void timelineMaintainsIndexOnAppend() {
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        for (int cycle = 0; cycle < 1000; cycle++) {
+            for (int k = 0; k < 2; k++) {
+                timeline.append(new HeapSnapshot(cycle, new byte[4], new byte[4], null, 4, false, ""));
+            }
+        }
+        CycleIndex index = timeline.getCycleIndex();
+
+        assertEquals(1000, index.getRunCount());
+        int run = index.getFirstRun(777);
+        assertEquals(1554, index.getRunStart(run));
+        assertEquals(1556, index.getRunEnd(run));
+    }
+}
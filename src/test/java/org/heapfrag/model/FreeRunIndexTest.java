@@ -0,0 +1,92 @@
+package org.heapfrag.model;
+
+import org.gc.log.parser.GcLogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.heapfrag.model.Layouts.heap;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FreeRunIndexTest {
+
+    private static final String DATA_DIR = "data/";
+
+    @Test
+    void answersPlacementQueries() {
+        // runs of 3, 1, 5, 3 and 2
+        FreeRunIndex index = heap(1, "...O.OO.....O...OO..").getFreeRunIndex();
+
+        assertArrayEquals(new int[] {1, 2, 3, 5}, index.getLengths());
+        assertArrayEquals(new int[] {1, 1, 2, 1}, index.getCounts());
+        assertEquals(5, index.getRunCount());
+        assertEquals(14, index.getFreeRegions());
+        assertEquals(5, index.getMaxRun());
+
+        assertTrue(index.canPlace(5));
+        assertFalse(index.canPlace(6));
+        assertEquals(3, index.countRuns(3));
+        assertEquals(1, index.countRuns(4));
+        assertEquals(0, index.countRuns(6));
+        assertEquals(11, index.countUsableRegions(3));
+        // 3 -> 1, 5 -> 2, 3 -> 1, 2 -> 1
+        assertEquals(5, index.countFitting(2));
+        assertEquals(14, index.countFitting(1));
+        assertEquals(0, index.countFitting(6));
+        assertThrows(IllegalArgumentException.class, () -> index.countFitting(0));
+    }
+
+    @Test
+    void indexGapsSplitRuns() {
+        HeapSnapshot sparse = new HeapSnapshot(1, new byte[4], new byte[4], new int[] {0, 1, 3, 4}, 4, false, "");
+        FreeRunIndex index = sparse.getFreeRunIndex();
+        assertArrayEquals(new int[] {2}, index.getLengths());
+        assertArrayEquals(new int[] {2}, index.getCounts());
+        assertEquals(sparse.getMaxFreeRun(), index.getMaxRun());
+    }
+
+    @Test
+    void fullHeapHasNoRuns() {
+        FreeRunIndex index = heap(1, "OOOO").getFreeRunIndex();
+        assertEquals(0, index.getRunCount());
+        assertFalse(index.canPlace(1));
+        assertEquals("{\"free\":0,\"runs\":0,\"maxRun\":0,\"regions\":1,\"fits\":false,\"fitRuns\":0,\"objects\":0," +
+            "\"lengths\":[],\"counts\":[]}", index.toJson(1));
+    }
+
+    @Test
+    void matchesBruteForceOnRandomHeaps() {
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            StringBuilder layout = new StringBuilder();
+            for (int i = 0; i < 300; i++) layout.append(random.nextInt(3) == 0 ? 'O' : '.');
+            HeapSnapshot s = heap(1, layout.toString());
+            FreeRunIndex index = s.getFreeRunIndex();
+
+            assertEquals(s.getFreeRegionCount(), index.getFreeRegions());
+            assertEquals(s.getMaxFreeRun(), index.getMaxRun());
+            for (int n = 1; n <= 12; n++) {
+                long fitting = 0;
+                int runs = 0;
+                for (String run : layout.toString().split("O+")) {
+                    fitting += run.length() / n;
+                    if (run.length() >= n) runs++;
+                }
+                assertEquals(fitting, index.countFitting(n));
+                assertEquals(runs, index.countRuns(n));
+            }
+        }
+    }
+
+    @Test
+    void sampleLogMaxRunMatchesSnapshot() throws IOException {
+        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        for (HeapSnapshot s : snapshots) {
+            assertEquals(s.getMaxFreeRun(), s.getFreeRunIndex().getMaxRun());
+            assertEquals(s.getFreeRegionCount(), s.getFreeRunIndex().getFreeRegions());
+        }
+    }
+}
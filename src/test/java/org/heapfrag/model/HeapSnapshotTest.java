@@ -112,4 +112,181 @@ class HeapSnapshotTest {
         assertEquals(100, snap.calculateExternalFragmentation(),
                 "No free regions should give 100% external fragmentation");
     }
+
+    @Test
+    void columnarSnapshotMatchesRegionListSnapshot() {
+        List<Region> regions = new java.util.ArrayList<>();
+        String[] types = {"F", "E", "F", "F", "O", "HS", "HC", "F"};
+        int[] usage = {0, 100, 0, 0, 40, 100, 20, 0};
+        for (int i = 0; i < types.length; i++) {
+            regions.add(new Region(i, types[i], 3, usage[i]));
+        }
+        HeapSnapshot fromList = new HeapSnapshot(3, regions, false, "");
+
+        byte[] typeCodes = new byte[types.length];
+        byte[] usageBytes = new byte[types.length];
+        for (int i = 0; i < types.length; i++) {
+            typeCodes[i] = (byte) regions.get(i).regionType;
+            usageBytes[i] = (byte) usage[i];
+        }
+        HeapSnapshot columnar = new HeapSnapshot(3, typeCodes, usageBytes, null, types.length, false, "");
+
+        assertEquals(fromList.calculateExternalFragmentation(), columnar.calculateExternalFragmentation());
+        assertEquals(fromList.calculateInternalFragmentation(), columnar.calculateInternalFragmentation());
+        assertEquals(fromList.calculateFree(), columnar.calculateFree());
+        assertEquals(fromList.regionsToJson(), columnar.regionsToJson());
+        assertEquals(150, columnar.getRegions().get(6).regionType);
+    }
+
+    @Test
+    void sparseRegionIndicesBreakFreeRuns() {
+        List<Region> regions = new java.util.ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            regions.add(new Region(i, "F", 0));
+        }
+        // gap in the logged heap, e.g. uncommitted regions
+        for (int i = 100; i < 102; i++) {
+            regions.add(new Region(i, "F", 0));
+        }
+        HeapSnapshot snap = new HeapSnapshot(0, regions, false, "");
+
+        assertEquals(6, snap.getRegionCount());
+        assertEquals(101, snap.getRegions().get(5).index);
+        // max run 4 of 6 free regions
+        assertEquals(33, snap.calculateExternalFragmentation());
+    }
+
+    @Test
+    void regionsJsonMatchesRegionToJsonAndIsCached() throws IOException {
+        for (HeapSnapshot snap : GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"))) {
+            int gridSize = snap.getGridSize();
+            StringBuilder expected = new StringBuilder("[");
+            for (Region r : snap.getRegions()) {
+                expected.append(r.toJson(gridSize));
+            }
+            if (expected.length() > 1) {
+                expected.setCharAt(expected.length() - 1, ']');
+            } else {
+                expected.append("]");
+            }
+            assertEquals(expected.toString(), snap.regionsToJson());
+            assertSame(snap.regionsJson(), snap.regionsJson(), "Serialized regions should be cached");
+        }
+    }
+
+    /** Decodes a frame back to one type byte per slot. */
+    private static int[] decodeFrame(byte[] frame) {
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(frame).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        int slots = buf.getInt(6);
+        int[] types = new int[slots];
+        if (frame[1] == HeapSnapshot.FRAME_RAW) {
+            for (int i = 0; i < slots; i++) types[i] = frame[10 + i] & 0xFF;
+            return types;
+        }
+        int pos = 10;
+        int i = 0;
+        while (pos < frame.length) {
+            int type = frame[pos++] & 0xFF;
+            int run = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = frame[pos++] & 0xFF;
+                run |= (b & 0x7F) << shift;
+                if (b < 0x80) break;
+            }
+            java.util.Arrays.fill(types, i, i + run, type);
+            i += run;
+        }
+        assertEquals(slots, i, "Runs should cover every slot");
+        return types;
+    }
+
+    @Test
+    void regionsFrameRoundTrips() throws IOException {
+        for (HeapSnapshot snap : GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"))) {
+            int[] types = decodeFrame(snap.regionsFrame());
+            // consecutive region sections may be merged into one snapshot,
+            // the frame then holds the last state of every region
+            java.util.Map<Integer, Integer> expected = new java.util.HashMap<>();
+            for (int i = 0; i < snap.getRegionCount(); i++) {
+                expected.put(snap.getRegionIndex(i), snap.getRegionType(i));
+            }
+            int listed = 0;
+            for (int slot = 0; slot < types.length; slot++) {
+                if (types[slot] == HeapSnapshot.FRAME_ABSENT) continue;
+                assertEquals(expected.get(slot), types[slot]);
+                listed++;
+            }
+            assertEquals(expected.size(), listed);
+        }
+    }
+
+    @Test
+    void uniformHeapIsRunLengthEncoded() {
+        List<Region> regions = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            regions.add(new Region(i, i < 600 ? "O" : "F", 0));
+        }
+        HeapSnapshot snap = new HeapSnapshot(0, regions, false, "");
+        byte[] frame = snap.regionsFrame();
+
+        assertEquals(HeapSnapshot.FRAME_RLE, frame[1]);
+        assertTrue(frame.length < 20, "Two runs should need only a few bytes, got " + frame.length);
+        int[] types = decodeFrame(frame);
+        assertEquals(90, types[599]);
+        assertEquals(0, types[600]);
+    }
+
+    @Test
+    void internalFragmentationUsesExactBytesWithDetail() {
+        // two regions of 100 bytes: one full, one with 50 bytes
+        HeapSnapshot snap = new HeapSnapshot(1, new byte[] {90, 90}, new byte[] {100, 50}, null, 2, false, "",
+                0, 100, new int[] {100, 50}, new int[] {-1, -1}, new int[] {-1, -1}, new byte[2]);
+
+        // 1 - (100² + 50²) / (100 × 150) = 1/6
+        assertEquals(17, snap.calculateInternalFragmentation());
+        assertEquals(150, snap.getUsedBytes());
+        assertEquals(50, snap.getWastedBytes());
+        assertEquals(-1, snap.getTams(0));
+    }
+
+    @Test
+    void maxHumongousRunCountsContinuesRegions() {
+        // HS HC HC, O, HS, HS HC, HC without a start
+        byte[] types = {120, (byte) 150, (byte) 150, 90, 120, 120, (byte) 150, 0, (byte) 150};
+        HeapSnapshot snap = new HeapSnapshot(1, types, new byte[types.length], null, types.length, false, "");
+        assertEquals(3, snap.getMaxHumongousRun());
+
+        // a gap in the region indices ends the object
+        HeapSnapshot sparse = new HeapSnapshot(1, new byte[] {120, (byte) 150, (byte) 150}, new byte[3],
+                new int[] {0, 1, 5}, 3, false, "");
+        assertEquals(2, sparse.getMaxHumongousRun());
+    }
+
+    @Test
+    void statsCountTypesBytesAndOldOccupancy() {
+        // F, E, O 5%, O 95%, O 100%, HS HC with a 30 byte tail, regions of 100 bytes
+        byte[] types = {0, 30, 90, 90, 90, 120, (byte) 150};
+        byte[] usage = {0, 60, 5, 95, 100, 100, 70};
+        int[] top = {0, 60, 5, 95, 100, 100, 70};
+        HeapSnapshot snap = new HeapSnapshot(4, types, usage, null, types.length, false, "",
+                0, 100, top, new int[7], new int[7], new byte[7]);
+
+        assertEquals(1, snap.getTypeCount(0));
+        assertEquals(3, snap.getTypeCount(90));
+        assertEquals(0, snap.getTypeCount(60));
+        assertEquals(200, snap.getTypeUsedBytes(90));
+        assertEquals(1, snap.getOldOccupancy(0));
+        assertEquals(2, snap.getOldOccupancy(HeapSnapshot.OCCUPANCY_BUCKETS - 1));
+        assertEquals(30, snap.getHumongousWastedBytes());
+        assertEquals("{\"gc\":4,\"regions\":7,"
+                + "\"counts\":{\"F\":1,\"CS\":0,\"E\":1,\"S\":0,\"O\":3,\"HS\":1,\"HC\":1},"
+                + "\"bytes\":{\"F\":0,\"CS\":0,\"E\":60,\"S\":0,\"O\":200,\"HS\":100,\"HC\":70},"
+                + "\"oldOccupancy\":[1,0,0,0,0,0,0,0,0,2],\"humongousWasted\":30}", snap.statsJson());
+
+        // without detail only the counts and the distribution are known
+        HeapSnapshot plain = new HeapSnapshot(4, types, usage, null, types.length, false, "");
+        assertEquals(3, plain.getTypeCount(90));
+        assertEquals(0, plain.getTypeUsedBytes(90));
+        assertEquals(0, plain.getHumongousWastedBytes());
+    }
 }
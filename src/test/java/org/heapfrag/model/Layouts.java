@@ -0,0 +1,53 @@
+package org.heapfrag.model;
+
+/**
+ * Test snapshots written as strings, one region per character:
+ * . free, E eden, S survivor, O old, H humongous start, C humongous
+ * continues. Used regions are 100% used, free ones empty.
+ */
+final class Layouts {
+
+    private Layouts() {
+    }
+
+    /** A young pause snapshot at uptime 1000 ms * gc. */
+    static HeapSnapshot heap(int gc, String layout) {
+        return heap(gc, false, layout);
+    }
+
+    /** A young or full pause snapshot at uptime 1000 ms * gc. */
+    static HeapSnapshot heap(int gc, boolean full, String layout) {
+        return heap(gc, 1000L * gc, full, layout);
+    }
+
+    /** A young pause snapshot at the given uptime in ms. */
+    static HeapSnapshot heap(int gc, long time, String layout) {
+        return heap(gc, time, false, layout);
+    }
+
+    private static HeapSnapshot heap(int gc, long time, boolean full, String layout) {
+        byte[] types = new byte[layout.length()];
+        byte[] usage = new byte[layout.length()];
+        for (int i = 0; i < layout.length(); i++) {
+            int type = switch (layout.charAt(i)) {
+                case 'E' -> 30;
+                case 'S' -> 60;
+                case 'O' -> 90;
+                case 'H' -> 120;
+                case 'C' -> 150;
+                default -> 0;
+            };
+            types[i] = (byte) type;
+            usage[i] = (byte) (type == 0 ? 0 : 100);
+        }
+        HeapSnapshot s = new HeapSnapshot(gc, types, usage, null, layout.length(), full, "");
+        s.setTimestamp(time);
+        return s;
+    }
+
+    static SnapshotTimeline timeline(HeapSnapshot... snapshots) {
+        SnapshotTimeline t = new SnapshotTimeline();
+        for (HeapSnapshot s : snapshots) t.append(s);
+        return t;
+    }
+}
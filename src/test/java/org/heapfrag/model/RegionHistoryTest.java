@@ -0,0 +1,157 @@
+package org.heapfrag.model;
+
+import org.gc.log.parser.GcLogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.heapfrag.model.Layouts.heap;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionHistoryTest {
+
+    private static final String DATA_DIR = "data/";
+
+    @Test
+    void unknownTypeCodesCountAsFree() {
+        RegionHistory history = new RegionHistory();
+        history.accept(new HeapSnapshot(0, new byte[]{42}, new byte[1], null, 1, false, ""));
+        history.accept(heap(1, "O"));
+
+        assertEquals(1, history.getTimeIn(0, 0));
+        assertEquals(1, history.getTimeIn(0, 90));
+    }
+
+    @Test
+    void keepsOneEntryPerRun() {
+        RegionHistory history = new RegionHistory();
+        history.accept(heap(0, "E.O."));
+        history.accept(heap(1, "S.O."));
+        history.accept(heap(2, "..OH"));
+        history.accept(heap(3, "E.OH"));
+        history.accept(heap(4, "E.OH"));
+
+        assertEquals(5, history.getSnapshotCount());
+        assertEquals(4, history.getRegionCount());
+        // E S F E, F, O, F H
+        assertEquals(4 + 1 + 1 + 2, history.getRunTotal());
+        assertEquals(3, history.getTransitions(0));
+        assertEquals(3, history.getYoungChurn(0));
+        assertEquals(0, history.getTransitions(2));
+        assertEquals(5, history.getTimeIn(2, 90));
+        assertEquals(5, history.getLongestRun(2, 90));
+
+        assertEquals(60, history.getTypeAt(0, 1));
+        assertEquals(0, history.getTypeAt(0, 2));
+        assertEquals(30, history.getTypeAt(0, 4));
+        assertEquals(-1, history.getTypeAt(0, 5));
+        assertEquals(-1, history.getTypeAt(9, 0));
+
+        // E for 1 then 2 snapshots
+        assertEquals(3, history.getTimeIn(0, 30));
+        assertEquals(2, history.getLongestRun(0, 30));
+        // transitions at 1 and 2 and 3
+        assertEquals(2, history.getTransitions(0, 1, 4));
+        assertEquals(3, history.getTransitions(0, 0, 4));
+        assertEquals(0, history.getTransitions(0, 3, 4));
+    }
+
+    @Test
+    void findsPinnedAndChurnedRegions() {
+        RegionHistory history = new RegionHistory();
+        history.accept(heap(0, "HC.."));
+        history.accept(heap(1, "HCE."));
+        history.accept(heap(2, "HC.H"));
+        history.accept(heap(3, "HCE."));
+
+        assertEquals(List.of(0, 1), history.getPinned(4));
+        assertEquals(List.of(0, 1), history.getPinned(1));
+        assertEquals(List.of(), history.getPinned(5));
+        assertEquals(List.of(2, 3), history.getMostChurned(10));
+        assertEquals(List.of(2), history.getMostChurned(1));
+
+        assertEquals(
+            "{\"regions\":4,\"snapshots\":4,\"runs\":9,\"churn\":[{\"region\":2,\"transitions\":3,\"youngChurn\":3}]," +
+            "\"pinned\":[{\"region\":0,\"type\":120,\"since\":0,\"gc\":0,\"snapshots\":4}," +
+            "{\"region\":1,\"type\":150,\"since\":0,\"gc\":0,\"snapshots\":4}]}",
+            history.summaryJson(1, 4));
+        assertEquals(
+            "{\"region\":3,\"snapshots\":4,\"transitions\":2,\"youngChurn\":0,\"start\":[0,2,3],\"type\":[0,120,0]," +
+            "\"time\":{\"F\":3,\"CS\":0,\"E\":0,\"S\":0,\"O\":0,\"HS\":1,\"HC\":0}," +
+            "\"longest\":{\"F\":2,\"CS\":0,\"E\":0,\"S\":0,\"O\":0,\"HS\":1,\"HC\":0}}",
+            history.regionJson(3));
+    }
+
+    @Test
+    void matchesRescanOnRandomHeaps() {
+        Random random = new Random(5);
+        String alphabet = ".ESOHC";
+        int regions = 40;
+        RegionHistory history = new RegionHistory();
+        HeapSnapshot[] snapshots = new HeapSnapshot[200];
+        String previous = ".".repeat(regions);
+        for (int n = 0; n < snapshots.length; n++) {
+            StringBuilder layout = new StringBuilder(previous);
+            for (int c = 0; c < 6; c++) {
+                layout.setCharAt(random.nextInt(regions), alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            previous = layout.toString();
+            snapshots[n] = heap(n, previous);
+            history.accept(snapshots[n]);
+        }
+
+        for (int r = 0; r < regions; r++) {
+            int transitions = 0;
+            for (int n = 1; n < snapshots.length; n++) {
+                if (snapshots[n].getRegionType(r) != snapshots[n - 1].getRegionType(r)) transitions++;
+            }
+            assertEquals(transitions, history.getTransitions(r));
+            for (int type : HeapSnapshot.TYPES) {
+                int time = 0, longest = 0, run = 0;
+                for (HeapSnapshot s : snapshots) {
+                    if (s.getRegionType(r) == type) {
+                        time++;
+                        longest = Math.max(longest, ++run);
+                    } else {
+                        run = 0;
+                    }
+                }
+                assertEquals(time, history.getTimeIn(r, type));
+                assertEquals(longest, history.getLongestRun(r, type));
+            }
+            for (int n = 0; n < snapshots.length; n += 17) {
+                assertEquals(snapshots[n].getRegionType(r), history.getTypeAt(r, n));
+            }
+        }
+    }
+
+    @Test
+    void sampleLogHistoryReplaysSnapshots() throws IOException {
+        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        RegionHistory history = new RegionHistory();
+        snapshots.forEach(history);
+
+        assertEquals(snapshots.size(), history.getSnapshotCount());
+        long listed = 0;
+        for (int n = 0; n < snapshots.size(); n++) {
+            HeapSnapshot s = snapshots.get(n);
+            // the sample lists some regions more than once per section, the last line wins
+            Map<Integer, Integer> types = new HashMap<>();
+            for (int i = 0; i < s.getRegionCount(); i++) {
+                types.put(s.getRegionIndex(i), s.getRegionType(i));
+            }
+            for (Map.Entry<Integer, Integer> region : types.entrySet()) {
+                assertEquals(region.getValue(), history.getTypeAt(region.getKey(), n));
+            }
+            listed += types.size();
+            assertEquals(s.getGcCycle(), history.getGcCycle(n));
+        }
+        // at most one run per region and snapshot
+        assertTrue(history.getRunTotal() <= listed);
+    }
+}
@@ -0,0 +1,115 @@
+package org.heapfrag.model;
+
+import org.gc.log.parser.GcLogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayFramesTest {
+
+    private static final String DATA_DIR = "data/";
+
+    private static SnapshotTimeline sample() throws IOException {
+        SnapshotTimeline t = new SnapshotTimeline();
+        GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log")).forEach(t::append);
+        return t;
+    }
+
+    @Test
+    void frameMergesTheRegionsOfThePositions() throws IOException {
+        SnapshotTimeline t = sample();
+        ReplayFrames frames = new ReplayFrames(1 << 20);
+
+        String single = frames.get(t, 0, 1);
+        assertEquals(new String(t.getRegionsJson(0), StandardCharsets.US_ASCII), single);
+        String both = frames.get(t, 0, 2);
+        assertTrue(both.startsWith(single.substring(0, single.length() - 1)), "first snapshot's regions come first");
+        assertEquals("[]", frames.get(t, 1, 1));
+    }
+
+    @Test
+    void framesAreCachedPerTimelineAndEvictedWithIt() throws IOException {
+        SnapshotTimeline t = sample();
+        SnapshotTimeline copy = sample();
+        ReplayFrames frames = new ReplayFrames(1 << 20);
+
+        String a = frames.get(t, 0, 1);
+        String b = frames.get(copy, 0, 1);
+        assertEquals(a, b);
+        assertNotSame(a, b, "equal timelines are different sessions");
+        assertEquals(2, frames.getBuiltCount());
+        assertEquals(2L * a.length(), frames.getSize());
+
+        frames.evict(t);
+        assertEquals(b.length(), frames.getSize());
+        assertSame(b, frames.get(copy, 0, 1));
+        frames.get(t, 0, 1);
+        assertEquals(3, frames.getBuiltCount());
+    }
+
+    @Test
+    void concurrentViewersShareOneBuild() throws Exception {
+        SnapshotTimeline t = sample();
+        ReplayFrames frames = new ReplayFrames(1 << 20);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> viewers = new ArrayList<>();
+        String[] seen = new String[16];
+        for (int v = 0; v < seen.length; v++) {
+            int viewer = v;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int p = 0; p < t.size(); p++) seen[viewer] = frames.get(t, p, p + 1);
+            });
+            thread.start();
+            viewers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : viewers) thread.join();
+
+        assertEquals(t.size(), frames.getBuiltCount());
+        for (String frame : seen) assertSame(seen[0], frame);
+    }
+
+    @Test
+    void leastRecentlyUsedFramesAreEvicted() throws IOException {
+        SnapshotTimeline t = sample();
+        int first = frameLength(t, 0);
+        int second = frameLength(t, 1);
+        ReplayFrames frames = new ReplayFrames(first + second);
+
+        frames.get(t, 0, 1);
+        frames.get(t, 1, 2);
+        assertEquals(first + second, frames.getSize());
+        frames.get(t, 0, 1); // 0 is now the most recently used
+        frames.get(t, 2, 3);
+        int third = frameLength(t, 2);
+        // 1 goes first, 0 as well if both do not fit with 2
+        assertEquals(first + third <= first + second ? first + third : third, frames.getSize());
+        assertEquals(3, frames.getBuiltCount());
+
+        frames.get(t, 1, 2); // evicted, built again
+        assertEquals(4, frames.getBuiltCount());
+
+        // the latest frame stays until the next one is built
+        ReplayFrames none = new ReplayFrames(0);
+        none.get(t, 0, 1);
+        none.get(t, 0, 1);
+        assertEquals(first, none.getSize());
+        assertEquals(1, none.getBuiltCount());
+    }
+
+    private static int frameLength(SnapshotTimeline t, int position) {
+        return ReplayFrames.merge(t, position, position + 1).length();
+    }
+}
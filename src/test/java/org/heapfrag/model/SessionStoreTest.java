@@ -0,0 +1,181 @@
+package org.heapfrag.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    private static SnapshotTimeline timeline(int snapshots, int regions, int seed) {
+        SnapshotTimeline timeline = new SnapshotTimeline(8);
+        byte[] types = new byte[regions];
+        for (int n = 0; n < snapshots; n++) {
+            types[(n * 31 + seed) % regions] = (byte) (n % 2 == 0 ? 90 : 30);
+            timeline.append(new HeapSnapshot(n, types.clone(), new byte[regions], null, regions, false, "Pause Young"));
+        }
+        return timeline;
+    }
+
+    private static SessionStore store(long budget) throws IOException {
+        return new SessionStore(budget, Files.createTempDirectory("sessions"));
+    }
+
+    @Test
+    void sessionsAreIndependent() throws IOException {
+        SessionStore store = store(Long.MAX_VALUE);
+        SnapshotTimeline a = timeline(10, 64, 1);
+        SnapshotTimeline b = timeline(20, 64, 2);
+        store.put("a", a);
+        store.put("b", b);
+
+        assertSame(a, store.get("a"));
+        assertSame(b, store.get("b"));
+        assertNull(store.get("c"));
+        assertEquals(List.of("b", "a"), store.getIds());
+    }
+
+    @Test
+    void leastRecentlyUsedSessionIsSpilledAndReloaded() throws IOException {
+        SnapshotTimeline a = timeline(40, 256, 1);
+        SnapshotTimeline b = timeline(40, 256, 2);
+        SessionStore store = store(a.getFootprint() + b.getFootprint() / 2);
+
+        store.put("a", a);
+        store.complete("a");
+        store.put("b", b);
+        store.complete("b");
+
+        assertFalse(store.isResident("a"));
+        assertTrue(store.isResident("b"));
+        assertTrue(store.getResidentBytes() <= store.getMemoryBudget());
+
+        SnapshotTimeline reloaded = store.get("a");
+        assertEquals(a.size(), reloaded.size());
+        for (int n = 0; n < a.size(); n++) {
+            assertEquals(a.get(n).regionsToJson(), reloaded.get(n).regionsToJson());
+        }
+        // reloading a made b the least recently used
+        assertTrue(store.isResident("a"));
+        assertFalse(store.isResident("b"));
+    }
+
+    @Test
+    void incompleteSessionsStayResident() throws IOException {
+        SnapshotTimeline a = timeline(40, 256, 1);
+        SessionStore store = store(1);
+        store.put("a", a);
+        store.put("b", timeline(40, 256, 2));
+        store.complete("b");
+
+        // b is the most recent, a is still being written
+        assertTrue(store.isResident("a"));
+        assertTrue(store.isResident("b"));
+        assertFalse(store.isComplete("a"));
+        assertTrue(store.isComplete("b"));
+    }
+
+    @Test
+    void replacingASessionDropsItsSpillFile() throws IOException {
+        Path dir = Files.createTempDirectory("sessions");
+        SessionStore store = new SessionStore(1, dir);
+        store.put("a", timeline(10, 64, 1));
+        store.complete("a");
+        store.put("b", timeline(10, 64, 2));
+        store.complete("b");
+        assertFalse(store.isResident("a"));
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+
+        SnapshotTimeline replacement = timeline(5, 64, 3);
+        store.put("a", replacement);
+        assertSame(replacement, store.get("a"));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void droppedTimelinesAreReportedAndGenerationsTrackReplacement() throws IOException {
+        SnapshotTimeline a = timeline(40, 256, 1);
+        SnapshotTimeline b = timeline(40, 256, 2);
+        SessionStore store = store(a.getFootprint() + b.getFootprint() / 2);
+        List<SnapshotTimeline> dropped = new ArrayList<>();
+        store.setDropListener((id, timeline) -> dropped.add(timeline));
+
+        store.put("a", a);
+        store.complete("a");
+        long generation = store.getGeneration("a");
+        store.put("b", b);
+        store.complete("b");
+        assertEquals(List.of(a), dropped); // spilled
+
+        store.get("a");
+        assertEquals(generation, store.getGeneration("a"), "read back, not replaced");
+        assertEquals(List.of(a, b), dropped);
+
+        SnapshotTimeline reloaded = store.get("a");
+        store.put("a", timeline(5, 64, 3));
+        assertNotEquals(generation, store.getGeneration("a"));
+        assertSame(reloaded, dropped.get(2));
+        store.remove("a");
+        assertEquals(4, dropped.size());
+        assertEquals(-1, store.getGeneration("a"));
+    }
+
+    @Test
+    void spillDoesNotBlockOtherSessions() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SnapshotTimeline slow = new SnapshotTimeline(8) {
+            @Override
+            public synchronized void writeTo(DataOutputStream out) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.writeTo(out);
+            }
+        };
+        timeline(40, 256, 1).forEach(slow::append);
+        SessionStore store = store(1);
+        store.put("slow", slow);
+        store.complete("slow");
+
+        // completing b spills slow, which blocks while writing
+        Thread spilling = Thread.ofPlatform().start(() -> {
+            store.put("b", timeline(40, 256, 2));
+            store.complete("b");
+        });
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        try {
+            FutureTask<Void> other = new FutureTask<>(() -> {
+                store.put("c", timeline(40, 256, 3));
+                store.complete("c");
+                return null;
+            });
+            Thread.ofPlatform().daemon().start(other);
+            other.get(5, TimeUnit.SECONDS);
+            assertFalse(store.isResident("b"));
+            assertTrue(store.isResident("slow"));
+        } finally {
+            release.countDown();
+        }
+        spilling.join(5000);
+        assertFalse(store.isResident("slow"));
+        assertEquals(40, store.get("slow").size());
+    }
+}
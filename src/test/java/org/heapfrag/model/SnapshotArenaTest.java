@@ -0,0 +1,53 @@
+package org.heapfrag.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotArenaTest {
+
+    @Test
+    void recordsDoNotSpanChunks() {
+        SnapshotArena arena = new SnapshotArena(16);
+        long a = arena.allocate(10);
+        long b = arena.allocate(10); // does not fit behind a
+        long c = arena.allocate(40); // larger than a chunk
+        long d = arena.allocate(6); // the oversized chunk is full
+
+        arena.slice(a, 10).put("0123456789".getBytes());
+        arena.slice(b, 10).put("abcdefghij".getBytes());
+        ByteBuffer big = arena.slice(c, 40);
+        while (big.hasRemaining()) big.putInt(big.position());
+        arena.slice(d, 6).put("klmnop".getBytes());
+
+        assertEquals(16 + 16 + 40 + 16, arena.getCapacity());
+        assertEquals(66, arena.getSize());
+        assertEquals("0123456789", read(arena, a, 10));
+        assertEquals("abcdefghij", read(arena, b, 10));
+        assertEquals("klmnop", read(arena, d, 6));
+        assertEquals(36, arena.slice(c, 40).getInt(36));
+        assertEquals(List.of(0L, 1L, 2L, 3L), List.of(a >>> 32, b >>> 32, c >>> 32, d >>> 32));
+    }
+
+    @Test
+    void slicesHaveTheirOwnPosition() {
+        SnapshotArena arena = new SnapshotArena();
+        long address = arena.allocate(8);
+        arena.slice(address, 8).putLong(42);
+        ByteBuffer first = arena.slice(address, 8);
+        ByteBuffer second = arena.slice(address, 8);
+        assertEquals(42, first.getLong());
+        assertEquals(0, second.position());
+        assertEquals(42, second.getLong());
+        assertThrows(IllegalArgumentException.class, () -> new SnapshotArena(0));
+    }
+
+    private static String read(SnapshotArena arena, long address, int length) {
+        byte[] bytes = new byte[length];
+        arena.slice(address, length).get(bytes);
+        return new String(bytes);
+    }
+}
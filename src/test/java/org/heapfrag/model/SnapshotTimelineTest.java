@@ -0,0 +1,338 @@
+package org.heapfrag.model;
+
+import org.gc.log.parser.GcLogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotTimelineTest {
+
+    private static final String DATA_DIR = "data/";
+
+    /** Random walk over region types, a few regions change per cycle. */
+    private static List<HeapSnapshot> randomWalk(int snapshots, int regions, long seed) {
+        Random random = new Random(seed);
+        int[] codes = {0, 30, 60, 90, 120, 150};
+        byte[] types = new byte[regions];
+        byte[] usage = new byte[regions];
+        List<HeapSnapshot> result = new ArrayList<>();
+        for (int n = 0; n < snapshots; n++) {
+            for (int c = 0; c < regions / 20; c++) {
+                int i = random.nextInt(regions);
+                types[i] = (byte) codes[random.nextInt(codes.length)];
+                usage[i] = (byte) random.nextInt(101);
+            }
+            HeapSnapshot snapshot = new HeapSnapshot(n, types.clone(), usage.clone(), null, regions, n % 10 == 9, "Pause Young");
+            snapshot.setTimestamp(500L + 250L * n);
+            result.add(snapshot);
+        }
+        return result;
+    }
+
+    /** Random walk with region detail, as parsed from a trace level log. */
+    private static List<HeapSnapshot> detailedWalk(int snapshots, int regions, long seed) {
+        Random random = new Random(seed);
+        int regionSize = 1 << 20;
+        int[] top = new int[regions];
+        int[] tams = new int[regions];
+        int[] pb = new int[regions];
+        byte[] flags = new byte[regions];
+        List<HeapSnapshot> result = new ArrayList<>();
+        for (HeapSnapshot s : randomWalk(snapshots, regions, seed)) {
+            for (int c = 0; c < regions / 20; c++) {
+                int i = random.nextInt(regions);
+                top[i] = random.nextInt(regionSize);
+                tams[i] = random.nextInt(regionSize);
+                pb[i] = random.nextInt(regionSize);
+                flags[i] = (byte) random.nextInt(8);
+            }
+            byte[] types = new byte[regions];
+            byte[] usage = new byte[regions];
+            for (int i = 0; i < regions; i++) {
+                types[i] = (byte) s.getRegionType(i);
+                usage[i] = (byte) s.getUsagePercent(i);
+            }
+            HeapSnapshot detailed = new HeapSnapshot(s.getGcCycle(), types, usage, null, regions, s.isFull(),
+                s.getGcType(), 0x80000000L, regionSize, top.clone(), tams.clone(), pb.clone(), flags.clone());
+            detailed.setTimestamp(s.getTimestamp());
+            result.add(detailed);
+        }
+        return result;
+    }
+
+    private static void assertSameSnapshot(HeapSnapshot expected, HeapSnapshot actual) {
+        assertEquals(expected.getGcCycle(), actual.getGcCycle());
+        assertEquals(expected.isFull(), actual.isFull());
+        assertEquals(expected.getGcType(), actual.getGcType());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getRegionCount(), actual.getRegionCount());
+        for (int i = 0; i < expected.getRegionCount(); i++) {
+            assertEquals(expected.getRegionIndex(i), actual.getRegionIndex(i));
+            assertEquals(expected.getRegionType(i), actual.getRegionType(i));
+            assertEquals(expected.getUsagePercent(i), actual.getUsagePercent(i));
+        }
+        assertEquals(expected.hasDetail(), actual.hasDetail());
+        if (expected.hasDetail()) {
+            assertEquals(expected.getRegionSize(), actual.getRegionSize());
+            for (int i = 0; i < expected.getRegionCount(); i++) {
+                assertEquals(expected.getTop(i), actual.getTop(i));
+                assertEquals(expected.getTams(i), actual.getTams(i));
+                assertEquals(expected.getParsableBottom(i), actual.getParsableBottom(i));
+                assertEquals(expected.isInCollectionSet(i), actual.isInCollectionSet(i));
+                assertEquals(expected.getRemSetState(i), actual.getRemSetState(i));
+            }
+        }
+    }
+
+    @Test
+    void sequentialAccessRebuildsEverySnapshot() {
+        List<HeapSnapshot> snapshots = randomWalk(300, 512, 1);
+        SnapshotTimeline timeline = new SnapshotTimeline(16);
+        snapshots.forEach(timeline::append);
+
+        assertEquals(snapshots.size(), timeline.size());
+        for (int n = 0; n < snapshots.size(); n++) {
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+        }
+    }
+
+    @Test
+    void randomAccessRebuildsEverySnapshot() {
+        List<HeapSnapshot> snapshots = randomWalk(300, 512, 2);
+        SnapshotTimeline timeline = new SnapshotTimeline(16);
+        snapshots.forEach(timeline::append);
+
+        Random random = new Random(3);
+        for (int k = 0; k < 1000; k++) {
+            int n = random.nextInt(snapshots.size());
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+        }
+    }
+
+    @Test
+    void keyframesDoNotHoldTheAppendedSnapshots() {
+        List<HeapSnapshot> snapshots = randomWalk(3, 128, 11);
+        SnapshotTimeline timeline = new SnapshotTimeline(1);
+        snapshots.forEach(timeline::append);
+
+        for (int n = 0; n < snapshots.size(); n++) {
+            snapshots.get(n).regionsJson(); // cached by the appended snapshot only
+            assertNotSame(snapshots.get(n), timeline.get(n));
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+        }
+    }
+
+    @Test
+    void layoutChangeStartsNewKeyframe() {
+        List<Region> small = new ArrayList<>();
+        List<Region> large = new ArrayList<>();
+        for (int i = 0; i < 8; i++) small.add(new Region(i, "F", 0));
+        for (int i = 0; i < 16; i++) large.add(new Region(i, i % 2 == 0 ? "O" : "F", 1));
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        timeline.append(new HeapSnapshot(0, small, false, ""));
+        timeline.append(new HeapSnapshot(1, large, false, ""));
+
+        assertEquals(8, timeline.get(0).getRegionCount());
+        assertEquals(16, timeline.get(1).getRegionCount());
+        assertEquals(large.size() / 2, timeline.get(1).getRegionCount() * timeline.get(1).calculateFree() / 100);
+    }
+
+    @Test
+    void parsedLogRoundTrips() throws IOException {
+        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        SnapshotTimeline timeline = new SnapshotTimeline(2);
+        snapshots.forEach(timeline::append);
+
+        for (int n = snapshots.size() - 1; n >= 0; n--) {
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+            assertEquals(snapshots.get(n).regionsToJson(), timeline.get(n).regionsToJson());
+        }
+    }
+
+    @Test
+    void storedMetricsMatchRebuiltSnapshots() {
+        List<HeapSnapshot> snapshots = randomWalk(100, 256, 4);
+        SnapshotTimeline timeline = new SnapshotTimeline(8);
+        snapshots.forEach(timeline::append);
+
+        for (int n = 0; n < snapshots.size(); n++) {
+            HeapSnapshot snap = timeline.get(n);
+            assertEquals(snap.calculateExternalFragmentation(), timeline.getExternalFragmentation(n));
+            assertEquals(snap.calculateInternalFragmentation(), timeline.getInternalFragmentation(n));
+            assertEquals(snap.calculateFree(), timeline.getFree(n));
+            assertEquals(snap.getGcCycle(), timeline.getGcCycle(n));
+            assertEquals(snap.isFull(), timeline.isFull(n));
+            assertStoredStats(snap, timeline, n);
+        }
+    }
+
+    @Test
+    void writtenTimelineReadsBackIdentical() throws IOException {
+        List<HeapSnapshot> snapshots = randomWalk(150, 256, 5);
+        snapshots.add(new HeapSnapshot(150, new byte[] {90, 0}, new byte[2], new int[] {3, 7}, 2, false, null));
+        SnapshotTimeline timeline = new SnapshotTimeline(16);
+        snapshots.forEach(timeline::append);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        timeline.writeTo(new DataOutputStream(bytes));
+        SnapshotTimeline read = SnapshotTimeline.readFrom(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+        );
+
+        assertEquals(timeline.size(), read.size());
+        assertEquals(timeline.getFootprint(), read.getFootprint());
+        assertEquals(timeline.getCycleIndex().getRunCount(), read.getCycleIndex().getRunCount());
+        for (int n = 0; n < snapshots.size(); n++) {
+            assertSameSnapshot(snapshots.get(n), read.get(n));
+            assertEquals(timeline.getExternalFragmentation(n), read.getExternalFragmentation(n));
+        }
+
+        // appending continues the diff chain
+        HeapSnapshot next = randomWalk(1, 256, 6).get(0);
+        read.append(next);
+        assertSameSnapshot(next, read.get(read.size() - 1));
+    }
+
+    @Test
+    void readRejectsOtherData() {
+        byte[] garbage = "not a timeline".getBytes();
+        assertThrows(IOException.class, () ->
+            SnapshotTimeline.readFrom(new DataInputStream(new ByteArrayInputStream(garbage)))
+        );
+    }
+
+    @Test
+    void readRejectsInconsistentCountsAndPositions() throws IOException {
+        // one keyframe and one diff, no gc type and no region detail
+        byte[] types = new byte[16];
+        SnapshotTimeline timeline = new SnapshotTimeline();
+        timeline.append(new HeapSnapshot(0, types.clone(), new byte[16], null, 16, false, null));
+        types[3] = 90;
+        timeline.append(new HeapSnapshot(1, types, new byte[16], null, 16, false, null));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        timeline.writeTo(new DataOutputStream(bytes));
+        byte[] data = bytes.toByteArray();
+
+        int stats = HeapSnapshot.TYPES.length * 12 + HeapSnapshot.OCCUPANCY_BUCKETS * 4 + 8;
+        int frameHeader = 4 + 1 + 1 + 4 + 12 + 8 + stats + 8;
+        int keyframeRegions = 16 + frameHeader;
+        int diffChanges = keyframeRegions + 4 + 2 * 16 + 2 + frameHeader;
+        assertEquals(-2, ByteBuffer.wrap(data).getInt(diffChanges)); // one change
+        assertEquals(3, ByteBuffer.wrap(data).getInt(diffChanges + 4));
+
+        byte[] hugeCount = data.clone();
+        ByteBuffer.wrap(hugeCount).putInt(12, Integer.MAX_VALUE);
+        byte[] hugeKeyframe = data.clone();
+        ByteBuffer.wrap(hugeKeyframe).putInt(keyframeRegions, Integer.MAX_VALUE);
+        byte[] tooManyChanges = data.clone();
+        ByteBuffer.wrap(tooManyChanges).putInt(diffChanges, -1 - 17);
+        byte[] badPosition = data.clone();
+        ByteBuffer.wrap(badPosition).putInt(diffChanges + 4, 16);
+        byte[] diffFirst = data.clone();
+        ByteBuffer.wrap(diffFirst).putInt(keyframeRegions, -2);
+
+        for (byte[] bad : List.of(hugeCount, hugeKeyframe, tooManyChanges, badPosition, diffFirst)) {
+            assertThrows(IOException.class, () ->
+                SnapshotTimeline.readFrom(new DataInputStream(new ByteArrayInputStream(bad))));
+        }
+        for (int length = 0; length < data.length; length += 7) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () ->
+                SnapshotTimeline.readFrom(new DataInputStream(new ByteArrayInputStream(truncated))));
+        }
+    }
+
+    @Test
+    void regionDetailSurvivesDiffsAndSerialization() throws IOException {
+        List<HeapSnapshot> snapshots = GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"));
+        SnapshotTimeline timeline = new SnapshotTimeline(8);
+        snapshots.forEach(timeline::append);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        timeline.writeTo(new DataOutputStream(bytes));
+        SnapshotTimeline read = SnapshotTimeline.readFrom(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+        );
+        for (int n = 0; n < snapshots.size(); n++) {
+            assertTrue(timeline.get(n).hasDetail());
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+            assertSameSnapshot(snapshots.get(n), read.get(n));
+            assertEquals(snapshots.get(n).getWastedBytes(), read.get(n).getWastedBytes());
+            assertStoredStats(snapshots.get(n), read, n);
+        }
+    }
+
+    private static void assertStoredStats(HeapSnapshot expected, SnapshotTimeline timeline, int n) {
+        for (int type : HeapSnapshot.TYPES) {
+            assertEquals(expected.getTypeCount(type), timeline.getTypeCount(n, type));
+            assertEquals(expected.getTypeUsedBytes(type), timeline.getTypeUsedBytes(n, type));
+        }
+        for (int b = 0; b < HeapSnapshot.OCCUPANCY_BUCKETS; b++) {
+            assertEquals(expected.getOldOccupancy(b), timeline.getOldOccupancy(n, b));
+        }
+        assertEquals(expected.getHumongousWastedBytes(), timeline.getHumongousWastedBytes(n));
+    }
+
+    @Test
+    void offHeapTimelineRebuildsEverySnapshot() {
+        List<HeapSnapshot> snapshots = detailedWalk(200, 512, 7);
+        // small chunks, so records span several chunks and keyframes get their own
+        SnapshotTimeline timeline = new SnapshotTimeline(16, new SnapshotArena(4096));
+        snapshots.forEach(timeline::append);
+
+        assertTrue(timeline.isOffHeap());
+        // per-snapshot metrics only, independent of the 512 regions
+        long perSnapshot = timeline.getFootprint() / snapshots.size();
+        assertEquals(perSnapshot * snapshots.size(), timeline.getFootprint());
+        assertTrue(perSnapshot < 512, "heap bytes per snapshot: " + perSnapshot);
+        assertTrue(timeline.getOffHeapFootprint() > 0);
+        for (int n = 0; n < snapshots.size(); n++) {
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+            assertEquals(snapshots.get(n).getWastedBytes(), timeline.getWastedBytes(n));
+        }
+        Random random = new Random(8);
+        for (int k = 0; k < 500; k++) {
+            int n = random.nextInt(snapshots.size());
+            assertSameSnapshot(snapshots.get(n), timeline.get(n));
+        }
+    }
+
+    @Test
+    void offHeapTimelineSerializesLikeHeapTimeline() throws IOException {
+        List<HeapSnapshot> snapshots = detailedWalk(100, 256, 9);
+        snapshots.addAll(randomWalk(50, 256, 10));
+        SnapshotTimeline heap = new SnapshotTimeline(16);
+        SnapshotTimeline offHeap = new SnapshotTimeline(16, new SnapshotArena());
+        snapshots.forEach(heap::append);
+        snapshots.forEach(offHeap::append);
+
+        ByteArrayOutputStream heapBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream offHeapBytes = new ByteArrayOutputStream();
+        heap.writeTo(new DataOutputStream(heapBytes));
+        offHeap.writeTo(new DataOutputStream(offHeapBytes));
+        assertArrayEquals(heapBytes.toByteArray(), offHeapBytes.toByteArray());
+
+        SnapshotTimeline read = SnapshotTimeline.readFrom(
+            new DataInputStream(new ByteArrayInputStream(heapBytes.toByteArray())), new SnapshotArena()
+        );
+        assertTrue(read.isOffHeap());
+        for (int n = snapshots.size() - 1; n >= 0; n--) {
+            assertSameSnapshot(snapshots.get(n), read.get(n));
+        }
+        HeapSnapshot next = randomWalk(1, 256, 11).get(0);
+        read.append(next);
+        assertSameSnapshot(next, read.get(read.size() - 1));
+    }
+}
@@ -0,0 +1,91 @@
+package org.heapfrag.model;
+
+import org.gc.log.parser.GcLogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.heapfrag.model.Layouts.heap;
+import static org.heapfrag.model.Layouts.timeline;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimelineComparisonTest {
+
+    private static final String DATA_DIR = "data/";
+
+    @Test
+    void alignsByCycleAndOccurrence() {
+        SnapshotTimeline a = timeline(
+            heap(1, 100, "EE.."), heap(1, 110, "...."),
+            heap(2, 200, "EEO."), heap(2, 210, "..O."),
+            heap(4, 400, "EOO."));
+        // different region count, cycle 2 logged once, cycle 3 missing in a
+        SnapshotTimeline b = timeline(
+            heap(1, 90, "EE......"), heap(1, 95, "........"),
+            heap(2, 150, "EEEEO..."),
+            heap(3, 300, "OO......"),
+            heap(4, 390, "EO.O.O.."));
+
+        TimelineComparison c = new TimelineComparison(a, b, TimelineOverview.Axis.CYCLE);
+        assertEquals(4, c.getPairCount());
+        int[][] expected = {{0, 0}, {1, 1}, {2, 2}, {4, 4}};
+        for (int p = 0; p < expected.length; p++) {
+            assertEquals(expected[p][0], c.getFirst(p));
+            assertEquals(expected[p][1], c.getSecond(p));
+            assertEquals(b.getFree(expected[p][1]) - a.getFree(expected[p][0]), c.getFreeDelta(p));
+            assertEquals(
+                b.getExternalFragmentation(expected[p][1]) - a.getExternalFragmentation(expected[p][0]),
+                c.getExternalFragmentationDelta(p));
+        }
+        // two eden regions are 50% of a but 25% of b
+        assertEquals(-25f, c.getTypeShareDelta(0, 30));
+        assertEquals(25f, c.getTypeShareDelta(0, 0));
+        // cycle 4: 25% eden and 50% old against 12.5% and 37.5%
+        assertEquals(-12.5f, c.getTypeShareDelta(3, 30));
+        assertEquals(-12.5f, c.getTypeShareDelta(3, 90));
+    }
+
+    @Test
+    void alignsByNearestUptime() {
+        SnapshotTimeline a = timeline(heap(1, 100, "E..."), heap(2, 200, "E..."), heap(3, 300, "E..."));
+        SnapshotTimeline b = timeline(
+            heap(7, 90, "O..."), heap(8, -1, "O..."), heap(9, 240, "OO.."), heap(10, 260, "OOO."), heap(11, 500, "...."));
+
+        TimelineComparison c = new TimelineComparison(a, b, TimelineOverview.Axis.TIME);
+        assertEquals(3, c.getPairCount());
+        assertEquals(0, c.getSecond(0));
+        assertEquals(2, c.getSecond(1));
+        assertEquals(3, c.getSecond(2));
+        assertEquals(75f, c.getTypeShareDelta(2, 90));
+    }
+
+    @Test
+    void jsonHasOneElementPerPair() {
+        SnapshotTimeline a = timeline(heap(1, 100, "EE.."), heap(2, 200, "OO.."));
+        SnapshotTimeline b = timeline(heap(1, 100, "E..."), heap(2, 200, "O.O."));
+        String json = new TimelineComparison(a, b, TimelineOverview.Axis.CYCLE).toJson();
+
+        assertTrue(json.startsWith("{\"by\":\"cycle\",\"pairs\":2,\"a\":{\"snapshots\":2,\"full\":0,"), json);
+        assertTrue(json.contains("\"n_a\":[0,1],\"n_b\":[0,1],\"gc_a\":[1,2],\"gc_b\":[1,2]"), json);
+        assertTrue(json.contains("\"types\":{\"F\":[25.0,0.0],\"CS\":[0.0,0.0],\"E\":[-25.0,0.0]"), json);
+        assertTrue(json.contains("\"ext\":[0,50]"), json);
+    }
+
+    @Test
+    void sampleLogAgainstItselfHasNoDifferences() throws IOException {
+        SnapshotTimeline t = new SnapshotTimeline();
+        GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log")).forEach(t::append);
+
+        for (TimelineOverview.Axis axis : TimelineOverview.Axis.values()) {
+            TimelineComparison c = new TimelineComparison(t, t, axis);
+            assertEquals(t.size(), c.getPairCount());
+            for (int p = 0; p < c.getPairCount(); p++) {
+                assertEquals(c.getFirst(p), c.getSecond(p));
+                assertEquals(0, c.getExternalFragmentationDelta(p));
+                assertEquals(0, c.getWastedBytesDelta(p));
+                assertEquals(0f, c.getTypeShareDelta(p, 90));
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.heapfrag.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimelineOverviewTest {
+
+    /** Two snapshots per cycle, 100 ms apart, with a growing old generation. */
+    private static SnapshotTimeline timeline(int cycles, int regions) {
+        SnapshotTimeline timeline = new SnapshotTimeline(8);
+        for (int n = 0; n < cycles * 2; n++) {
+            byte[] types = new byte[regions];
+            byte[] usage = new byte[regions];
+            for (int i = 0; i < regions; i++) {
+                if (i < n % regions) {
+                    types[i] = 90;
+                    usage[i] = 80;
+                } else if (i % 7 == 0) {
+                    types[i] = 30;
+                    usage[i] = 100;
+                }
+            }
+            HeapSnapshot s = new HeapSnapshot(n / 2, types, usage, null, regions, n == 11, "Pause Young");
+            s.setTimestamp(1000L + 100L * n);
+            timeline.append(s);
+        }
+        return timeline;
+    }
+
+    private static List<Integer> ints(String json, String key) {
+        int start = json.indexOf("\"" + key + "\":[") + key.length() + 4;
+        String body = json.substring(start, json.indexOf(']', start));
+        List<Integer> values = new ArrayList<>();
+        if (body.isEmpty()) return values;
+        for (String v : body.split(",")) values.add((int) Double.parseDouble(v));
+        return values;
+    }
+
+    @Test
+    void bucketsCoverRangeInOrder() {
+        SnapshotTimeline t = timeline(50, 64);
+        TimelineOverview overview = new TimelineOverview(t, TimelineOverview.Axis.CYCLE, 10, 29, 7);
+
+        assertEquals(40, overview.getSnapshotCount());
+        assertEquals(7, overview.getBucketCount());
+        assertEquals(20, overview.getFirst(0));
+        assertEquals(59, overview.getLast(6));
+        for (int b = 1; b < 7; b++) {
+            assertEquals(overview.getLast(b - 1) + 1, overview.getFirst(b), "Buckets are contiguous");
+        }
+
+        String json = overview.metricsJson();
+        assertEquals(10, ints(json, "gcFrom").get(0));
+        assertEquals(29, ints(json, "gcTo").get(6));
+        assertEquals(1000 + 100 * 20, ints(json, "timeFrom").get(0));
+    }
+
+    @Test
+    void bucketMetricsAggregateSnapshots() {
+        SnapshotTimeline t = timeline(20, 64);
+        TimelineOverview overview = new TimelineOverview(t, TimelineOverview.Axis.CYCLE, 0, 19, 4);
+        String json = overview.metricsJson();
+
+        List<Integer> fullCounts = ints(json, "full");
+        assertEquals(1, fullCounts.stream().mapToInt(Integer::intValue).sum());
+        for (int b = 0; b < 4; b++) {
+            int min = 100, max = 0;
+            long sum = 0;
+            for (int p = overview.getFirst(b); p <= overview.getLast(b); p++) {
+                min = Math.min(min, t.getFree(p));
+                max = Math.max(max, t.getFree(p));
+                sum += t.getFree(p);
+            }
+            int n = overview.getLast(b) - overview.getFirst(b) + 1;
+            assertEquals(min, ints(json, "freeMin").get(b));
+            assertEquals(max, ints(json, "freeMax").get(b));
+            assertEquals((int) (Math.round(sum * 10.0 / n) / 10.0), ints(json, "freeAvg").get(b));
+        }
+    }
+
+    @Test
+    void timeAxisSelectsByUptime() {
+        SnapshotTimeline t = timeline(20, 64);
+        TimelineOverview overview = new TimelineOverview(t, TimelineOverview.Axis.TIME, 1250, 1650, 100);
+
+        // 1300, 1400, 1500, 1600; fewer snapshots than buckets gives one per bucket
+        assertEquals(4, overview.getBucketCount());
+        assertEquals(3, overview.getFirst(0));
+        assertEquals(6, overview.getLast(3));
+        assertEquals(TimelineOverview.Axis.TIME, TimelineOverview.Axis.of("time"));
+        assertEquals(TimelineOverview.Axis.CYCLE, TimelineOverview.Axis.of(null));
+    }
+
+    @Test
+    void emptyRangeGivesEmptyArrays() {
+        TimelineOverview overview = new TimelineOverview(timeline(5, 16), TimelineOverview.Axis.CYCLE, 100, 200, 10);
+        assertEquals(0, overview.getBucketCount());
+        assertTrue(ints(overview.metricsJson(), "extAvg").isEmpty());
+        assertTrue(overview.heapMapJson(32).startsWith("{\"regions\":0,\"columns\":0,"));
+        assertThrows(IllegalArgumentException.class,
+            () -> new TimelineOverview(new SnapshotTimeline(), TimelineOverview.Axis.CYCLE, 0, 1, 0));
+    }
+
+    @Test
+    void heapMapFoldsRegionsIntoColumns() {
+        SnapshotTimeline t = timeline(10, 100);
+        TimelineOverview overview = new TimelineOverview(t, TimelineOverview.Axis.CYCLE, 0, 9, 5);
+        String json = overview.heapMapJson(30);
+
+        // 100 regions in columns of 4
+        assertTrue(json.startsWith("{\"regions\":100,\"columns\":25,"), json);
+        assertEquals(List.of(3, 7, 11, 15, 19), ints(json, "n"));
+
+        // last row is snapshot 19: regions 0-18 old, so the first four columns are O
+        String types = json.substring(json.indexOf("\"types\":"), json.indexOf("\"usage\":"));
+        String lastRow = types.substring(types.lastIndexOf('[') + 1, types.indexOf(']', types.lastIndexOf('[')));
+        String[] cells = lastRow.split(",");
+        assertEquals(25, cells.length);
+        for (int c = 0; c < 4; c++) assertEquals("90", cells[c]);
+        assertEquals("0", cells[cells.length - 1]);
+    }
+
+    @Test
+    void humongousSeriesFollowsFreeRuns() {
+        SnapshotTimeline t = timeline(10, 64);
+        TimelineOverview overview = new TimelineOverview(t, TimelineOverview.Axis.CYCLE, 0, 9, 4);
+        String json = overview.humongousJson(4);
+
+        assertTrue(json.startsWith("{\"regions\":4,"), json);
+        List<Integer> objects = ints(json, "objects");
+        List<Integer> fits = ints(json, "fits");
+        assertEquals(4, objects.size());
+        for (int b = 0; b < 4; b++) {
+            FreeRunIndex index = t.get(overview.getLast(b)).getFreeRunIndex();
+            assertEquals(index.countFitting(4), (long) objects.get(b));
+            assertEquals(index.canPlace(4) ? 1 : 0, fits.get(b));
+        }
+        assertThrows(IllegalArgumentException.class, () -> overview.humongousJson(0));
+    }
+
+    @Test
+    void statsAggregateTheSnapshotsOfEachBucket() {
+        SnapshotTimeline t = timeline(10, 64);
+        // both snapshots of cycle 9, with 18 and 19 old regions at 80%
+        String json = new TimelineOverview(t, TimelineOverview.Axis.CYCLE, 9, 9, 1).statsJson();
+
+        assertEquals(List.of(18), ints(json, "first"));
+        assertEquals(List.of(19), ints(json, "last"));
+        assertTrue(json.contains("\"O\":{\"min\":[18],\"max\":[19],\"avg\":[18.5]}"), json);
+        int eden18 = t.get(18).getTypeCount(30);
+        int eden19 = t.get(19).getTypeCount(30);
+        assertTrue(json.contains("\"E\":{\"min\":[" + Math.min(eden18, eden19) + "],\"max\":[" +
+            Math.max(eden18, eden19) + "]"), json);
+        String none = "{\"min\":[0],\"max\":[0],\"avg\":[0.0]}";
+        String eighty = "{\"min\":[18],\"max\":[19],\"avg\":[18.5]}";
+        assertTrue(json.contains("\"oldOccupancy\":[" + (none + ",").repeat(8) + eighty + "," + none + "]"), json);
+        assertTrue(json.contains("\"humongousWasted\":" + none), json);
+
+        // one snapshot per bucket
+        json = new TimelineOverview(t, TimelineOverview.Axis.CYCLE, 9, 9, 10).statsJson();
+        assertTrue(json.contains("\"O\":{\"min\":[18,19],\"max\":[18,19],\"avg\":[18.0,19.0]}"), json);
+    }
+}
@@ -0,0 +1,100 @@
+package org.heapfrag.model;
+
+import org.gc.log.parser.GcLogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorMetricsTest {
+
+    private static final String DATA_DIR = "data/";
+
+    private static HeapSnapshot copy(HeapSnapshot s) {
+        return new HeapSnapshot(s.gcCycle, s.types, s.usage, s.indices, s.count, s.isFull, s.gcType,
+            s.heapBase, s.regionSize, s.top, s.tams, s.pb, s.flags);
+    }
+
+    private static void assertSameMetrics(HeapSnapshot s) {
+        HeapSnapshot scalar = copy(s);
+        scalar.computeMetricsScalar();
+        HeapSnapshot vector = copy(s);
+        VectorMetrics.compute(vector);
+
+        String size = s.getRegionCount() + " regions";
+        assertEquals(scalar.getFreeRegionCount(), vector.getFreeRegionCount(), size);
+        assertEquals(scalar.getMaxFreeRun(), vector.getMaxFreeRun(), size);
+        assertEquals(scalar.getMaxHumongousRun(), vector.getMaxHumongousRun(), size);
+        assertEquals(scalar.calculateFree(), vector.calculateFree(), size);
+        assertEquals(scalar.calculateExternalFragmentation(), vector.calculateExternalFragmentation(), size);
+        assertEquals(scalar.calculateInternalFragmentation(), vector.calculateInternalFragmentation(), size);
+        for (int type : HeapSnapshot.TYPES) {
+            assertEquals(scalar.getTypeCount(type), vector.getTypeCount(type), size);
+            assertEquals(scalar.getTypeUsedBytes(type), vector.getTypeUsedBytes(type), size);
+        }
+        for (int b = 0; b < HeapSnapshot.OCCUPANCY_BUCKETS; b++) {
+            assertEquals(scalar.getOldOccupancy(b), vector.getOldOccupancy(b), size);
+        }
+        assertEquals(scalar.statsJson(), vector.statsJson(), size);
+        if (s.hasDetail()) {
+            assertEquals(scalar.getUsedBytes(), vector.getUsedBytes(), size);
+            assertEquals(scalar.getWastedBytes(), vector.getWastedBytes(), size);
+        }
+    }
+
+    /** Runs of random length and type, so runs cross vector boundaries. */
+    private static HeapSnapshot random(int regions, long seed, boolean detail) {
+        Random random = new Random(seed);
+        int regionSize = 1 << 22;
+        byte[] types = new byte[regions];
+        byte[] usage = new byte[regions];
+        int[] top = new int[regions];
+        for (int i = 0; i < regions; ) {
+            byte type = (byte) HeapSnapshot.TYPES[random.nextInt(HeapSnapshot.TYPES.length)];
+            int run = 1 + random.nextInt(random.nextBoolean() ? 4 : 200);
+            for (int k = 0; k < run && i < regions; k++, i++) {
+                // a humongous object is HS followed by HC
+                types[i] = type == (byte) 150 && k == 0 ? 120 : type;
+                usage[i] = (byte) (type == 0 ? 0 : random.nextInt(101));
+                top[i] = random.nextInt(regionSize + 1); // free regions count as used, not wasted
+            }
+        }
+        if (!detail) return new HeapSnapshot(0, types, usage, null, regions, false, "");
+        return new HeapSnapshot(0, types, usage, null, regions, false, "",
+            0x80000000L, regionSize, top, new int[regions], new int[regions], new byte[regions]);
+    }
+
+    @Test
+    void matchesScalarPassOnRandomHeaps() {
+        int[] sizes = {0, 1, 31, 64, 255, 1000, 4097, 65536, 65536 + 77};
+        for (int n = 0; n < sizes.length; n++) {
+            assertSameMetrics(random(sizes[n], n, true));
+            assertSameMetrics(random(sizes[n], n, false));
+        }
+    }
+
+    @Test
+    void matchesScalarPassOnUniformHeaps() {
+        // all free, all old and one humongous object spanning the heap
+        byte[][] layouts = {new byte[70000], new byte[70000], new byte[70000]};
+        Arrays.fill(layouts[1], (byte) 90);
+        Arrays.fill(layouts[2], (byte) 150);
+        layouts[2][0] = 120;
+        for (byte[] types : layouts) {
+            byte[] usage = new byte[types.length];
+            Arrays.fill(usage, (byte) 100);
+            assertSameMetrics(new HeapSnapshot(0, types, usage, null, types.length, false, ""));
+        }
+    }
+
+    @Test
+    void matchesScalarPassOnSampleLog() throws IOException {
+        for (HeapSnapshot s : GcLogParser.parseLogFile(new File(DATA_DIR + "sample_gc.log"))) {
+            if (s.indices == null) assertSameMetrics(s);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.http;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+
+@QuarkusTest
+class DataResourceTest {
+
+    private static final String DATA_DIR = "data/";
+
+    /** The requests index.html sends: a cache lookup by SHA-256, then the raw upload. */
+    @Test
+    void reuploadedLogOpensFromTheCache() throws IOException, NoSuchAlgorithmException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // a line no parser matches, so an entry cached by an earlier run cannot answer
+        out.write(("run " + System.nanoTime() + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(Files.readAllBytes(Path.of(DATA_DIR + "sample_gc.log")));
+        byte[] log = out.toByteArray();
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(log));
+        String session = "cache-test";
+
+        given().queryParam("name", "sample_gc.log").queryParam("size", log.length)
+            .queryParam("sha256", sha256).queryParam("session", session)
+            .when().post("/multipart/cached")
+            .then().statusCode(404);
+
+        String parsed = given().queryParam("name", "sample_gc.log").queryParam("size", log.length)
+            .queryParam("session", session)
+            .contentType("application/octet-stream").body(log)
+            .when().post("/multipart/stream")
+            .then().statusCode(200).body(startsWith("Parsed "))
+            .extract().asString();
+        String count = parsed.split(" ")[1];
+
+        given().queryParam("name", "sample_gc.log").queryParam("size", log.length)
+            .queryParam("sha256", sha256).queryParam("session", session)
+            .when().post("/multipart/cached")
+            .then().statusCode(200).body(equalTo("Loaded " + count + " heap snapshots from sample_gc.log"));
+
+        given().queryParam("session", session)
+            .when().get("/graph/size")
+            .then().statusCode(200).body(equalTo(count));
+    }
+
+    @Test
+    void lookupWithoutADigestMisses() {
+        given().queryParam("name", "sample_gc.log").queryParam("size", 1)
+            .when().post("/multipart/cached")
+            .then().statusCode(404);
+    }
+}
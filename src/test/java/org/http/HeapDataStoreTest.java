@@ -0,0 +1,44 @@
+package org.http;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.gc.log.parser.GcLogTailer;
+import org.heapfrag.model.SnapshotTimeline;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class HeapDataStoreTest {
+
+    @Inject
+    HeapDataStore dataStore;
+
+    @Test
+    void uploadIntoTheFollowedSessionStopsTheTail() throws IOException, InterruptedException {
+        Path log = Files.createTempFile("gc", ".log");
+        SnapshotTimeline live = dataStore.newTimeline();
+        GcLogTailer tailer = new GcLogTailer(log, snapshot -> dataStore.append(live, snapshot));
+        dataStore.setLiveTimeline(live, tailer);
+        Thread tail = Thread.ofPlatform().daemon().start(() -> {
+            try {
+                tailer.run();
+            } catch (IOException | InterruptedException e) {
+                fail(e);
+            }
+        });
+        assertTrue(dataStore.isLive(null));
+
+        dataStore.open(null);
+        dataStore.complete(null);
+
+        assertNull(dataStore.getLiveTimeline());
+        assertFalse(dataStore.isLive(null));
+        tail.join(5000);
+        assertFalse(tail.isAlive());
+    }
+}